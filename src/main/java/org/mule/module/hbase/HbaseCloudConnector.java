@@ -10,20 +10,39 @@ is * Mule HBase Cloud Connector
 
 package org.mule.module.hbase;
 
+import org.mule.api.lifecycle.Disposable;
 import org.mule.api.lifecycle.Initialisable;
 import org.mule.api.lifecycle.InitialisationException;
+import org.mule.module.hbase.api.BackpressureAction;
 import org.mule.module.hbase.api.BloomFilterType;
+import org.mule.module.hbase.api.CellValue;
+import org.mule.module.hbase.api.CompareOperator;
 import org.mule.module.hbase.api.CompressionType;
+import org.mule.module.hbase.api.DecodedRow;
 import org.mule.module.hbase.api.HBaseService;
+import org.mule.module.hbase.api.HBaseServiceException;
+import org.mule.module.hbase.api.PoolExhaustedAction;
+import org.mule.module.hbase.api.RowKeyFormat;
+import org.mule.module.hbase.api.RowStitchingIterable;
+import org.mule.module.hbase.api.ScanFilter;
+import org.mule.module.hbase.api.ScanOptions;
+import org.mule.module.hbase.api.ScanPage;
+import org.mule.module.hbase.api.ValueCodec;
+import org.mule.module.hbase.api.ValueEncoding;
+import org.mule.module.hbase.api.WideRow;
 import org.mule.module.hbase.api.impl.RPCHBaseService;
 import org.mule.tools.cloudconnect.annotations.Connector;
 import org.mule.tools.cloudconnect.annotations.Operation;
 import org.mule.tools.cloudconnect.annotations.Parameter;
 import org.mule.tools.cloudconnect.annotations.Property;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.RowLock;
@@ -41,7 +60,7 @@ import org.apache.hadoop.hbase.client.RowLock;
  * @since Apr 18, 2011
  */
 @Connector(namespacePrefix = "hbase")
-public class HbaseCloudConnector implements Initialisable
+public class HbaseCloudConnector implements Initialisable, Disposable
 {
     @Property(name = "facade-ref", optional = true)
     private HBaseService facade;
@@ -52,9 +71,295 @@ public class HbaseCloudConnector implements Initialisable
     @Property(name = "properties-ref", optional = true)
     private Map<String, String> properties;
 
+    /**
+     * Max amount of table handles pooled per table. Defaults to 10.
+     */
+    @Property(name = "tablePoolSize", optional = true)
+    private int tablePoolSize;
+
+    /**
+     * What to do when all the pooled handles of a table are in use: BLOCK until
+     * one is released, or FAIL immediately. Defaults to BLOCK.
+     */
+    @Property(name = "tablePoolExhaustedAction", optional = true)
+    private PoolExhaustedAction tablePoolExhaustedAction;
+
+    /**
+     * Max millis to wait for a pooled table handle when exhausted action is BLOCK.
+     * Negative values mean wait forever. Defaults to 5000.
+     */
+    @Property(name = "tablePoolMaxWait", optional = true)
+    private long tablePoolMaxWait;
+
+    /**
+     * If single puts without row lock are buffered on the client and sent in
+     * batches, instead of being sent immediately. Defaults to false.
+     */
+    @Property(name = "writeBufferEnabled", optional = true)
+    private boolean writeBufferEnabled;
+
+    /**
+     * Size in bytes a table write buffer is flushed at. Defaults to 2MB.
+     */
+    @Property(name = "writeBufferSize", optional = true)
+    private long writeBufferSize;
+
+    /**
+     * Max millis a put can stay in the write buffer before being flushed. Defaults
+     * to 1000.
+     */
+    @Property(name = "writeBufferMaxAge", optional = true)
+    private long writeBufferMaxAge;
+
+    /**
+     * Max bytes of puts the write buffers of every table hold together, including
+     * the ones kept for retry after a failed flush. Puts that do not fit are
+     * rejected, instead of piling up while the cluster is unavailable. Puts kept
+     * for retry are not reported as failed. Defaults to 32MB.
+     */
+    @Property(name = "writeBufferLimit", optional = true)
+    private long writeBufferLimit;
+
+    /**
+     * If single puts without row lock are queued and written in batches by
+     * background threads, instead of blocking the flow. Defaults to false.
+     */
+    @Property(name = "asyncWriteEnabled", optional = true)
+    private boolean asyncWriteEnabled;
+
+    /**
+     * Max amount of puts waiting to be written asynchronously. Defaults to 10000.
+     */
+    @Property(name = "asyncWriteQueueSize", optional = true)
+    private int asyncWriteQueueSize;
+
+    /**
+     * Amount of threads that write queued puts. Defaults to 2.
+     */
+    @Property(name = "asyncWriteThreads", optional = true)
+    private int asyncWriteThreads;
+
+    /**
+     * Max amount of queued puts a writer thread sends at once. Defaults to 100.
+     */
+    @Property(name = "asyncWriteBatchSize", optional = true)
+    private int asyncWriteBatchSize;
+
+    /**
+     * What to do when the write queue is full: BLOCK until there is space, or FAIL
+     * immediately. Defaults to BLOCK.
+     */
+    @Property(name = "asyncWriteFullAction", optional = true)
+    private BackpressureAction asyncWriteFullAction;
+
+    /**
+     * Max millis to wait for write queue space when full action is BLOCK, and for
+     * the queued writes of a table before a synchronous mutation of it. Negative
+     * values mean wait forever. Defaults to 5000.
+     */
+    @Property(name = "asyncWriteMaxWait", optional = true)
+    private long asyncWriteMaxWait;
+
+    /**
+     * How values that are neither byte arrays nor strings are written: SERIALIZED
+     * uses Java serialization, while FIXED_WIDTH writes boxed primitives, dates,
+     * UUIDs and BigDecimals in the compact big-endian layout of HBase Bytes, that
+     * increment-value also uses. Defaults to SERIALIZED.
+     */
+    @Property(name = "valueEncoding", optional = true)
+    private ValueEncoding valueEncoding;
+
+    /**
+     * Codec that writes and reads the values of every column family without a codec
+     * of its own. Overrides valueEncoding when set.
+     */
+    @Property(name = "valueCodec", optional = true)
+    private ValueCodec valueCodec;
+
+    /**
+     * Codecs for the values of specific column families, by family name, like a
+     * SchemaValueCodec for a family of JSON documents or a FixedWidthValueCodec
+     * for a family of counters.
+     */
+    @Property(name = "columnFamilyCodecs", optional = true)
+    private Map<String, ValueCodec> columnFamilyCodecs;
+
+    /**
+     * Amount of pages a scan fetches in background while the flow processes the
+     * current one, so that network and processing time overlap. Each prefetched
+     * page holds up to fetchSize results in memory. Defaults to 0, that fetches
+     * pages only when the current one has been processed.
+     */
+    @Property(name = "scanPrefetchPages", optional = true)
+    private int scanPrefetchPages;
+
+    /**
+     * Bytes per page that scans aim for. If set, the amount of rows requested per
+     * page is resized after each page to the observed row sizes, starting at
+     * fetchSize. Defaults to 0, that always requests fetchSize rows.
+     */
+    @Property(name = "scanTargetPageBytes", optional = true)
+    private long scanTargetPageBytes;
+
+    /**
+     * Millis per page that adaptive scans aim for, besides scanTargetPageBytes.
+     * Defaults to 0, that does not bound page latency.
+     */
+    @Property(name = "scanTargetPageMillis", optional = true)
+    private long scanTargetPageMillis;
+
+    /**
+     * Max amount of rows adaptive scans request per page. Defaults to 1000.
+     */
+    @Property(name = "scanMaxFetchSize", optional = true)
+    private int scanMaxFetchSize;
+
+    /**
+     * If rows read by get-values and get-multiple-values are cached on the client.
+     * Cached rows are invalidated when this connector writes them. Defaults to
+     * false.
+     */
+    @Property(name = "rowCacheEnabled", optional = true)
+    private boolean rowCacheEnabled;
+
+    /**
+     * Max amount of results kept in the row cache. Defaults to 10000.
+     */
+    @Property(name = "rowCacheMaxEntries", optional = true)
+    private int rowCacheMaxEntries;
+
+    /**
+     * Max amount of bytes kept in the row cache. Defaults to 64 MB.
+     */
+    @Property(name = "rowCacheMaxBytes", optional = true)
+    private long rowCacheMaxBytes;
+
+    /**
+     * Millis a row is kept in the cache since it was read. Defaults to 60000.
+     */
+    @Property(name = "rowCacheTtl", optional = true)
+    private long rowCacheTtl;
+
+    /**
+     * If table descriptors are cached on the client, so that exists-table and
+     * exists-column are answered without asking the master. Cached tables are
+     * invalidated when this connector changes their schema. Defaults to false.
+     */
+    @Property(name = "metadataCacheEnabled", optional = true)
+    private boolean metadataCacheEnabled;
+
+    /**
+     * Millis a table descriptor is kept in the cache since it was read. Defaults
+     * to 60000.
+     */
+    @Property(name = "metadataCacheTtl", optional = true)
+    private long metadataCacheTtl;
+
+    /**
+     * Max amount of table, family and qualifier names whose UTF-8 encoding is
+     * cached and shared by every operation, or 0 for encoding them on each call.
+     * Defaults to 1024.
+     */
+    @Property(name = "nameCacheMaxEntries", optional = true)
+    private int nameCacheMaxEntries;
+
+    /**
+     * Max size in bytes of a written value. Larger values fail before being sent,
+     * and input streams fail as soon as they exceed it, without being read to the
+     * end. Defaults to 0, that accepts values of any size.
+     */
+    @Property(name = "maxCellSize", optional = true)
+    private int maxCellSize;
+
+    /**
+     * Column families whose values are compressed by this connector, so that they
+     * are sent and cached compressed, and decompressed transparently when read.
+     * Each value is prefixed with a header byte, so only families that hold no
+     * values yet - and no counters - can be listed. Values compared by filters and
+     * check-and-put are compared compressed, so only equality comparisons are
+     * meaningful. Defaults to none.
+     */
+    @Property(name = "compressedColumnFamilies", optional = true)
+    private List<String> compressedColumnFamilies;
+
+    /**
+     * Min size in bytes of the values of compressed families that are deflated.
+     * Smaller values are stored as is. Defaults to 1024.
+     */
+    @Property(name = "valueCompressionThreshold", optional = true)
+    private int valueCompressionThreshold;
+
+    /**
+     * Tables whose row keys are prefixed with a bucket byte derived from a hash of
+     * the key, so that writes of consecutive keys - like time-ordered ones - are
+     * spread across region servers. Row operations salt and unsalt keys
+     * transparently, and scan-table reads every bucket at once and merges them back
+     * into key order. Only tables that hold no rows yet can be listed, and
+     * scan-page does not support them. Defaults to none.
+     */
+    @Property(name = "saltedTables", optional = true)
+    private List<String> saltedTables;
+
+    /**
+     * Amount of buckets - up to 256 - the row keys of salted tables are spread
+     * across. It must never change once rows have been written. Defaults to 16.
+     */
+    @Property(name = "saltBuckets", optional = true)
+    private int saltBuckets;
+
+    /**
+     * Max amount of bytes a scanner answers per request to a region server,
+     * whatever the caching is. It bounds the memory taken by scans of wide rows.
+     * Defaults to the hbase.client.scanner.max.result.size setting.
+     */
+    @Property(name = "scannerMaxResultSize", optional = true)
+    private Long scannerMaxResultSize;
+
+    /**
+     * Millis a scan may go without fetching a page before its scanner and table
+     * handle are closed, so that traversals abandoned without disposing their
+     * iterable do not keep them open. A scan fetching again afterwards is reopened
+     * after its last row, except batched ones, that fail. Defaults to 5 minutes;
+     * 0 disables it.
+     */
+    @Property(name = "scannerMaxIdleMillis", optional = true)
+    private long scannerMaxIdleMillis;
+
     public HbaseCloudConnector()
     {
         properties = Collections.emptyMap();
+        tablePoolSize = 10;
+        tablePoolExhaustedAction = PoolExhaustedAction.BLOCK;
+        tablePoolMaxWait = 5000;
+        writeBufferEnabled = false;
+        writeBufferSize = 2 * 1024 * 1024;
+        writeBufferMaxAge = 1000;
+        writeBufferLimit = 32 * 1024 * 1024;
+        asyncWriteEnabled = false;
+        asyncWriteQueueSize = 10000;
+        asyncWriteThreads = 2;
+        asyncWriteBatchSize = 100;
+        asyncWriteFullAction = BackpressureAction.BLOCK;
+        asyncWriteMaxWait = 5000;
+        valueEncoding = ValueEncoding.SERIALIZED;
+        columnFamilyCodecs = Collections.emptyMap();
+        scanPrefetchPages = 0;
+        scanTargetPageBytes = 0;
+        scanTargetPageMillis = 0;
+        scanMaxFetchSize = 1000;
+        scannerMaxIdleMillis = 300000;
+        rowCacheEnabled = false;
+        rowCacheMaxEntries = 10000;
+        rowCacheMaxBytes = 64 * 1024 * 1024;
+        rowCacheTtl = 60000;
+        metadataCacheEnabled = false;
+        metadataCacheTtl = 60000;
+        nameCacheMaxEntries = 1024;
+        maxCellSize = 0;
+        compressedColumnFamilies = Collections.emptyList();
+        valueCompressionThreshold = 1024;
+        saltedTables = Collections.emptyList();
+        saltBuckets = 16;
     }
 
     // ------------ Admin Operations
@@ -260,16 +565,76 @@ public class HbaseCloudConnector implements Initialisable
      * @param tableName required the target table
      * @param rowKey    
      * @param maxVersions
-     * @param timestamp
+     * @param timestamp the exact version to fetch. Can not be combined with
+     *            minTimestamp or maxTimestamp
+     * @param columns the columns to fetch, as <code>family</code> or
+     *            <code>family:qualifier</code>. All the columns are fetched if
+     *            not set
+     * @param minTimestamp the inclusive lower bound of the versions to fetch
+     * @param maxTimestamp the exclusive upper bound of the versions to fetch
      * @return the result
      */
     @Operation
     public Result getValues(@Parameter(optional = false) final String tableName,
                             @Parameter(optional = false) final String rowKey,
                             @Parameter(optional = true) final Integer maxVersions,
-                            @Parameter(optional = true) final Long timestamp)
+                            @Parameter(optional = true) final Long timestamp,
+                            @Parameter(optional = true) final List<String> columns,
+                            @Parameter(optional = true) final Long minTimestamp,
+                            @Parameter(optional = true) final Long maxTimestamp)
+    {
+        return facade.get(tableName, rowKey, columns, maxVersions, timestamp, minTimestamp, maxTimestamp);
+    }
+
+    /**
+     * Answers the values at the given rows, fetched in a single round trip
+     * 
+     * {@code <hbase:get-multiple-values tableName="#[header:tableName]" rowKeys="#[payload]" />}
+     * 
+     * @param tableName required the target table
+     * @param rowKeys the keys of the rows to fetch
+     * @param columnFamilyName the column family to restrict the values to
+     * @param columnQualifier the column qualifier to restrict the values to. Only
+     *            used if columnFamilyName is set
+     * @param maxVersions
+     * @param timestamp
+     * @return a list with a result per row key, in the same order. Missing rows
+     *         have an empty result
+     */
+    @Operation
+    public List<Result> getMultipleValues(@Parameter(optional = false) final String tableName,
+                                          @Parameter(optional = false) final Collection<String> rowKeys,
+                                          @Parameter(optional = true) final String columnFamilyName,
+                                          @Parameter(optional = true) final String columnQualifier,
+                                          @Parameter(optional = true) final Integer maxVersions,
+                                          @Parameter(optional = true) final Long timestamp)
+    {
+        return facade.getAll(tableName, rowKeys, columnFamilyName, columnQualifier, maxVersions, timestamp);
+    }
+
+    /**
+     * Answers the value at the specified (table, row, familyName, familyQualifier,
+     * timestamp) combination, decoded with the codec of its column family, or null
+     * if there is no such value
+     * 
+     * {@code <hbase:get-value tableName="t1" rowKey="r1" columnFamilyName="f1" 
+     *                         columnQualifier="q1" />}
+     * 
+     * @param tableName required the target table
+     * @param rowKey
+     * @param columnFamilyName the column family dimension
+     * @param columnQualifier the column qualifier dimension
+     * @param timestamp the exact version to fetch. The latest one otherwise
+     * @return the decoded value
+     */
+    @Operation
+    public Object getValue(@Parameter(optional = false) final String tableName,
+                           @Parameter(optional = false) final String rowKey,
+                           @Parameter(optional = false) final String columnFamilyName,
+                           @Parameter(optional = false) final String columnQualifier,
+                           @Parameter(optional = true) final Long timestamp)
     {
-        return facade.get(tableName, rowKey, maxVersions, timestamp);
+        return facade.getValue(tableName, rowKey, columnFamilyName, columnQualifier, timestamp);
     }
 
     /**
@@ -286,7 +651,9 @@ public class HbaseCloudConnector implements Initialisable
      * @param timestamp the version dimension
      * @param value the value to put. It must be either a byte array or a
      *            serializable object. As a special case, strings are saved always in
-     *            standard utf-8 format.
+     *            standard utf-8 format, and byte buffers and input streams - like
+     *            streaming payloads - are read once into the cell, up to
+     *            maxCellSize bytes.
      * @param writeToWAL
      * @param lock
      */
@@ -303,6 +670,88 @@ public class HbaseCloudConnector implements Initialisable
         facade.put(tableName, rowKey, columnFamilyName, columnQualifier, timestamp, value, writeToWAL, lock);
     }
 
+    /**
+     * Saves a value like put-value does, but answers a completion handle instead of
+     * waiting for the write, if asyncWriteEnabled is set in the connector config.
+     * Flows that need durability can wait on the handle.
+     * 
+     * {@code <hbase:put-value-async tableName="t1" rowKey="r1" columnFamilyName="f1" 
+     *                         columnQualifier="q1" value="v1" />}
+     * 
+     * @param tableName required the target table
+     * @param rowKey
+     * @param columnFamilyName the column family dimension
+     * @param columnQualifier the column qualifier dimension
+     * @param timestamp the version dimension
+     * @param value the value to put. It must be either a byte array or a
+     *            serializable object. As a special case, strings are saved always in
+     *            standard utf-8 format, and byte buffers and input streams - like
+     *            streaming payloads - are read once into the cell, up to
+     *            maxCellSize bytes.
+     * @param writeToWAL
+     * @return a {@link Future} that completes when the value has been written
+     */
+    @Operation
+    public Future<Void> putValueAsync(@Parameter(optional = false) final String tableName,
+                                      @Parameter(optional = false) final String rowKey,
+                                      @Parameter(optional = false) final String columnFamilyName,
+                                      @Parameter(optional = false) final String columnQualifier,
+                                      @Parameter(optional = true) final Long timestamp,
+                                      @Parameter(optional = false) final Object value,
+                                      @Parameter(optional = true, defaultValue = "true") final boolean writeToWAL)
+    {
+        return facade.putAsync(tableName, rowKey, columnFamilyName, columnQualifier, timestamp, value,
+            writeToWAL);
+    }
+
+    /**
+     * Saves many values in a single batch, sending all the rows in a single request
+     * per region server. Values can be given either as a collection of cell values
+     * or as a row&rarr;family&rarr;qualifier map.
+     * 
+     * {@code <hbase:put-values tableName="t1" values="#[payload]" />}
+     * 
+     * @param tableName required the target table
+     * @param values a collection whose elements are either {@link CellValue}s or maps
+     *            with rowKey, columnFamilyName, columnQualifier, value and an
+     *            optional timestamp entries
+     * @param rowValues a map of row keys to maps of column family names to maps of
+     *            column qualifiers to values
+     * @param writeToWAL
+     */
+    @Operation
+    public void putValues(@Parameter(optional = false) final String tableName,
+                          @Parameter(optional = true) final Collection<?> values,
+                          @Parameter(optional = true) final Map<String, Map<String, Map<String, Object>>> rowValues,
+                          @Parameter(optional = true, defaultValue = "true") final boolean writeToWAL)
+    {
+        List<CellValue> cells = new ArrayList<CellValue>();
+        if (values != null)
+        {
+            cells.addAll(CellValue.fromCollection(values));
+        }
+        if (rowValues != null)
+        {
+            cells.addAll(CellValue.fromRowMap(rowValues));
+        }
+        facade.putAll(tableName, cells, writeToWAL);
+    }
+
+    /**
+     * Sends the puts buffered on the client. Only has sense if writeBufferEnabled is
+     * set in the connector config.
+     * 
+     * {@code <hbase:flush-commits tableName="t1" />}
+     * 
+     * @param tableName the table whose puts will be sent. If not specified, the puts
+     *            of every table are sent
+     */
+    @Operation
+    public void flushCommits(@Parameter(optional = true) final String tableName)
+    {
+        facade.flushCommits(tableName);
+    }
+
     /**
      * Deletes the values at a given row
      * 
@@ -353,8 +802,11 @@ public class HbaseCloudConnector implements Initialisable
      * @param maxTimestamp get versions of columns only within the specified
      *            timestamp range: [timestamp, maxTimestamp)
      * @param caching the number of rows for caching
-     * @param batch the maximum number of values to return for each call to next() in
-     *            the ResultScanner
+     * @param batch the max amount of cells answered per Result. Wider rows are split
+     *            into many consecutive Results, that may be stitched back with
+     *            stitch-rows. It can not be combined with pageSize, nor with a
+     *            valueCompareOperator on a valueColumnFamilyName, as those filters
+     *            need whole rows
      * @param cacheBlocks the number of rows for caching that will be passed to
      *            scanners
      * @param maxVersions limits the number of versions on each column
@@ -365,7 +817,33 @@ public class HbaseCloudConnector implements Initialisable
      * @param fetchSize the number of results internally fetched by request to the
      *            HBase server. Increase it for improving network efficiency, or decrease it
      *            for reducing memory usage 
-     * @return an Iterable of Result's. It may be used with a collection splitter.  
+     * @param rowPrefix only answers the rows whose key starts with this prefix
+     * @param columnPrefix only answers the columns whose qualifier starts with this
+     *            prefix
+     * @param qualifierRegex only answers the columns whose qualifier matches this
+     *            regular expression
+     * @param valueCompareOperator compares values against the value parameter. If
+     *            valueColumnFamilyName and valueColumnQualifier are set, only the
+     *            rows whose value at that column satisfies the comparison are
+     *            answered. Otherwise, only the cells that satisfy it are answered
+     * @param valueColumnFamilyName the family of the column compared against value
+     * @param valueColumnQualifier the qualifier of the column compared against value
+     * @param value the value to compare with, converted as put-value does
+     * @param pageSize the max amount of rows answered by each region server. Scans
+     *            of salted tables answer at most pageSize rows in total
+     * @param keyOnly if only the keys should be answered, without values
+     * @param parallelism the max amount of regions read at once. If greater than 1,
+     *            the scanned range is split by region boundaries and each region is
+     *            read by its own thread
+     * @param ordered if results of a parallel scan must be answered in row key
+     *            order. Otherwise, they are answered as soon as any region returns
+     *            them
+     * @return an Iterable of Result's. It may be used with a collection splitter.
+     *         Each traversal holds a server-side scanner that is closed once the
+     *         traversal is exhausted or fails; partial traversals must dispose the
+     *         iterable - it is a {@link org.mule.api.lifecycle.Disposable}.
+     *         Mule does not dispose it by itself, so the scanners of traversals
+     *         that are abandoned are only closed after scannerMaxIdleMillis.
      */
     @Operation
     public Iterable<Result> scanTable(@Parameter(optional = false) final String tableName,
@@ -374,14 +852,247 @@ public class HbaseCloudConnector implements Initialisable
                                    @Parameter(optional = true) final Long timestamp,
                                    @Parameter(optional = true) final Long maxTimestamp,
                                    @Parameter(optional = true) final Integer caching,
+                                   @Parameter(optional = true) final Integer batch,
                                    @Parameter(optional = true, defaultValue = "true") final boolean cacheBlocks,
                                    @Parameter(optional = true, defaultValue = "1") final int maxVersions,
                                    @Parameter(optional = true) final String startRowKey,
                                    @Parameter(optional = true) final String stopRowKey, 
-                                   @Parameter(optional = true, defaultValue = "50") int fetchSize)
+                                   @Parameter(optional = true, defaultValue = "50") int fetchSize,
+                                   @Parameter(optional = true) final String rowPrefix,
+                                   @Parameter(optional = true) final String columnPrefix,
+                                   @Parameter(optional = true) final String qualifierRegex,
+                                   @Parameter(optional = true) final CompareOperator valueCompareOperator,
+                                   @Parameter(optional = true) final String valueColumnFamilyName,
+                                   @Parameter(optional = true) final String valueColumnQualifier,
+                                   @Parameter(optional = true) final Object value,
+                                   @Parameter(optional = true) final Long pageSize,
+                                   @Parameter(optional = true, defaultValue = "false") final boolean keyOnly,
+                                   @Parameter(optional = true, defaultValue = "1") final int parallelism,
+                                   @Parameter(optional = true, defaultValue = "true") final boolean ordered)
     {
+        ScanFilter filter = new ScanFilter();
+        filter.setRowPrefix(rowPrefix);
+        filter.setColumnPrefix(columnPrefix);
+        filter.setQualifierRegex(qualifierRegex);
+        filter.setValueCompareOperator(valueCompareOperator);
+        filter.setValueColumnFamilyName(valueColumnFamilyName);
+        filter.setValueColumnQualifier(valueColumnQualifier);
+        filter.setValue(value);
+        filter.setPageSize(pageSize);
+        filter.setKeyOnly(keyOnly);
+        ScanOptions options = new ScanOptions();
+        options.setParallelism(parallelism);
+        options.setOrdered(ordered);
+        options.setBatch(batch);
         return facade.scan(tableName, columnFamilyName, columnQualifier, timestamp, maxTimestamp, caching,
-            cacheBlocks, maxVersions, startRowKey, stopRowKey, fetchSize);
+            cacheBlocks, maxVersions, startRowKey, stopRowKey, fetchSize, filter, options);
+    }
+
+    /**
+     * Groups the results of a batched scan-table back into whole rows, lazily. Each
+     * row is answered as a {@link WideRow}, whose slices are read from the scan as
+     * they are iterated, so huge rows are never held in memory at once.
+     * 
+     * {@code <hbase:stitch-rows results="#[payload]" />}
+     * 
+     * @param results the results of a scan-table, in row key order
+     * @return an Iterable of WideRow's. Disposing it disposes the scan
+     */
+    @Operation
+    public Iterable<WideRow> stitchRows(@Parameter(optional = false) final Iterable<Result> results)
+    {
+        return new RowStitchingIterable(results);
+    }
+
+    /**
+     * Encodes the given components into a row key that sorts by them, for the
+     * rowKey, startRowKey and stopRowKey parameters. Longs and timestamps sort
+     * numerically, and giving just the leading components answers the prefix of
+     * every key that starts with them.
+     * 
+     * {@code <hbase:encode-row-key format="STRING,REVERSED_TIMESTAMP"
+     *                              components="#[groovy:['SABE', new Date()]]" />}
+     * 
+     * @param format the comma separated types of the key components: STRING, LONG,
+     *            TIMESTAMP or REVERSED_TIMESTAMP
+     * @param components the leading components of the key, in order
+     * @param prefixEnd if the answered key should be the lowest after every key
+     *            that starts with the given components - the stopRowKey of a scan of
+     *            all of them - instead of their prefix
+     * @return the encoded row key
+     */
+    @Operation
+    public String encodeRowKey(@Parameter(optional = false) final String format,
+                               @Parameter(optional = false) final List<Object> components,
+                               @Parameter(optional = true, defaultValue = "false") final boolean prefixEnd)
+    {
+        RowKeyFormat rowKeyFormat = RowKeyFormat.parse(format);
+        return prefixEnd ? rowKeyFormat.encodePrefixEnd(components) : rowKeyFormat.encode(components);
+    }
+
+    /**
+     * Decodes the components of a row key encoded by encode-row-key
+     * 
+     * {@code <hbase:decode-row-key format="STRING,REVERSED_TIMESTAMP" row="#[payload]" />}
+     * 
+     * @param format the comma separated types of the key components, as given to
+     *            encode-row-key
+     * @param row the row key, or a Result, DecodedRow or WideRow whose key to decode
+     * @return the list of components: strings, longs and dates
+     */
+    @Operation
+    public List<Object> decodeRowKey(@Parameter(optional = false) final String format,
+                                     @Parameter(optional = false) final Object row)
+    {
+        RowKeyFormat rowKeyFormat = RowKeyFormat.parse(format);
+        if (row instanceof Result)
+        {
+            return rowKeyFormat.decode(((Result) row).getRow());
+        }
+        if (row instanceof DecodedRow)
+        {
+            return rowKeyFormat.decode(((DecodedRow) row).getRow());
+        }
+        if (row instanceof WideRow)
+        {
+            return rowKeyFormat.decode(((WideRow) row).getRow());
+        }
+        if (row instanceof byte[])
+        {
+            return rowKeyFormat.decode((byte[]) row);
+        }
+        return rowKeyFormat.decode(row.toString());
+    }
+
+    /**
+     * Answers the given result of a get-values as a family to qualifier to value
+     * Map, whose values are decoded with the codec of their column family when
+     * accessed, like <code>#[groovy:payload.f1.q1]</code>.
+     * 
+     * {@code <hbase:decode-row result="#[payload]" />}
+     * 
+     * @param result the result to decode
+     * @return a {@link DecodedRow}
+     */
+    @Operation
+    public DecodedRow decodeRow(@Parameter(optional = false) final Result result)
+    {
+        return facade.decode(result);
+    }
+
+    /**
+     * Answers the given results of a scan-table as {@link DecodedRow}s, lazily, so
+     * that each row is decoded as it is iterated and only for the cells accessed.
+     * 
+     * {@code <hbase:decode-rows results="#[payload]" />}
+     * 
+     * @param results the results to decode
+     * @return an Iterable of DecodedRow's. Disposing it disposes the scan
+     */
+    @Operation
+    public Iterable<DecodedRow> decodeRows(@Parameter(optional = false) final Iterable<Result> results)
+    {
+        return facade.decodeAll(results);
+    }
+
+    /**
+     * Scans a bounded page of rows. No scanner is kept between calls: the answered
+     * page carries an opaque continuation token that resumes the scan right after
+     * it, so it may be handed to the clients of a paginated API.
+     * 
+     * {@code <hbase:scan-page tableName="t1" maxRows="20"
+     *                         continuationToken="#[header:inbound:next]" />}
+     * 
+     * @param tableName required the target table
+     * @param columnFamilyName limits the scan to a specific column family or null
+     * @param columnQualifier limits the scan to a specific column or null. Requires
+     *            a columnFamilyName to be defined.
+     * @param timestamp limits the scan to a specific timestamp
+     * @param maxTimestamp get versions of columns only within the specified
+     *            timestamp range: [timestamp, maxTimestamp)
+     * @param cacheBlocks if the blocks read by the scan are cached by the region
+     *            servers
+     * @param maxVersions limits the number of versions on each column
+     * @param startRowKey limits the beginning of the scan to the specified row
+     *            inclusive
+     * @param stopRowKey limits the end of the scan to the specified row exclusive
+     * @param rowPrefix only answers the rows whose key starts with this prefix
+     * @param columnPrefix only answers the columns whose qualifier starts with this
+     *            prefix
+     * @param qualifierRegex only answers the columns whose qualifier matches this
+     *            regular expression
+     * @param valueCompareOperator compares values against the value parameter, as
+     *            scan-table does
+     * @param valueColumnFamilyName the family of the column compared against value
+     * @param valueColumnQualifier the qualifier of the column compared against value
+     * @param value the value to compare with, converted as put-value does
+     * @param keyOnly if only the keys should be answered, without values
+     * @param maxRows the max amount of rows in the page
+     * @param continuationToken the token of the previous page, or null for the first
+     *            one. It only holds the row to resume at, so the other parameters
+     *            must repeat those of the first call; tokens answered for other
+     *            parameters are rejected
+     * @return the page, with its rows and the token of the next one - null if it
+     *         is the last page
+     */
+    @Operation
+    public ScanPage scanPage(@Parameter(optional = false) final String tableName,
+                             @Parameter(optional = true) final String columnFamilyName,
+                             @Parameter(optional = true) final String columnQualifier,
+                             @Parameter(optional = true) final Long timestamp,
+                             @Parameter(optional = true) final Long maxTimestamp,
+                             @Parameter(optional = true, defaultValue = "true") final boolean cacheBlocks,
+                             @Parameter(optional = true, defaultValue = "1") final int maxVersions,
+                             @Parameter(optional = true) final String startRowKey,
+                             @Parameter(optional = true) final String stopRowKey,
+                             @Parameter(optional = true) final String rowPrefix,
+                             @Parameter(optional = true) final String columnPrefix,
+                             @Parameter(optional = true) final String qualifierRegex,
+                             @Parameter(optional = true) final CompareOperator valueCompareOperator,
+                             @Parameter(optional = true) final String valueColumnFamilyName,
+                             @Parameter(optional = true) final String valueColumnQualifier,
+                             @Parameter(optional = true) final Object value,
+                             @Parameter(optional = true, defaultValue = "false") final boolean keyOnly,
+                             @Parameter(optional = true, defaultValue = "100") final int maxRows,
+                             @Parameter(optional = true) final String continuationToken)
+    {
+        ScanFilter filter = new ScanFilter();
+        filter.setRowPrefix(rowPrefix);
+        filter.setColumnPrefix(columnPrefix);
+        filter.setQualifierRegex(qualifierRegex);
+        filter.setValueCompareOperator(valueCompareOperator);
+        filter.setValueColumnFamilyName(valueColumnFamilyName);
+        filter.setValueColumnQualifier(valueColumnQualifier);
+        filter.setValue(value);
+        filter.setKeyOnly(keyOnly);
+        return facade.scanPage(tableName, columnFamilyName, columnQualifier, timestamp, maxTimestamp,
+            cacheBlocks, maxVersions, startRowKey, stopRowKey, filter, maxRows, continuationToken);
+    }
+
+    /**
+     * Counts the rows of a table, or of a range of it. Only the first key of each
+     * row is read, so no values are transferred.
+     * 
+     * {@code <hbase:count-rows tableName="t1" startRowKey="r1" stopRowKey="r9" />}
+     * 
+     * @param tableName required the target table
+     * @param columnFamilyName only counts the rows with values at this column family
+     * @param startRowKey the beginning of the range to count, inclusive
+     * @param stopRowKey the end of the range to count, exclusive
+     * @param caching the number of rows fetched per request to the HBase server
+     * @param parallelism the max amount of regions - or buckets, for salted
+     *            tables - counted at once
+     * @return the amount of rows
+     */
+    @Operation
+    public long countRows(@Parameter(optional = false) final String tableName,
+                          @Parameter(optional = true) final String columnFamilyName,
+                          @Parameter(optional = true) final String startRowKey,
+                          @Parameter(optional = true) final String stopRowKey,
+                          @Parameter(optional = true, defaultValue = "1000") final int caching,
+                          @Parameter(optional = true, defaultValue = "1") final int parallelism)
+    {
+        return facade.countRows(tableName, columnFamilyName, startRowKey, stopRowKey, caching, parallelism);
     }
 
     /**
@@ -439,7 +1150,9 @@ public class HbaseCloudConnector implements Initialisable
      * @param putTimestamp the version dimension to put.
      * @param value the value to put. It must be either a byte array or a
      *            serializable object. As a special case, strings are saved always in
-     *            standard utf-8 format.
+     *            standard utf-8 format, and byte buffers and input streams - like
+     *            streaming payloads - are read once into the cell, up to
+     *            maxCellSize bytes.
      * @param writeToWAL set it to false means that in a fail scenario, you will lose
      *            any increments that have not been flushed.
      * @param lock
@@ -509,6 +1222,22 @@ public class HbaseCloudConnector implements Initialisable
             lock);
     }
 
+    // ------------ Monitoring Operations
+
+    /**
+     * Answers a snapshot of the connector counters and gauges, like the table pool
+     * usage and borrow wait times
+     *
+     * {@code <hbase:get-statistics />}
+     *
+     * @return the statistics, keyed by name
+     */
+    @Operation
+    public Map<String, Number> getStatistics()
+    {
+        return facade.getStatistics();
+    }
+
     // ------------ Configuration
 
     public void setFacade(HBaseService facade)
@@ -531,14 +1260,412 @@ public class HbaseCloudConnector implements Initialisable
         this.properties = new HashMap<String, String>(properties);
     }
 
+    public int getTablePoolSize()
+    {
+        return tablePoolSize;
+    }
+
+    public void setTablePoolSize(int tablePoolSize)
+    {
+        this.tablePoolSize = tablePoolSize;
+    }
+
+    public PoolExhaustedAction getTablePoolExhaustedAction()
+    {
+        return tablePoolExhaustedAction;
+    }
+
+    public void setTablePoolExhaustedAction(PoolExhaustedAction tablePoolExhaustedAction)
+    {
+        this.tablePoolExhaustedAction = tablePoolExhaustedAction;
+    }
+
+    public long getTablePoolMaxWait()
+    {
+        return tablePoolMaxWait;
+    }
+
+    public void setTablePoolMaxWait(long tablePoolMaxWait)
+    {
+        this.tablePoolMaxWait = tablePoolMaxWait;
+    }
+
+    public boolean isWriteBufferEnabled()
+    {
+        return writeBufferEnabled;
+    }
+
+    public void setWriteBufferEnabled(boolean writeBufferEnabled)
+    {
+        this.writeBufferEnabled = writeBufferEnabled;
+    }
+
+    public long getWriteBufferSize()
+    {
+        return writeBufferSize;
+    }
+
+    public void setWriteBufferSize(long writeBufferSize)
+    {
+        this.writeBufferSize = writeBufferSize;
+    }
+
+    public long getWriteBufferMaxAge()
+    {
+        return writeBufferMaxAge;
+    }
+
+    public void setWriteBufferMaxAge(long writeBufferMaxAge)
+    {
+        this.writeBufferMaxAge = writeBufferMaxAge;
+    }
+
+    public long getWriteBufferLimit()
+    {
+        return writeBufferLimit;
+    }
+
+    public void setWriteBufferLimit(long writeBufferLimit)
+    {
+        this.writeBufferLimit = writeBufferLimit;
+    }
+
+    public boolean isAsyncWriteEnabled()
+    {
+        return asyncWriteEnabled;
+    }
+
+    public void setAsyncWriteEnabled(boolean asyncWriteEnabled)
+    {
+        this.asyncWriteEnabled = asyncWriteEnabled;
+    }
+
+    public int getAsyncWriteQueueSize()
+    {
+        return asyncWriteQueueSize;
+    }
+
+    public void setAsyncWriteQueueSize(int asyncWriteQueueSize)
+    {
+        this.asyncWriteQueueSize = asyncWriteQueueSize;
+    }
+
+    public int getAsyncWriteThreads()
+    {
+        return asyncWriteThreads;
+    }
+
+    public void setAsyncWriteThreads(int asyncWriteThreads)
+    {
+        this.asyncWriteThreads = asyncWriteThreads;
+    }
+
+    public int getAsyncWriteBatchSize()
+    {
+        return asyncWriteBatchSize;
+    }
+
+    public void setAsyncWriteBatchSize(int asyncWriteBatchSize)
+    {
+        this.asyncWriteBatchSize = asyncWriteBatchSize;
+    }
+
+    public BackpressureAction getAsyncWriteFullAction()
+    {
+        return asyncWriteFullAction;
+    }
+
+    public void setAsyncWriteFullAction(BackpressureAction asyncWriteFullAction)
+    {
+        this.asyncWriteFullAction = asyncWriteFullAction;
+    }
+
+    public long getAsyncWriteMaxWait()
+    {
+        return asyncWriteMaxWait;
+    }
+
+    public void setAsyncWriteMaxWait(long asyncWriteMaxWait)
+    {
+        this.asyncWriteMaxWait = asyncWriteMaxWait;
+    }
+
+    public ValueEncoding getValueEncoding()
+    {
+        return valueEncoding;
+    }
+
+    public void setValueEncoding(ValueEncoding valueEncoding)
+    {
+        this.valueEncoding = valueEncoding;
+    }
+
+    public ValueCodec getValueCodec()
+    {
+        return valueCodec;
+    }
+
+    public void setValueCodec(ValueCodec valueCodec)
+    {
+        this.valueCodec = valueCodec;
+    }
+
+    public Map<String, ValueCodec> getColumnFamilyCodecs()
+    {
+        return columnFamilyCodecs;
+    }
+
+    public void setColumnFamilyCodecs(Map<String, ValueCodec> columnFamilyCodecs)
+    {
+        this.columnFamilyCodecs = columnFamilyCodecs;
+    }
+
+    public int getScanPrefetchPages()
+    {
+        return scanPrefetchPages;
+    }
+
+    public void setScanPrefetchPages(int scanPrefetchPages)
+    {
+        this.scanPrefetchPages = scanPrefetchPages;
+    }
+
+    public long getScanTargetPageBytes()
+    {
+        return scanTargetPageBytes;
+    }
+
+    public void setScanTargetPageBytes(long scanTargetPageBytes)
+    {
+        this.scanTargetPageBytes = scanTargetPageBytes;
+    }
+
+    public long getScanTargetPageMillis()
+    {
+        return scanTargetPageMillis;
+    }
+
+    public void setScanTargetPageMillis(long scanTargetPageMillis)
+    {
+        this.scanTargetPageMillis = scanTargetPageMillis;
+    }
+
+    public int getScanMaxFetchSize()
+    {
+        return scanMaxFetchSize;
+    }
+
+    public void setScanMaxFetchSize(int scanMaxFetchSize)
+    {
+        this.scanMaxFetchSize = scanMaxFetchSize;
+    }
+
+    public boolean isRowCacheEnabled()
+    {
+        return rowCacheEnabled;
+    }
+
+    public void setRowCacheEnabled(boolean rowCacheEnabled)
+    {
+        this.rowCacheEnabled = rowCacheEnabled;
+    }
+
+    public int getRowCacheMaxEntries()
+    {
+        return rowCacheMaxEntries;
+    }
+
+    public void setRowCacheMaxEntries(int rowCacheMaxEntries)
+    {
+        this.rowCacheMaxEntries = rowCacheMaxEntries;
+    }
+
+    public long getRowCacheMaxBytes()
+    {
+        return rowCacheMaxBytes;
+    }
+
+    public void setRowCacheMaxBytes(long rowCacheMaxBytes)
+    {
+        this.rowCacheMaxBytes = rowCacheMaxBytes;
+    }
+
+    public long getRowCacheTtl()
+    {
+        return rowCacheTtl;
+    }
+
+    public void setRowCacheTtl(long rowCacheTtl)
+    {
+        this.rowCacheTtl = rowCacheTtl;
+    }
+
+    public Long getScannerMaxResultSize()
+    {
+        return scannerMaxResultSize;
+    }
+
+    public void setScannerMaxResultSize(Long scannerMaxResultSize)
+    {
+        this.scannerMaxResultSize = scannerMaxResultSize;
+    }
+
+    public long getScannerMaxIdleMillis()
+    {
+        return scannerMaxIdleMillis;
+    }
+
+    public void setScannerMaxIdleMillis(long scannerMaxIdleMillis)
+    {
+        this.scannerMaxIdleMillis = scannerMaxIdleMillis;
+    }
+
+    public boolean isMetadataCacheEnabled()
+    {
+        return metadataCacheEnabled;
+    }
+
+    public void setMetadataCacheEnabled(boolean metadataCacheEnabled)
+    {
+        this.metadataCacheEnabled = metadataCacheEnabled;
+    }
+
+    public long getMetadataCacheTtl()
+    {
+        return metadataCacheTtl;
+    }
+
+    public void setMetadataCacheTtl(long metadataCacheTtl)
+    {
+        this.metadataCacheTtl = metadataCacheTtl;
+    }
+
+    public int getNameCacheMaxEntries()
+    {
+        return nameCacheMaxEntries;
+    }
+
+    public void setNameCacheMaxEntries(int nameCacheMaxEntries)
+    {
+        this.nameCacheMaxEntries = nameCacheMaxEntries;
+    }
+
+    public int getMaxCellSize()
+    {
+        return maxCellSize;
+    }
+
+    public void setMaxCellSize(int maxCellSize)
+    {
+        this.maxCellSize = maxCellSize;
+    }
+
+    public List<String> getCompressedColumnFamilies()
+    {
+        return compressedColumnFamilies;
+    }
+
+    public void setCompressedColumnFamilies(List<String> compressedColumnFamilies)
+    {
+        this.compressedColumnFamilies = compressedColumnFamilies;
+    }
+
+    public int getValueCompressionThreshold()
+    {
+        return valueCompressionThreshold;
+    }
+
+    public void setValueCompressionThreshold(int valueCompressionThreshold)
+    {
+        this.valueCompressionThreshold = valueCompressionThreshold;
+    }
+
+    public List<String> getSaltedTables()
+    {
+        return saltedTables;
+    }
+
+    public void setSaltedTables(List<String> saltedTables)
+    {
+        this.saltedTables = saltedTables;
+    }
+
+    public int getSaltBuckets()
+    {
+        return saltBuckets;
+    }
+
+    public void setSaltBuckets(int saltBuckets)
+    {
+        this.saltBuckets = saltBuckets;
+    }
+
     /** @see org.mule.api.lifecycle.Initialisable#initialise() */
     public void initialise() throws InitialisationException
     {
         if (facade == null)
         {
-            setFacade(new RPCHBaseService());
+            RPCHBaseService service = new RPCHBaseService();
+            service.setTablePoolSize(tablePoolSize);
+            service.setTablePoolExhaustedAction(tablePoolExhaustedAction);
+            service.setTablePoolMaxWait(tablePoolMaxWait);
+            service.setWriteBufferEnabled(writeBufferEnabled);
+            service.setWriteBufferSize(writeBufferSize);
+            service.setWriteBufferMaxAge(writeBufferMaxAge);
+            service.setWriteBufferLimit(writeBufferLimit);
+            service.setAsyncWriteEnabled(asyncWriteEnabled);
+            service.setAsyncWriteQueueSize(asyncWriteQueueSize);
+            service.setAsyncWriteThreads(asyncWriteThreads);
+            service.setAsyncWriteBatchSize(asyncWriteBatchSize);
+            service.setAsyncWriteFullAction(asyncWriteFullAction);
+            service.setAsyncWriteMaxWait(asyncWriteMaxWait);
+            service.setValueEncoding(valueEncoding);
+            if (valueCodec != null)
+            {
+                service.setValueCodec(valueCodec);
+            }
+            service.setColumnFamilyCodecs(columnFamilyCodecs);
+            service.setScanPrefetchPages(scanPrefetchPages);
+            service.setScanTargetPageBytes(scanTargetPageBytes);
+            service.setScanTargetPageMillis(scanTargetPageMillis);
+            service.setScanMaxFetchSize(scanMaxFetchSize);
+            if (scannerMaxResultSize != null)
+            {
+                service.setScannerMaxResultSize(scannerMaxResultSize);
+            }
+            service.setScannerMaxIdleMillis(scannerMaxIdleMillis);
+            service.setRowCacheEnabled(rowCacheEnabled);
+            service.setRowCacheMaxEntries(rowCacheMaxEntries);
+            service.setRowCacheMaxBytes(rowCacheMaxBytes);
+            service.setRowCacheTtl(rowCacheTtl);
+            service.setMetadataCacheEnabled(metadataCacheEnabled);
+            service.setMetadataCacheTtl(metadataCacheTtl);
+            service.setNameCacheMaxEntries(nameCacheMaxEntries);
+            service.setMaxCellSize(maxCellSize);
+            service.setCompressedColumnFamilies(compressedColumnFamilies);
+            service.setValueCompressionThreshold(valueCompressionThreshold);
+            service.setSaltedTables(saltedTables);
+            service.setSaltBuckets(saltBuckets);
+            setFacade(service);
             facade.addProperties(properties);
         }
+        try
+        {
+            facade.connect();
+        }
+        catch (HBaseServiceException e)
+        {
+            throw new InitialisationException(e, this);
+        }
+    }
+
+    /** @see org.mule.api.lifecycle.Disposable#dispose() */
+    public void dispose()
+    {
+        if (facade != null)
+        {
+            facade.disconnect();
+        }
     }
 
 }
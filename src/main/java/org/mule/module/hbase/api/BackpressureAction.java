@@ -0,0 +1,26 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+/**
+ * What to do when the asynchronous write queue is full
+ */
+public enum BackpressureAction
+{
+    /**
+     * Wait until the queue has space again, up to the configured max wait
+     */
+    BLOCK,
+    /**
+     * Fail immediately
+     */
+    FAIL
+}
@@ -10,13 +10,23 @@
 
 package org.mule.module.hbase.api;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.UUID;
 
 import org.apache.commons.lang.UnhandledException;
+import org.apache.commons.lang.Validate;
+import org.apache.hadoop.hbase.util.Bytes;
 
 /**
  * Object to byte array converter.
@@ -25,20 +35,34 @@ import org.apache.commons.lang.UnhandledException;
  */
 public final class ByteArrayConverter
 {
+    /** The first bytes of every Java serialization stream */
+    private static final byte[] SERIALIZATION_MAGIC = new byte[]{(byte) 0xAC, (byte) 0xED};
+
     /**
      * The Charset used for converting strings to byte array
      */
     private final Charset conversionCharset;
+    private final ValueEncoding encoding;
 
     public ByteArrayConverter(Charset convertionCharset)
     {
+        this(convertionCharset, ValueEncoding.SERIALIZED);
+    }
+
+    public ByteArrayConverter(Charset convertionCharset, ValueEncoding encoding)
+    {
+        Validate.notNull(encoding, "encoding must not be null");
         this.conversionCharset = convertionCharset;
+        this.encoding = encoding;
     }
 
     /**
      * Converts the given object into a byte array. If the object is a byte array, is
      * is returned as is. If the object is an string, it is written in the provided
-     * conversionCharset given by constructor. Any other serializable object is
+     * conversionCharset given by constructor. Byte buffers and input streams are
+     * read, see {@link #readFully(Object, int)}. Boxed primitives, BigDecimals, dates
+     * and UUIDs are written in fixed width when the encoding is
+     * {@link ValueEncoding#FIXED_WIDTH}. Any other serializable object is
      * converted into a byte array using serialization.
      * 
      * @param o
@@ -54,20 +78,325 @@ public final class ByteArrayConverter
         {
             return ((String) o).getBytes(conversionCharset);
         }
+        if (isStreamed(o))
+        {
+            return readFully(o, 0);
+        }
+        if (encoding == ValueEncoding.FIXED_WIDTH)
+        {
+            byte[] fixedWidth = toFixedWidth(o);
+            if (fixedWidth != null)
+            {
+                return fixedWidth;
+            }
+        }
         if (o instanceof Serializable)
         {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ExposedByteArrayOutputStream out = new ExposedByteArrayOutputStream(256);
             try
             {
-                new ObjectOutputStream(out).writeObject(o);
+                ObjectOutputStream objectOut = new ObjectOutputStream(out);
+                objectOut.writeObject(o);
+                objectOut.flush();
             }
             catch (IOException e)
             {
                 throw new UnhandledException(e);
             }
-            return out.toByteArray();
+            return out.bytes();
         }
         throw new IllegalArgumentException("Object " + o + " can not be converted to byte array");
     }
 
+    /**
+     * Converts the given byte array back into an object of the given type, as
+     * written by {@link #toByteArray(Object)}. Serialized values are read whatever
+     * the encoding is, so that switching to {@link ValueEncoding#FIXED_WIDTH} does
+     * not break reading existing values.
+     */
+    public <T> T fromByteArray(byte[] bytes, Class<T> type)
+    {
+        Validate.notNull(type, "type must not be null");
+        if (bytes == null)
+        {
+            return null;
+        }
+        if (type == byte[].class)
+        {
+            return type.cast(bytes);
+        }
+        if (type == String.class)
+        {
+            return type.cast(new String(bytes, conversionCharset));
+        }
+        int width = widthOf(type);
+        if (encoding == ValueEncoding.FIXED_WIDTH && width != 0 && !isSerialized(bytes, width))
+        {
+            return type.cast(fromFixedWidth(bytes, type));
+        }
+        try
+        {
+            return type.cast(new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject());
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("Value can not be read as " + type.getName(), e);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IllegalArgumentException("Value can not be read as " + type.getName(), e);
+        }
+    }
+
+    /** Answers if the given value is a {@link ByteBuffer} or an {@link InputStream} */
+    public static boolean isStreamed(Object o)
+    {
+        return o instanceof ByteBuffer || o instanceof InputStream;
+    }
+
+    /**
+     * Reads the remaining bytes of the given {@link ByteBuffer} or
+     * {@link InputStream} into an array, that is allocated once when the amount of
+     * bytes is known in advance - as for heap buffers, files and in-memory streams.
+     * Heap buffers that wrap a whole array answer it as is. Streams are closed.
+     * 
+     * @param maxSize the max amount of bytes to read, or 0 for any
+     * @throws IllegalArgumentException as soon as the value is known to be larger
+     *             than maxSize
+     */
+    public static byte[] readFully(Object o, int maxSize)
+    {
+        if (o instanceof ByteBuffer)
+        {
+            ByteBuffer buffer = ((ByteBuffer) o).duplicate();
+            checkSize(buffer.remaining(), maxSize);
+            if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length)
+            {
+                return buffer.array();
+            }
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+        Validate.isTrue(o instanceof InputStream, "Only byte buffers and input streams can be read");
+        InputStream in = (InputStream) o;
+        try
+        {
+            try
+            {
+                int available = in.available();
+                checkSize(available, maxSize);
+                ExposedByteArrayOutputStream out = new ExposedByteArrayOutputStream(Math.max(available, 256));
+                long size = 0;
+                int read;
+                while ((read = out.readFrom(in)) >= 0)
+                {
+                    size += read;
+                    checkSize(size, maxSize);
+                }
+                return out.bytes();
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UnhandledException(e);
+        }
+    }
+
+    private static void checkSize(long size, int maxSize)
+    {
+        if (maxSize > 0 && size > maxSize)
+        {
+            throw new IllegalArgumentException("Value of at least " + size
+                                               + " bytes exceeds the max cell size of " + maxSize + " bytes");
+        }
+    }
+
+    public ValueEncoding getEncoding()
+    {
+        return encoding;
+    }
+
+    /** Answers if values of the given type are written in fixed width */
+    public static boolean hasFixedWidth(Class<?> type)
+    {
+        return widthOf(type) != 0;
+    }
+
+    private static byte[] toFixedWidth(Object o)
+    {
+        if (o instanceof Long)
+        {
+            return Bytes.toBytes((Long) o);
+        }
+        if (o instanceof Integer)
+        {
+            return Bytes.toBytes((Integer) o);
+        }
+        if (o instanceof Short)
+        {
+            return Bytes.toBytes((Short) o);
+        }
+        if (o instanceof Byte)
+        {
+            return new byte[]{(Byte) o};
+        }
+        if (o instanceof Double)
+        {
+            return Bytes.toBytes((Double) o);
+        }
+        if (o instanceof Float)
+        {
+            return Bytes.toBytes((Float) o);
+        }
+        if (o instanceof Boolean)
+        {
+            return Bytes.toBytes((Boolean) o);
+        }
+        if (o instanceof BigDecimal)
+        {
+            BigDecimal decimal = (BigDecimal) o;
+            return Bytes.add(Bytes.toBytes(decimal.scale()), decimal.unscaledValue().toByteArray());
+        }
+        if (o instanceof Date)
+        {
+            return Bytes.toBytes(((Date) o).getTime());
+        }
+        if (o instanceof UUID)
+        {
+            UUID uuid = (UUID) o;
+            return Bytes.add(Bytes.toBytes(uuid.getMostSignificantBits()),
+                Bytes.toBytes(uuid.getLeastSignificantBits()));
+        }
+        return null;
+    }
+
+    private static Object fromFixedWidth(byte[] bytes, Class<?> type)
+    {
+        int width = widthOf(type);
+        Validate.isTrue(width < 0 ? bytes.length > -width : bytes.length == width,
+            "Value is not a fixed width " + type.getName());
+        if (type == Long.class)
+        {
+            return Bytes.toLong(bytes);
+        }
+        if (type == Integer.class)
+        {
+            return Bytes.toInt(bytes);
+        }
+        if (type == Short.class)
+        {
+            return Bytes.toShort(bytes);
+        }
+        if (type == Byte.class)
+        {
+            return bytes[0];
+        }
+        if (type == Double.class)
+        {
+            return Bytes.toDouble(bytes);
+        }
+        if (type == Float.class)
+        {
+            return Bytes.toFloat(bytes);
+        }
+        if (type == Boolean.class)
+        {
+            return Bytes.toBoolean(bytes);
+        }
+        if (type == BigDecimal.class)
+        {
+            return new BigDecimal(new BigInteger(Bytes.tail(bytes, bytes.length - Bytes.SIZEOF_INT)),
+                Bytes.toInt(bytes));
+        }
+        if (type == Date.class)
+        {
+            return new Date(Bytes.toLong(bytes));
+        }
+        return new UUID(Bytes.toLong(bytes), Bytes.toLong(bytes, Bytes.SIZEOF_LONG));
+    }
+
+    /**
+     * Answers the width of the fixed width encoding of the given type, its min width
+     * minus one as a negative number if it has variable width, or 0 if it has none
+     */
+    private static int widthOf(Class<?> type)
+    {
+        if (type == Long.class || type == Double.class || type == Date.class)
+        {
+            return Bytes.SIZEOF_LONG;
+        }
+        if (type == Integer.class || type == Float.class)
+        {
+            return Bytes.SIZEOF_INT;
+        }
+        if (type == Short.class)
+        {
+            return Bytes.SIZEOF_SHORT;
+        }
+        if (type == Byte.class || type == Boolean.class)
+        {
+            return Bytes.SIZEOF_BYTE;
+        }
+        if (type == UUID.class)
+        {
+            return 2 * Bytes.SIZEOF_LONG;
+        }
+        if (type == BigDecimal.class)
+        {
+            return -Bytes.SIZEOF_INT;
+        }
+        return 0;
+    }
+
+    /**
+     * Answers if the given value looks like a serialized one. Serialized boxed
+     * primitives, dates and UUIDs are far longer than their fixed width encoding
+     */
+    private static boolean isSerialized(byte[] bytes, int width)
+    {
+        return (width < 0 || bytes.length > width) && bytes.length > SERIALIZATION_MAGIC.length
+               && bytes[0] == SERIALIZATION_MAGIC[0] && bytes[1] == SERIALIZATION_MAGIC[1];
+    }
+
+    /** Lets values be read in place, and answered without a copy when it fits */
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream
+    {
+        public ExposedByteArrayOutputStream(int size)
+        {
+            super(size);
+        }
+
+        /** Reads from the given stream into the free space of the buffer */
+        public int readFrom(InputStream in) throws IOException
+        {
+            if (count == buf.length)
+            {
+                int next = in.read();
+                if (next < 0)
+                {
+                    return -1;
+                }
+                write(next);
+                return 1;
+            }
+            int read = in.read(buf, count, buf.length - count);
+            if (read > 0)
+            {
+                count += read;
+            }
+            return read;
+        }
+
+        /** Answers the written bytes, copying them only if the buffer is not full */
+        public byte[] bytes()
+        {
+            return count == buf.length ? buf : Bytes.head(buf, count);
+        }
+    }
 }
@@ -0,0 +1,135 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * A value at a given cell (row + family:qualifier + optional timestamp), used for
+ * batch operations
+ */
+public final class CellValue
+{
+    private final String row;
+    private final String columnFamilyName;
+    private final String columnQualifier;
+    private final Long timestamp;
+    private final Object value;
+
+    public CellValue(String row, String columnFamilyName, String columnQualifier, Long timestamp, Object value)
+    {
+        Validate.notNull(row, "row must not be null");
+        Validate.notNull(columnFamilyName, "columnFamilyName must not be null");
+        Validate.notNull(columnQualifier, "columnQualifier must not be null");
+        Validate.notNull(value, "value must not be null");
+        this.row = row;
+        this.columnFamilyName = columnFamilyName;
+        this.columnQualifier = columnQualifier;
+        this.timestamp = timestamp;
+        this.value = value;
+    }
+
+    /**
+     * Creates a cell value from a map with the <code>rowKey</code>,
+     * <code>columnFamilyName</code>, <code>columnQualifier</code>,
+     * <code>value</code> and optional <code>timestamp</code> entries.
+     */
+    public static CellValue fromMap(Map<?, ?> map)
+    {
+        Object timestamp = map.get("timestamp");
+        return new CellValue((String) map.get("rowKey"), (String) map.get("columnFamilyName"),
+            (String) map.get("columnQualifier"), timestamp == null ? null : Long.valueOf(timestamp.toString()),
+            map.get("value"));
+    }
+
+    /**
+     * Creates cell values from each element of the given collection, which must be
+     * either a {@link CellValue} or a map as specified in {@link #fromMap(Map)}
+     */
+    public static List<CellValue> fromCollection(Collection<?> collection)
+    {
+        List<CellValue> cells = new ArrayList<CellValue>(collection.size());
+        for (Object element : collection)
+        {
+            if (element instanceof CellValue)
+            {
+                cells.add((CellValue) element);
+            }
+            else if (element instanceof Map<?, ?>)
+            {
+                cells.add(fromMap((Map<?, ?>) element));
+            }
+            else
+            {
+                throw new IllegalArgumentException("Element " + element + " can not be converted to a cell value");
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Creates cell values, with no timestamp, from a row&rarr;family&rarr;qualifier
+     * map of values
+     */
+    public static List<CellValue> fromRowMap(Map<String, ? extends Map<String, ? extends Map<String, ?>>> rows)
+    {
+        List<CellValue> cells = new ArrayList<CellValue>();
+        for (Entry<String, ? extends Map<String, ? extends Map<String, ?>>> row : rows.entrySet())
+        {
+            for (Entry<String, ? extends Map<String, ?>> family : row.getValue().entrySet())
+            {
+                for (Entry<String, ?> qualifier : family.getValue().entrySet())
+                {
+                    cells.add(new CellValue(row.getKey(), family.getKey(), qualifier.getKey(), null,
+                        qualifier.getValue()));
+                }
+            }
+        }
+        return cells;
+    }
+
+    public String getRow()
+    {
+        return row;
+    }
+
+    public String getColumnFamilyName()
+    {
+        return columnFamilyName;
+    }
+
+    public String getColumnQualifier()
+    {
+        return columnQualifier;
+    }
+
+    public Long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public Object getValue()
+    {
+        return value;
+    }
+
+    @Override
+    public String toString()
+    {
+        return row + "/" + columnFamilyName + ":" + columnQualifier + "/" + timestamp + "=" + value;
+    }
+}
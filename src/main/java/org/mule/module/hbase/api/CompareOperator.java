@@ -0,0 +1,34 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+
+/**
+ * Comparison operators used by server-side filters
+ */
+public enum CompareOperator
+{
+    LESS(CompareOp.LESS), LESS_OR_EQUAL(CompareOp.LESS_OR_EQUAL), EQUAL(CompareOp.EQUAL), NOT_EQUAL(
+                    CompareOp.NOT_EQUAL), GREATER_OR_EQUAL(CompareOp.GREATER_OR_EQUAL), GREATER(CompareOp.GREATER);
+
+    private final CompareOp compareOp;
+
+    private CompareOperator(CompareOp compareOp)
+    {
+        this.compareOp = compareOp;
+    }
+
+    public CompareOp getCompareOp()
+    {
+        return compareOp;
+    }
+}
@@ -0,0 +1,319 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.commons.lang.Validate;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * A read-only family to qualifier to value view of a {@link Result}, that holds
+ * the latest version of each cell decoded with the {@link ValueCodec} of its
+ * family. Values are decoded lazily, the first time each one is accessed, so
+ * reading a few columns of a wide row costs just those columns.
+ */
+public final class DecodedRow extends AbstractMap<String, Map<String, Object>>
+{
+    private static final Charset UTF8 = Charset.forName("utf-8");
+    /** Reads fixed width values, and serialized ones whatever the encoding was */
+    private static final ByteArrayConverter CONVERTER = new ByteArrayConverter(UTF8, ValueEncoding.FIXED_WIDTH);
+
+    private final Result result;
+    private final ValueCodec defaultCodec;
+    private final Map<String, ValueCodec> familyCodecs;
+    private Map<String, Map<String, Object>> families;
+
+    /**
+     * @param result the result to decode
+     * @param defaultCodec the codec of the families that have none of their own
+     * @param familyCodecs the codecs of specific families, by family name
+     */
+    public DecodedRow(Result result, ValueCodec defaultCodec, Map<String, ValueCodec> familyCodecs)
+    {
+        Validate.notNull(result, "result must not be null");
+        Validate.notNull(defaultCodec, "defaultCodec must not be null");
+        Validate.notNull(familyCodecs, "familyCodecs must not be null");
+        this.result = result;
+        this.defaultCodec = defaultCodec;
+        this.familyCodecs = familyCodecs;
+    }
+
+    public byte[] getRow()
+    {
+        return result.getRow();
+    }
+
+    /** Answers the row key, decoded as UTF-8, or null if the row is empty */
+    public String getRowKey()
+    {
+        byte[] row = result.getRow();
+        return row != null ? new String(row, UTF8) : null;
+    }
+
+    public Result getResult()
+    {
+        return result;
+    }
+
+    /** Answers the decoded value of the given column, or null if there is none */
+    public Object getValue(String columnFamilyName, String columnQualifier)
+    {
+        Map<String, Object> family = get(columnFamilyName);
+        return family != null ? family.get(columnQualifier) : null;
+    }
+
+    /**
+     * Answers the decoded value of the given column, or null if there is none.
+     * Values that codecs leave as raw bytes, like those of the
+     * {@link org.mule.module.hbase.api.codec.DefaultValueCodec}, are converted to
+     * the given type as {@link ByteArrayConverter#fromByteArray(byte[], Class)} does.
+     *
+     * @throws ClassCastException if the value is not of the given type
+     * @throws IllegalArgumentException if raw bytes can not be read as the given type
+     */
+    public <T> T getValue(String columnFamilyName, String columnQualifier, Class<T> type)
+    {
+        Object value = getValue(columnFamilyName, columnQualifier);
+        if (value instanceof byte[] && type != byte[].class)
+        {
+            return CONVERTER.fromByteArray((byte[]) value, type);
+        }
+        return type.cast(value);
+    }
+
+    @Override
+    public Map<String, Object> get(Object columnFamilyName)
+    {
+        return families().get(columnFamilyName);
+    }
+
+    @Override
+    public boolean containsKey(Object columnFamilyName)
+    {
+        return families().containsKey(columnFamilyName);
+    }
+
+    @Override
+    public Set<Entry<String, Map<String, Object>>> entrySet()
+    {
+        return families().entrySet();
+    }
+
+    /** Splits the cells by family, without decoding them */
+    private Map<String, Map<String, Object>> families()
+    {
+        if (families == null)
+        {
+            Map<String, Map<String, Object>> families = new LinkedHashMap<String, Map<String, Object>>();
+            KeyValue[] cells = result.raw();
+            int from = 0;
+            for (int i = 1; cells != null && i <= cells.length; i++)
+            {
+                if (i == cells.length || !cells[i].matchingFamily(cells[from].getFamily()))
+                {
+                    String name = new String(cells[from].getFamily(), UTF8);
+                    ValueCodec codec = familyCodecs.get(name);
+                    families.put(name, new Family(cells, from, i, codec != null ? codec : defaultCodec));
+                    from = i;
+                }
+            }
+            this.families = Collections.unmodifiableMap(families);
+        }
+        return families;
+    }
+
+    /** The latest cells of a family, that are the first of each qualifier */
+    private static final class Family extends AbstractMap<String, Object>
+    {
+        private final KeyValue[] cells;
+        private final int from;
+        private final int to;
+        private final ValueCodec codec;
+        private final Map<String, Object> decoded = new HashMap<String, Object>();
+
+        public Family(KeyValue[] cells, int from, int to, ValueCodec codec)
+        {
+            this.cells = cells;
+            this.from = from;
+            this.to = to;
+            this.codec = codec;
+        }
+
+        @Override
+        public Object get(Object qualifier)
+        {
+            if (!(qualifier instanceof String))
+            {
+                return null;
+            }
+            if (decoded.containsKey(qualifier))
+            {
+                return decoded.get(qualifier);
+            }
+            KeyValue cell = find(Bytes.toBytes((String) qualifier));
+            return cell != null ? decode((String) qualifier, cell) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object qualifier)
+        {
+            return qualifier instanceof String
+                   && (decoded.containsKey(qualifier) || find(Bytes.toBytes((String) qualifier)) != null);
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet()
+        {
+            return new AbstractSet<Entry<String, Object>>()
+            {
+                @Override
+                public Iterator<Entry<String, Object>> iterator()
+                {
+                    return new CellIterator();
+                }
+
+                @Override
+                public int size()
+                {
+                    int size = 0;
+                    for (int i = from; i < to; i = nextQualifier(i))
+                    {
+                        size++;
+                    }
+                    return size;
+                }
+            };
+        }
+
+        private KeyValue find(byte[] qualifier)
+        {
+            for (int i = from; i < to; i = nextQualifier(i))
+            {
+                if (Bytes.equals(cells[i].getQualifier(), qualifier))
+                {
+                    return cells[i];
+                }
+            }
+            return null;
+        }
+
+        /** Answers the index of the first cell after the versions of the given one */
+        private int nextQualifier(int i)
+        {
+            byte[] qualifier = cells[i].getQualifier();
+            do
+            {
+                i++;
+            }
+            while (i < to && Bytes.equals(cells[i].getQualifier(), qualifier));
+            return i;
+        }
+
+        private Object decode(String qualifier, KeyValue cell)
+        {
+            Object value = codec.decode(cell.getValue());
+            decoded.put(qualifier, value);
+            return value;
+        }
+
+        private final class CellIterator implements Iterator<Entry<String, Object>>
+        {
+            private int next = from;
+
+            public boolean hasNext()
+            {
+                return next < to;
+            }
+
+            public Entry<String, Object> next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                Entry<String, Object> entry = new CellEntry(cells[next]);
+                next = nextQualifier(next);
+                return entry;
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        }
+
+        /** An entry whose value is decoded when first accessed */
+        private final class CellEntry implements Entry<String, Object>
+        {
+            private final KeyValue cell;
+            private final String qualifier;
+
+            public CellEntry(KeyValue cell)
+            {
+                this.cell = cell;
+                this.qualifier = new String(cell.getQualifier(), UTF8);
+            }
+
+            public String getKey()
+            {
+                return qualifier;
+            }
+
+            public Object getValue()
+            {
+                return decoded.containsKey(qualifier) ? decoded.get(qualifier) : decode(qualifier, cell);
+            }
+
+            public Object setValue(Object value)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public boolean equals(Object o)
+            {
+                if (!(o instanceof Entry))
+                {
+                    return false;
+                }
+                Entry<?, ?> other = (Entry<?, ?>) o;
+                Object value = getValue();
+                return qualifier.equals(other.getKey())
+                       && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+            }
+
+            @Override
+            public int hashCode()
+            {
+                Object value = getValue();
+                return qualifier.hashCode() ^ (value == null ? 0 : value.hashCode());
+            }
+
+            @Override
+            public String toString()
+            {
+                return qualifier + "=" + getValue();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+import org.mule.api.lifecycle.Disposable;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.lang.Validate;
+import org.apache.hadoop.hbase.client.Result;
+
+/**
+ * Answers each result of an underlying Iterable as a {@link DecodedRow}, as it is
+ * iterated, so decoding a scan does not hold more rows in memory than the scan
+ * itself.
+ */
+public final class DecodedRowIterable implements Iterable<DecodedRow>, Disposable
+{
+    private final Iterable<Result> results;
+    private final ValueCodec defaultCodec;
+    private final Map<String, ValueCodec> familyCodecs;
+
+    public DecodedRowIterable(Iterable<Result> results, ValueCodec defaultCodec, Map<String, ValueCodec> familyCodecs)
+    {
+        Validate.notNull(results, "results must not be null");
+        Validate.notNull(defaultCodec, "defaultCodec must not be null");
+        Validate.notNull(familyCodecs, "familyCodecs must not be null");
+        this.results = results;
+        this.defaultCodec = defaultCodec;
+        this.familyCodecs = familyCodecs;
+    }
+
+    public Iterator<DecodedRow> iterator()
+    {
+        final Iterator<Result> iterator = results.iterator();
+        return new Iterator<DecodedRow>()
+        {
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            public DecodedRow next()
+            {
+                return new DecodedRow(iterator.next(), defaultCodec, familyCodecs);
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /** Disposes the underlying results, if they are {@link Disposable} */
+    public void dispose()
+    {
+        if (results instanceof Disposable)
+        {
+            ((Disposable) results).dispose();
+        }
+    }
+}
@@ -10,8 +10,10 @@
 
 package org.mule.module.hbase.api;
 
-
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.RowLock;
@@ -83,6 +85,62 @@ public interface HBaseService
     // ------------ Row Operations
     Result get(String tableName, String rowKey, Integer maxVersions, Long timestamp);
 
+    /**
+     * Answers the values at the given row, restricted to the given columns and time
+     * range.
+     * 
+     * @param columns optional columns to fetch, either as <code>family</code> - for
+     *            all the qualifiers of the family - or as
+     *            <code>family:qualifier</code>. All the columns are fetched if null
+     * @param timestamp optional exact version to fetch. Can not be combined with a
+     *            time range
+     * @param minTimestamp optional inclusive lower bound of the versions to fetch
+     * @param maxTimestamp optional exclusive upper bound of the versions to fetch
+     */
+    Result get(String tableName,
+               String rowKey,
+               Collection<String> columns,
+               Integer maxVersions,
+               Long timestamp,
+               Long minTimestamp,
+               Long maxTimestamp);
+
+    /**
+     * Answers the values at the given rows in a single round trip.
+     * 
+     * @param columnFamilyName optional family to restrict the answered values to
+     * @param columnQualifier optional qualifier, within the family, to restrict the
+     *            answered values to
+     * @return a result per row key, in the same order. Results of missing rows are
+     *         empty
+     */
+    List<Result> getAll(String tableName,
+                        Collection<String> rowKeys,
+                        String columnFamilyName,
+                        String columnQualifier,
+                        Integer maxVersions,
+                        Long timestamp);
+
+    /**
+     * Answers a view of the given result that decodes the latest version of each
+     * cell with the codec of its column family, as it is accessed
+     */
+    DecodedRow decode(Result result);
+
+    /**
+     * Answers the given results as {@link DecodedRow}s, lazily. Disposing the
+     * answered Iterable disposes the given one
+     */
+    Iterable<DecodedRow> decodeAll(Iterable<Result> results);
+
+    /**
+     * Answers the value at the given cell, decoded with the codec of its column
+     * family, or null if there is none.
+     * 
+     * @param timestamp optional exact version to fetch. The latest one otherwise
+     */
+    Object getValue(String tableName, String rowKey, String columnFamilyName, String columnQualifier, Long timestamp);
+
     /**
      * Saves the value at the specified cell (row + family:qualifier + timestamp)
      * 
@@ -97,6 +155,32 @@ public interface HBaseService
              boolean writeToWAL,
              RowLock lock);
 
+    /**
+     * Saves the value at the specified cell without waiting for the server, if
+     * asynchronous writes are enabled. Otherwise, the value is saved synchronously.
+     * 
+     * @return a handle that completes once the value has been written
+     */
+    Future<Void> putAsync(String tableName,
+                          String row,
+                          String columnFamilyName,
+                          String columnQualifier,
+                          Long timestamp,
+                          Object value,
+                          boolean writeToWAL);
+
+    /**
+     * Saves all the given values in a single batch. Values of the same row are
+     * grouped in a single put.
+     */
+    void putAll(String tableName, Collection<CellValue> values, boolean writeToWAL);
+
+    /**
+     * Sends the puts buffered on the client for the given table, or for every table
+     * if it is <code>null</code>. Does nothing if write buffering is not enabled.
+     */
+    void flushCommits(String tableName);
+
     /** @return true only if the row exists and is not null */
     boolean exists(String tableName, String row, Integer maxVersions, Long timestamp);
 
@@ -154,6 +238,97 @@ public interface HBaseService
                               String stopRow,
                               int fetchSize);
 
+    /**
+     * Scans across all rows in a table, like
+     * {@link #scan(String, String, String, Long, Long, Integer, boolean, int, String, String, int)}
+     * does, but answering only the rows and cells that satisfy the given filter.
+     * 
+     * @param filter criteria evaluated by the region servers, or <code>null</code>
+     */
+    public Iterable<Result> scan(String tableName,
+                                 String columnFamilyName,
+                                 String columnQualifier,
+                                 Long timestamp,
+                                 Long maxTimestamp,
+                                 Integer caching,
+                                 boolean cacheBlocks,
+                                 int maxVersions,
+                                 String startRow,
+                                 String stopRow,
+                                 int fetchSize,
+                                 ScanFilter filter);
+
+    /**
+     * Scans across all rows in a table, like
+     * {@link #scan(String, String, String, Long, Long, Integer, boolean, int, String, String, int, ScanFilter)}
+     * does, but reading them as the given options say: many regions at once, or
+     * splitting wide rows into many results.
+     * 
+     * @param options how rows are read, or <code>null</code> for the defaults of
+     *            {@link ScanOptions}
+     * @throws IllegalArgumentException if a batch is combined with a filter page
+     *             size or a value comparison on a column
+     */
+    public Iterable<Result> scan(String tableName,
+                                 String columnFamilyName,
+                                 String columnQualifier,
+                                 Long timestamp,
+                                 Long maxTimestamp,
+                                 Integer caching,
+                                 boolean cacheBlocks,
+                                 int maxVersions,
+                                 String startRow,
+                                 String stopRow,
+                                 int fetchSize,
+                                 ScanFilter filter,
+                                 ScanOptions options);
+
+    /**
+     * Scans a bounded page of rows, with a fresh scanner that is closed before
+     * answering. Unlike {@link #scan(String, String, String, Long, Long, Integer, boolean, int, String, String, int, ScanFilter)},
+     * it holds no state between calls: the answered page carries a token that
+     * resumes the scan at the row after it, so deep pages cost the same as the
+     * first.
+     * 
+     * @param maxRows the max amount of rows in the page
+     * @param continuationToken the token of the previous page, or
+     *            <code>null</code> for the first one. It only holds the row to
+     *            resume at, so the other arguments must repeat those of the first
+     *            call
+     * @throws IllegalArgumentException if the token is malformed or was answered
+     *             for other arguments
+     */
+    ScanPage scanPage(String tableName,
+                      String columnFamilyName,
+                      String columnQualifier,
+                      Long timestamp,
+                      Long maxTimestamp,
+                      boolean cacheBlocks,
+                      int maxVersions,
+                      String startRow,
+                      String stopRow,
+                      ScanFilter filter,
+                      int maxRows,
+                      String continuationToken);
+
+    /**
+     * Counts the rows in the given range, reading only their first key.
+     * 
+     * @param columnFamilyName if not <code>null</code>, only rows with values at
+     *            this family are counted
+     * @param startRow the beginning of the range, inclusive, or <code>null</code>
+     * @param stopRow the end of the range, exclusive, or <code>null</code>
+     * @param caching the number of rows fetched per request
+     * @param parallelism the max amount of regions - or buckets, for salted
+     *            tables - counted at once
+     */
+    long countRows(String tableName,
+                   String columnFamilyName,
+                   String startRow,
+                   String stopRow,
+                   int caching,
+                   int parallelism);
+
     /**
      * Atomically increments a column value. If the column value does not yet exist
      * it is initialized to <code>amount</code> and written to the specified column.
@@ -217,6 +392,16 @@ public interface HBaseService
     /** Unlock the row */
     void unlock(String tableName, RowLock lock);
 
+    // ------------ Lifecycle
+    /**
+     * Opens the connection to the cluster, which is shared by every operation until
+     * {@link #disconnect()} is called. Properties must be added before.
+     */
+    void connect();
+
+    /** Closes the connection to the cluster and releases any pooled resource */
+    void disconnect();
+
     // ------------ Configuration
     /**
      * Add the properties to the main configuration. It overrides old properties if
@@ -224,4 +409,10 @@ public interface HBaseService
      */
     void addProperties(Map<String, String> properties);
 
+    /**
+     * @return a snapshot of the service counters and gauges, such as table pool
+     *         usage, keyed by name
+     */
+    Map<String, Number> getStatistics();
+
 }
@@ -27,4 +27,10 @@ public class HBaseServiceException extends RuntimeException
         super(e);
     }
 
+    /** Creates the HBaseServiceException. */
+    public HBaseServiceException(String message)
+    {
+        super(message);
+    }
+
 }
@@ -0,0 +1,34 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+/**
+ * Types of the components of a {@link RowKeyFormat}
+ */
+public enum RowKeyComponentType
+{
+    /**
+     * Strings, in code point order
+     */
+    STRING,
+    /**
+     * Signed longs, in numeric order
+     */
+    LONG,
+    /**
+     * Dates or millis, oldest first
+     */
+    TIMESTAMP,
+    /**
+     * Dates or millis, newest first
+     */
+    REVERSED_TIMESTAMP
+}
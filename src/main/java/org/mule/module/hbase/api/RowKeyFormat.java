@@ -0,0 +1,238 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+
+/**
+ * Encodes typed components into row keys whose order is the order of the
+ * components - the first one first - instead of the order of their text, so that
+ * <code>9</code> goes before <code>10</code> and range scans over any leading
+ * components are tight. Keys are strings, so they can be given wherever a row key
+ * is, and their UTF-8 bytes keep their order:
+ * <ul>
+ * <li>longs and timestamps are written as 16 hex digits, with the sign bit
+ * flipped, and reversed timestamps have all their bits flipped first, which
+ * reverses the order of dates before 1970 too</li>
+ * <li>strings are written as is followed by two NUL chars, and each NUL char of
+ * them as a NUL char followed by a SOH one, so that a string goes before any
+ * longer string that starts with it</li>
+ * </ul>
+ * Encoding just the leading components of a key answers the prefix of every key
+ * that starts with them.
+ */
+public final class RowKeyFormat
+{
+    private static final Charset UTF8 = Charset.forName("utf-8");
+    private static final char TERMINATOR = '\u0000';
+    private static final char ESCAPE = '\u0001';
+    private static final int HEX_WIDTH = 16;
+
+    private final List<RowKeyComponentType> types;
+
+    public RowKeyFormat(List<RowKeyComponentType> types)
+    {
+        Validate.notEmpty(types, "types must not be empty");
+        Validate.noNullElements(types, "types must not be null");
+        this.types = Collections.unmodifiableList(new ArrayList<RowKeyComponentType>(types));
+    }
+
+    /**
+     * Answers the format of the given comma separated component types, like
+     * <code>STRING,REVERSED_TIMESTAMP</code>
+     */
+    public static RowKeyFormat parse(String types)
+    {
+        Validate.isTrue(StringUtils.isNotBlank(types), "types must not be blank");
+        List<RowKeyComponentType> parsed = new ArrayList<RowKeyComponentType>();
+        for (String type : StringUtils.split(types, ','))
+        {
+            parsed.add(RowKeyComponentType.valueOf(type.trim()));
+        }
+        return new RowKeyFormat(parsed);
+    }
+
+    public List<RowKeyComponentType> getTypes()
+    {
+        return types;
+    }
+
+    /**
+     * Answers the row key of the given components, or the prefix of the keys that
+     * start with them if there are fewer components than types
+     */
+    public String encode(List<?> components)
+    {
+        Validate.notNull(components, "components must not be null");
+        Validate.isTrue(components.size() <= types.size(), "Expected at most " + types.size() + " components");
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < components.size(); i++)
+        {
+            Object component = components.get(i);
+            Validate.notNull(component, "component " + i + " must not be null");
+            switch (types.get(i))
+            {
+                case STRING :
+                    appendString(key, component.toString());
+                    break;
+                case LONG :
+                    appendLong(key, toLong(component));
+                    break;
+                case TIMESTAMP :
+                    appendLong(key, toMillis(component));
+                    break;
+                default :
+                    appendLong(key, ~toMillis(component));
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Answers the lowest key after every key that starts with the given
+     * components, that is, the stop row of a scan of all of them
+     */
+    public String encodePrefixEnd(List<?> components)
+    {
+        Validate.notEmpty(components, "components must not be empty");
+        StringBuilder key = new StringBuilder(encode(components));
+        // no encoding ends with the highest char, so there is no carry
+        key.setCharAt(key.length() - 1, (char) (key.charAt(key.length() - 1) + 1));
+        return key.toString();
+    }
+
+    /** Answers the components of the given row key */
+    public List<Object> decode(String key)
+    {
+        Validate.notNull(key, "key must not be null");
+        List<Object> components = new ArrayList<Object>(types.size());
+        int position = 0;
+        for (RowKeyComponentType type : types)
+        {
+            if (type == RowKeyComponentType.STRING)
+            {
+                StringBuilder component = new StringBuilder();
+                position = readString(key, position, component);
+                components.add(component.toString());
+                continue;
+            }
+            Validate.isTrue(position + HEX_WIDTH <= key.length(), "Key is shorter than its format");
+            long value = readLong(key.substring(position, position + HEX_WIDTH));
+            position += HEX_WIDTH;
+            if (type == RowKeyComponentType.LONG)
+            {
+                components.add(value);
+            }
+            else
+            {
+                components.add(new Date(type == RowKeyComponentType.TIMESTAMP ? value : ~value));
+            }
+        }
+        Validate.isTrue(position == key.length(), "Key is longer than its format");
+        return components;
+    }
+
+    /** Answers the components of the given row key bytes */
+    public List<Object> decode(byte[] key)
+    {
+        Validate.notNull(key, "key must not be null");
+        return decode(new String(key, UTF8));
+    }
+
+    private static void appendString(StringBuilder key, String component)
+    {
+        for (int i = 0; i < component.length(); i++)
+        {
+            char c = component.charAt(i);
+            key.append(c);
+            if (c == TERMINATOR)
+            {
+                key.append(ESCAPE);
+            }
+        }
+        key.append(TERMINATOR).append(TERMINATOR);
+    }
+
+    private static int readString(String key, int position, StringBuilder component)
+    {
+        while (position + 1 < key.length())
+        {
+            char c = key.charAt(position);
+            if (c != TERMINATOR)
+            {
+                component.append(c);
+                position++;
+                continue;
+            }
+            char next = key.charAt(position + 1);
+            if (next == TERMINATOR)
+            {
+                return position + 2;
+            }
+            Validate.isTrue(next == ESCAPE, "Key has a malformed string component");
+            component.append(TERMINATOR);
+            position += 2;
+        }
+        throw new IllegalArgumentException("Key has an unterminated string component");
+    }
+
+    private static void appendLong(StringBuilder key, long value)
+    {
+        String hex = Long.toHexString(value ^ Long.MIN_VALUE);
+        for (int i = hex.length(); i < HEX_WIDTH; i++)
+        {
+            key.append('0');
+        }
+        key.append(hex);
+    }
+
+    private static long readLong(String hex)
+    {
+        try
+        {
+            long high = Long.parseLong(hex.substring(0, HEX_WIDTH / 2), 16);
+            long low = Long.parseLong(hex.substring(HEX_WIDTH / 2), 16);
+            return (high << 32 | low) ^ Long.MIN_VALUE;
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Key has a malformed numeric component", e);
+        }
+    }
+
+    private static long toLong(Object component)
+    {
+        if (component instanceof Number)
+        {
+            return ((Number) component).longValue();
+        }
+        try
+        {
+            return Long.parseLong(component.toString());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Component " + component + " is not a long", e);
+        }
+    }
+
+    private static long toMillis(Object component)
+    {
+        return component instanceof Date ? ((Date) component).getTime() : toLong(component);
+    }
+}
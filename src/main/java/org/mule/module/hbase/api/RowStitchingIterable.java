@@ -0,0 +1,123 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+import org.mule.api.lifecycle.Disposable;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.lang.Validate;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Groups the partial results of a batched scan back into whole rows. Rows are
+ * stitched lazily: each {@link WideRow} pulls its slices from the underlying scan
+ * as they are read, so no more than one slice is held at once.
+ * <p>
+ * Results must be answered in row key order - that is, parallel scans must be
+ * ordered. Moving to the next row skips the unread slices of the current one.
+ */
+public final class RowStitchingIterable implements Iterable<WideRow>, Disposable
+{
+    private final Iterable<Result> results;
+
+    public RowStitchingIterable(Iterable<Result> results)
+    {
+        Validate.notNull(results, "results must not be null");
+        this.results = results;
+    }
+
+    public Iterator<WideRow> iterator()
+    {
+        return new RowIterator(results.iterator());
+    }
+
+    /** Disposes the underlying results, if they are {@link Disposable} */
+    public void dispose()
+    {
+        if (results instanceof Disposable)
+        {
+            ((Disposable) results).dispose();
+        }
+    }
+
+    /** The rows of a single traversal, sharing its underlying results iterator */
+    static final class RowIterator implements Iterator<WideRow>
+    {
+        private final Iterator<Result> results;
+        private Result pending;
+        private WideRow current;
+
+        public RowIterator(Iterator<Result> results)
+        {
+            this.results = results;
+        }
+
+        public boolean hasNext()
+        {
+            if (current != null)
+            {
+                while (nextSlice(current) != null)
+                {
+                    // skipping the unread slices of the current row
+                }
+            }
+            return pending != null || results.hasNext();
+        }
+
+        public WideRow next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            Result first = pending != null ? pending : results.next();
+            pending = null;
+            current = new WideRow(first, this);
+            return current;
+        }
+
+        /**
+         * Answers the next slice of the given row, or null if there are no more. The
+         * row must be the current one
+         */
+        Result nextSlice(WideRow row)
+        {
+            checkCurrent(row);
+            if (pending != null || !results.hasNext())
+            {
+                return null;
+            }
+            Result slice = results.next();
+            if (Bytes.equals(slice.getRow(), row.getRow()))
+            {
+                return slice;
+            }
+            pending = slice;
+            return null;
+        }
+
+        void checkCurrent(WideRow row)
+        {
+            if (row != current)
+            {
+                throw new IllegalStateException("The row has already been skipped");
+            }
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+/**
+ * Declarative criteria of a scan, evaluated by the region servers. Every criteria
+ * is optional, and rows must satisfy all the ones that are set.
+ */
+public class ScanFilter
+{
+    private String rowPrefix;
+    private String columnPrefix;
+    private String qualifierRegex;
+    private CompareOperator valueCompareOperator;
+    private String valueColumnFamilyName;
+    private String valueColumnQualifier;
+    private Object value;
+    private Long pageSize;
+    private boolean keyOnly;
+
+    /** Answers if no criteria is set */
+    public boolean isEmpty()
+    {
+        return rowPrefix == null && columnPrefix == null && qualifierRegex == null
+               && valueCompareOperator == null && pageSize == null && !keyOnly;
+    }
+
+    public String getRowPrefix()
+    {
+        return rowPrefix;
+    }
+
+    /** Sets the prefix the row keys must start with */
+    public void setRowPrefix(String rowPrefix)
+    {
+        this.rowPrefix = rowPrefix;
+    }
+
+    public String getColumnPrefix()
+    {
+        return columnPrefix;
+    }
+
+    /** Sets the prefix the column qualifiers must start with */
+    public void setColumnPrefix(String columnPrefix)
+    {
+        this.columnPrefix = columnPrefix;
+    }
+
+    public String getQualifierRegex()
+    {
+        return qualifierRegex;
+    }
+
+    /** Sets the regular expression the column qualifiers must match */
+    public void setQualifierRegex(String qualifierRegex)
+    {
+        this.qualifierRegex = qualifierRegex;
+    }
+
+    public CompareOperator getValueCompareOperator()
+    {
+        return valueCompareOperator;
+    }
+
+    /**
+     * Sets how values are compared against {@link #getValue()}. If a value column
+     * is set, whole rows are filtered by the value of that column - rows without
+     * it are skipped. Otherwise, each cell is filtered by its own value. Values of
+     * compressed families can only be compared for equality, on a value column.
+     */
+    public void setValueCompareOperator(CompareOperator valueCompareOperator)
+    {
+        this.valueCompareOperator = valueCompareOperator;
+    }
+
+    public String getValueColumnFamilyName()
+    {
+        return valueColumnFamilyName;
+    }
+
+    public void setValueColumnFamilyName(String valueColumnFamilyName)
+    {
+        this.valueColumnFamilyName = valueColumnFamilyName;
+    }
+
+    public String getValueColumnQualifier()
+    {
+        return valueColumnQualifier;
+    }
+
+    public void setValueColumnQualifier(String valueColumnQualifier)
+    {
+        this.valueColumnQualifier = valueColumnQualifier;
+    }
+
+    public Object getValue()
+    {
+        return value;
+    }
+
+    /** Sets the value cells are compared against, converted as put values are */
+    public void setValue(Object value)
+    {
+        this.value = value;
+    }
+
+    public Long getPageSize()
+    {
+        return pageSize;
+    }
+
+    /**
+     * Sets the max amount of rows each region server answers. As regions are
+     * filtered independently, the scan may answer more rows in total - except
+     * for salted tables, whose merged rows are capped to the page size.
+     */
+    public void setPageSize(Long pageSize)
+    {
+        this.pageSize = pageSize;
+    }
+
+    public boolean isKeyOnly()
+    {
+        return keyOnly;
+    }
+
+    /** Sets if only keys are answered, with empty values */
+    public void setKeyOnly(boolean keyOnly)
+    {
+        this.keyOnly = keyOnly;
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+/**
+ * How a scan reads the rows it answers. Unlike {@link ScanFilter}, none of them
+ * changes which cells are answered, only how they are read and split into
+ * results. Defaults read a region at a time, answering whole rows in row key
+ * order.
+ */
+public class ScanOptions
+{
+    private int parallelism = 1;
+    private boolean ordered = true;
+    private Integer batch;
+
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Sets the max amount of regions read at once. The range is not split by
+     * regions if it is 1 or less
+     */
+    public void setParallelism(int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    public boolean isOrdered()
+    {
+        return ordered;
+    }
+
+    /**
+     * Sets if results of a parallel scan are answered in row key order. Otherwise,
+     * they are answered as soon as any region returns them
+     */
+    public void setOrdered(boolean ordered)
+    {
+        this.ordered = ordered;
+    }
+
+    public Integer getBatch()
+    {
+        return batch;
+    }
+
+    /**
+     * Sets the max amount of cells per result, or <code>null</code> for answering
+     * whole rows. Consecutive results may then belong to the same row; see
+     * {@link RowStitchingIterable}. It can not be combined with a filter page size
+     * or a value comparison on a column
+     */
+    public void setBatch(Integer batch)
+    {
+        this.batch = batch;
+    }
+}
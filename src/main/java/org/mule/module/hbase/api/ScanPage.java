@@ -0,0 +1,54 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+import java.util.List;
+
+import org.apache.commons.lang.Validate;
+import org.apache.hadoop.hbase.client.Result;
+
+/**
+ * A bounded page of scan results, and the token that resumes the scan right after
+ * them
+ */
+public final class ScanPage
+{
+    private final List<Result> results;
+    private final String continuationToken;
+
+    public ScanPage(List<Result> results, String continuationToken)
+    {
+        Validate.notNull(results, "results must not be null");
+        this.results = results;
+        this.continuationToken = continuationToken;
+    }
+
+    /** Answers the rows of this page, in row key order */
+    public List<Result> getResults()
+    {
+        return results;
+    }
+
+    /**
+     * Answers the opaque token that scans the next page, or null if this is the last
+     * one
+     */
+    public String getContinuationToken()
+    {
+        return continuationToken;
+    }
+
+    /** Answers if there are rows after this page */
+    public boolean hasMore()
+    {
+        return continuationToken != null;
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+/**
+ * Converts the values of cells to and from the bytes stored in HBase. A codec can
+ * be set for a whole connector, and overridden per column family. Implementations
+ * must be thread safe.
+ */
+public interface ValueCodec
+{
+    /**
+     * Converts the given value into the bytes to store at a cell
+     * 
+     * @throws IllegalArgumentException if the value is not supported by this codec
+     */
+    byte[] encode(Object value);
+
+    /**
+     * Converts the bytes stored at a cell back into a value
+     * 
+     * @throws IllegalArgumentException if the bytes were not encoded by this codec
+     */
+    Object decode(byte[] bytes);
+}
@@ -0,0 +1,29 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+/**
+ * How {@link ByteArrayConverter} encodes values that are neither byte arrays nor
+ * strings
+ */
+public enum ValueEncoding
+{
+    /**
+     * Java serialization, for every serializable value
+     */
+    SERIALIZED,
+    /**
+     * Big-endian fixed-width encodings compatible with HBase <code>Bytes</code> for
+     * boxed primitives, dates and UUIDs, and scale plus unscaled value for
+     * BigDecimals. Any other serializable value is still serialized
+     */
+    FIXED_WIDTH
+}
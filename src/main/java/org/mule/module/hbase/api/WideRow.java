@@ -0,0 +1,108 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+
+/**
+ * A row answered by a {@link RowStitchingIterable}, whose cells are read slice by
+ * slice. Slices can be read just once, and only until the next row is requested.
+ */
+public final class WideRow implements Iterable<Result>
+{
+    private static final Charset UTF8 = Charset.forName("utf-8");
+
+    private final byte[] row;
+    private final RowStitchingIterable.RowIterator rows;
+    private Result first;
+    private boolean read;
+
+    WideRow(Result first, RowStitchingIterable.RowIterator rows)
+    {
+        this.row = first.getRow();
+        this.first = first;
+        this.rows = rows;
+    }
+
+    public byte[] getRow()
+    {
+        return row;
+    }
+
+    /** Answers the row key, decoded as UTF-8 */
+    public String getRowKey()
+    {
+        return new String(row, UTF8);
+    }
+
+    /** Answers the slices of this row, each one with up to the scan batch cells */
+    public Iterator<Result> iterator()
+    {
+        if (read)
+        {
+            throw new IllegalStateException("The slices of the row have already been read");
+        }
+        rows.checkCurrent(this);
+        read = true;
+        return new Iterator<Result>()
+        {
+            private Result next = first;
+
+            public boolean hasNext()
+            {
+                if (next == null)
+                {
+                    next = rows.nextSlice(WideRow.this);
+                }
+                return next != null;
+            }
+
+            public Result next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                Result slice = next;
+                next = null;
+                first = null;
+                return slice;
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Reads every slice of this row into a single result. Unlike iterating it, this
+     * holds every cell of the row in memory at once.
+     */
+    public Result toResult()
+    {
+        List<KeyValue> keyValues = new ArrayList<KeyValue>();
+        for (Result slice : this)
+        {
+            keyValues.addAll(Arrays.asList(slice.raw()));
+        }
+        return new Result(keyValues);
+    }
+}
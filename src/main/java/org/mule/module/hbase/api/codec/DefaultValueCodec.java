@@ -0,0 +1,47 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.codec;
+
+import org.mule.module.hbase.api.ByteArrayConverter;
+import org.mule.module.hbase.api.ValueCodec;
+import org.mule.module.hbase.api.ValueEncoding;
+
+import java.nio.charset.Charset;
+
+/**
+ * Encodes values with a {@link ByteArrayConverter}: byte arrays as is, strings in
+ * UTF-8, and any other value as the given {@link ValueEncoding} says. As the type
+ * of the values is not stored, they are decoded as raw bytes.
+ */
+public class DefaultValueCodec implements ValueCodec
+{
+    private final ByteArrayConverter converter;
+
+    public DefaultValueCodec()
+    {
+        this(ValueEncoding.SERIALIZED);
+    }
+
+    public DefaultValueCodec(ValueEncoding encoding)
+    {
+        converter = new ByteArrayConverter(Charset.forName("utf-8"), encoding);
+    }
+
+    public byte[] encode(Object value)
+    {
+        return converter.toByteArray(value);
+    }
+
+    public Object decode(byte[] bytes)
+    {
+        return bytes;
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.codec;
+
+import org.mule.module.hbase.api.ByteArrayConverter;
+import org.mule.module.hbase.api.ValueCodec;
+import org.mule.module.hbase.api.ValueEncoding;
+
+import java.nio.charset.Charset;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Stores values of a single type - a boxed primitive, BigDecimal, Date or UUID - in
+ * the big-endian fixed-width layout of HBase <code>Bytes</code>. Defaults to
+ * Longs, so that values are compatible with increment-value counters.
+ */
+public class FixedWidthValueCodec implements ValueCodec
+{
+    private final ByteArrayConverter converter = new ByteArrayConverter(Charset.forName("utf-8"),
+        ValueEncoding.FIXED_WIDTH);
+    private Class<?> type;
+
+    public FixedWidthValueCodec()
+    {
+        this(Long.class);
+    }
+
+    public FixedWidthValueCodec(Class<?> type)
+    {
+        setType(type);
+    }
+
+    public byte[] encode(Object value)
+    {
+        Validate.isTrue(type.isInstance(value), "Value " + value + " is not a " + type.getName());
+        return converter.toByteArray(value);
+    }
+
+    public Object decode(byte[] bytes)
+    {
+        return converter.fromByteArray(bytes, type);
+    }
+
+    public Class<?> getType()
+    {
+        return type;
+    }
+
+    public void setType(Class<?> type)
+    {
+        Validate.notNull(type, "type must not be null");
+        Validate.isTrue(ByteArrayConverter.hasFixedWidth(type), type.getName() + " has no fixed width encoding");
+        this.type = type;
+    }
+}
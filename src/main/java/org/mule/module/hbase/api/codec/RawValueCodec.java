@@ -0,0 +1,32 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.codec;
+
+import org.mule.module.hbase.api.ValueCodec;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Stores byte arrays as is, and rejects any other value
+ */
+public class RawValueCodec implements ValueCodec
+{
+    public byte[] encode(Object value)
+    {
+        Validate.isTrue(value instanceof byte[], "Only byte arrays can be encoded as raw values");
+        return (byte[]) value;
+    }
+
+    public Object decode(byte[] bytes)
+    {
+        return bytes;
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.codec;
+
+/**
+ * The type of a field of a {@link SchemaValueCodec}
+ */
+public enum SchemaFieldType
+{
+    /** UTF-8 text, prefixed with its length */
+    STRING,
+    /** 8 bytes, big-endian */
+    LONG,
+    /** 4 bytes, big-endian */
+    INTEGER,
+    /** 8 bytes, as HBase Bytes writes doubles */
+    DOUBLE,
+    /** 1 byte */
+    BOOLEAN,
+    /** Raw bytes, prefixed with their length */
+    BYTES
+}
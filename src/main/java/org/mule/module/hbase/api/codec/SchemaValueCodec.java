@@ -0,0 +1,253 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.codec;
+
+import org.mule.module.hbase.api.ValueCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang.UnhandledException;
+import org.apache.commons.lang.Validate;
+
+/**
+ * Stores Maps - like the ones JSON payloads are transformed into - in a compact
+ * binary layout described by a schema of named and typed fields. Field names are
+ * not stored: a value holds the amount of fields of the schema it was written
+ * with, a bitmap of the fields that are present, and the values of those fields in
+ * schema order. Fields can thus be appended to the schema without breaking the
+ * values already written, but never removed nor reordered.
+ */
+public class SchemaValueCodec implements ValueCodec
+{
+    private static final Charset UTF8 = Charset.forName("utf-8");
+
+    private List<String> names = Collections.emptyList();
+    private List<SchemaFieldType> types = Collections.emptyList();
+
+    public SchemaValueCodec()
+    {
+    }
+
+    /**
+     * @param fields the type of each field, in the order given by the map iterator
+     */
+    public SchemaValueCodec(Map<String, SchemaFieldType> fields)
+    {
+        setFields(fields);
+    }
+
+    public byte[] encode(Object value)
+    {
+        Validate.isTrue(value instanceof Map, "Only maps can be encoded with a schema");
+        Map<?, ?> map = (Map<?, ?>) value;
+        for (Object key : map.keySet())
+        {
+            Validate.isTrue(names.contains(key), "Field " + key + " is not in the schema");
+        }
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeVarInt(out, names.size());
+            byte[] present = new byte[(names.size() + 7) / 8];
+            for (int i = 0; i < names.size(); i++)
+            {
+                if (map.get(names.get(i)) != null)
+                {
+                    present[i / 8] |= 1 << (i % 8);
+                }
+            }
+            out.write(present);
+            for (int i = 0; i < names.size(); i++)
+            {
+                Object field = map.get(names.get(i));
+                if (field != null)
+                {
+                    writeField(out, types.get(i), names.get(i), field);
+                }
+            }
+            out.close();
+            return bytes.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new UnhandledException(e);
+        }
+    }
+
+    public Object decode(byte[] bytes)
+    {
+        try
+        {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            int count = readVarInt(in);
+            Validate.isTrue(count <= names.size(), "Value has more fields than the schema");
+            byte[] present = new byte[(count + 7) / 8];
+            in.readFully(present);
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < count; i++)
+            {
+                if ((present[i / 8] & 1 << (i % 8)) != 0)
+                {
+                    map.put(names.get(i), readField(in, types.get(i)));
+                }
+            }
+            return map;
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("Value was not written with this schema", e);
+        }
+    }
+
+    /** Sets the type of each field, in the order given by the map iterator */
+    public void setFields(Map<String, SchemaFieldType> fields)
+    {
+        Validate.notNull(fields, "fields must not be null");
+        List<String> names = new ArrayList<String>(fields.size());
+        List<SchemaFieldType> types = new ArrayList<SchemaFieldType>(fields.size());
+        for (Entry<String, SchemaFieldType> field : fields.entrySet())
+        {
+            Validate.notNull(field.getValue(), "type of field " + field.getKey() + " must not be null");
+            names.add(field.getKey());
+            types.add(field.getValue());
+        }
+        this.names = names;
+        this.types = types;
+    }
+
+    public Map<String, SchemaFieldType> getFields()
+    {
+        Map<String, SchemaFieldType> fields = new LinkedHashMap<String, SchemaFieldType>();
+        for (int i = 0; i < names.size(); i++)
+        {
+            fields.put(names.get(i), types.get(i));
+        }
+        return fields;
+    }
+
+    private static void writeField(DataOutputStream out, SchemaFieldType type, String name, Object value)
+        throws IOException
+    {
+        switch (type)
+        {
+            case STRING :
+                writeBytes(out, value.toString().getBytes(UTF8));
+                break;
+            case LONG :
+                out.writeLong(toNumber(name, value).longValue());
+                break;
+            case INTEGER :
+                out.writeInt(toNumber(name, value).intValue());
+                break;
+            case DOUBLE :
+                out.writeDouble(toNumber(name, value).doubleValue());
+                break;
+            case BOOLEAN :
+                out.writeBoolean(value instanceof Boolean ? (Boolean) value : Boolean.valueOf(value.toString()));
+                break;
+            default :
+                Validate.isTrue(value instanceof byte[], "Field " + name + " must be a byte array");
+                writeBytes(out, (byte[]) value);
+        }
+    }
+
+    private static Object readField(DataInputStream in, SchemaFieldType type) throws IOException
+    {
+        switch (type)
+        {
+            case STRING :
+                return new String(readBytes(in), UTF8);
+            case LONG :
+                return in.readLong();
+            case INTEGER :
+                return in.readInt();
+            case DOUBLE :
+                return in.readDouble();
+            case BOOLEAN :
+                return in.readBoolean();
+            default :
+                return readBytes(in);
+        }
+    }
+
+    private static Number toNumber(String name, Object value)
+    {
+        if (value instanceof Number)
+        {
+            return (Number) value;
+        }
+        try
+        {
+            return new BigDecimal(value.toString());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Field " + name + " must be a number", e);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException
+    {
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException
+    {
+        int length = readVarInt(in);
+        if (length < 0 || length > in.available())
+        {
+            throw new IOException("Malformed length");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /** Writes the given non negative int in groups of 7 bits, lowest first */
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed length");
+    }
+}
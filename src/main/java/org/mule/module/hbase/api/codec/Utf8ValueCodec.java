@@ -0,0 +1,42 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.codec;
+
+import org.mule.module.hbase.api.ValueCodec;
+
+import java.nio.charset.Charset;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Stores values as UTF-8 text. Byte arrays are stored as is, as they are taken
+ * for already encoded text. Other values that are not strings are stored as their
+ * string representation, and decoded as strings.
+ */
+public class Utf8ValueCodec implements ValueCodec
+{
+    private static final Charset UTF8 = Charset.forName("utf-8");
+
+    public byte[] encode(Object value)
+    {
+        Validate.notNull(value, "value must not be null");
+        if (value instanceof byte[])
+        {
+            return (byte[]) value;
+        }
+        return value.toString().getBytes(UTF8);
+    }
+
+    public Object decode(byte[] bytes)
+    {
+        return new String(bytes, UTF8);
+    }
+}
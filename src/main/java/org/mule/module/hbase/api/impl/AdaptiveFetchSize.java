@@ -0,0 +1,111 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+
+/**
+ * Chooses the amount of rows to request per page of a single scan, so that pages
+ * take about <code>targetPageBytes</code> bytes - and, if set, about
+ * <code>targetPageMillis</code> millis - but never more than
+ * <code>maxFetchSize</code> rows. Bytes per row and millis per row are moving
+ * averages of the pages read so far. Page sizes shrink as soon as rows get larger,
+ * but at most double from a page to the next one, so that a few small rows do not
+ * lead to a huge request.
+ */
+public class AdaptiveFetchSize
+{
+    private static final double WEIGHT = 0.5;
+
+    private final long targetPageBytes;
+    private final long targetPageMillis;
+    private final int maxFetchSize;
+    private int fetchSize;
+    private double rowBytes;
+    private double rowMillis;
+    private double pageMillis;
+
+    /**
+     * @param initialFetchSize the amount of rows of the first page
+     * @param targetPageBytes the bytes per page to aim for
+     * @param targetPageMillis the millis per page to aim for, or 0 for any
+     * @param maxFetchSize the max amount of rows per page
+     */
+    public AdaptiveFetchSize(int initialFetchSize, long targetPageBytes, long targetPageMillis, int maxFetchSize)
+    {
+        this.targetPageBytes = targetPageBytes;
+        this.targetPageMillis = targetPageMillis;
+        this.maxFetchSize = maxFetchSize;
+        this.fetchSize = Math.max(1, Math.min(initialFetchSize, maxFetchSize));
+    }
+
+    /** Answers the amount of rows to request for the next page */
+    public synchronized int getFetchSize()
+    {
+        return fetchSize;
+    }
+
+    /** Records a page read in the given millis, and resizes the next one */
+    public synchronized void observe(Result[] page, long millis)
+    {
+        if (page.length == 0)
+        {
+            return;
+        }
+        long bytes = 0;
+        for (Result result : page)
+        {
+            bytes += sizeOf(result);
+        }
+        rowBytes = average(rowBytes, (double) Math.max(1, bytes) / page.length);
+        rowMillis = average(rowMillis, (double) millis / page.length);
+        pageMillis = average(pageMillis, millis);
+
+        double rows = targetPageBytes / rowBytes;
+        if (targetPageMillis > 0 && rowMillis > 0)
+        {
+            rows = Math.min(rows, targetPageMillis / rowMillis);
+        }
+        fetchSize = (int) Math.max(1, Math.min(Math.min(rows, 2L * fetchSize), maxFetchSize));
+    }
+
+    /** Answers the average bytes per row observed so far */
+    public synchronized double getRowBytes()
+    {
+        return rowBytes;
+    }
+
+    /** Answers the average millis per page observed so far */
+    public synchronized double getPageMillis()
+    {
+        return pageMillis;
+    }
+
+    private static double average(double average, double sample)
+    {
+        return average == 0 ? sample : WEIGHT * sample + (1 - WEIGHT) * average;
+    }
+
+    private static long sizeOf(Result result)
+    {
+        long size = 0;
+        KeyValue[] keyValues = result.raw();
+        if (keyValues != null)
+        {
+            for (KeyValue keyValue : keyValues)
+            {
+                size += keyValue.getLength();
+            }
+        }
+        return size;
+    }
+}
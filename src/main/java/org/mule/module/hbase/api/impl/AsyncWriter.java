@@ -0,0 +1,502 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import org.mule.module.hbase.api.BackpressureAction;
+import org.mule.module.hbase.api.HBaseServiceException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+import org.apache.hadoop.hbase.client.Put;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous write pipeline. Puts are queued in bounded in-memory queues, that
+ * writer threads drain in batches, grouped per table. Puts are partitioned among
+ * writers by table and row, so that writes to the same row are applied in
+ * submission order. When a queue is full, submitters either block - up to
+ * <code>maxWait</code> millis - or are rejected, according to the full action.
+ * Each partition remembers the last put queued per table, so that waiting for
+ * the pending puts of a table does not wait for the ones of other tables.
+ */
+public abstract class AsyncWriter
+{
+    private static Logger logger = LoggerFactory.getLogger(AsyncWriter.class);
+
+    private volatile boolean enabled = false;
+    private volatile int queueSize = 10000;
+    private volatile int writers = 2;
+    private volatile int batchSize = 100;
+    private volatile BackpressureAction fullAction = BackpressureAction.BLOCK;
+    private volatile long maxWait = 5000;
+    private volatile Partition[] partitions;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * Queues the given put
+     *
+     * @return a handle that completes once the put has been sent to the server
+     * @throws HBaseServiceException if the put can not be queued because the queue
+     *             is full or the writer is not running
+     */
+    public Future<Void> submit(String tableName, Put put)
+    {
+        Validate.notNull(tableName);
+        Validate.notNull(put);
+        PendingWrite write = new PendingWrite(tableName, put);
+        enqueue(partitionFor(tableName, put), write);
+        submitted.incrementAndGet();
+        return write;
+    }
+
+    /**
+     * Waits until every put submitted before this call has been sent, or failed
+     *
+     * @see #awaitPending(String)
+     */
+    public void awaitPending()
+    {
+        awaitPending(null);
+    }
+
+    /**
+     * Waits up to <code>maxWait</code> millis until every put submitted for the
+     * given table - or for any table, if null - before this call has been sent, or
+     * failed. It answers at once if the writer is not running.
+     *
+     * @throws HBaseServiceException if the puts are not sent in time, or a writer
+     *             thread died
+     */
+    public void awaitPending(String tableName)
+    {
+        Partition[] current = partitions;
+        if (current == null)
+        {
+            return;
+        }
+        long wait = maxWait;
+        long deadline = System.currentTimeMillis() + wait;
+        for (Partition partition : current)
+        {
+            partition.checkAlive();
+            List<PendingWrite> lastWrites = new ArrayList<PendingWrite>();
+            if (tableName == null)
+            {
+                lastWrites.addAll(partition.lastWrites.values());
+            }
+            else
+            {
+                PendingWrite lastWrite = partition.lastWrites.get(tableName);
+                if (lastWrite != null)
+                {
+                    lastWrites.add(lastWrite);
+                }
+            }
+            for (PendingWrite write : lastWrites)
+            {
+                while (!write.await(100))
+                {
+                    partition.checkAlive();
+                    if (wait >= 0 && System.currentTimeMillis() >= deadline)
+                    {
+                        throw new HBaseServiceException("Timed out after " + wait
+                                                        + " ms waiting for the async writes of "
+                                                        + (tableName != null ? "table " + tableName : "every table"));
+                    }
+                }
+            }
+        }
+    }
+
+    /** Starts the writer threads, if enabled */
+    public synchronized void start()
+    {
+        if (!enabled || partitions != null)
+        {
+            return;
+        }
+        Partition[] newPartitions = new Partition[writers];
+        int capacity = Math.max(1, queueSize / writers);
+        for (int i = 0; i < writers; i++)
+        {
+            newPartitions[i] = new Partition(capacity, "hbase-async-writer-" + i);
+        }
+        for (Partition partition : newPartitions)
+        {
+            partition.thread.start();
+        }
+        partitions = newPartitions;
+    }
+
+    /** Stops accepting puts and waits until every queued put has been sent */
+    public synchronized void stop()
+    {
+        Partition[] current = partitions;
+        if (current == null)
+        {
+            return;
+        }
+        partitions = null;
+        for (Partition partition : current)
+        {
+            partition.running = false;
+        }
+        for (Partition partition : current)
+        {
+            try
+            {
+                partition.thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Adds the pipeline counters to the given statistics map */
+    public void collectStatistics(Map<String, Number> statistics)
+    {
+        int queued = 0;
+        Partition[] current = partitions;
+        if (current != null)
+        {
+            for (Partition partition : current)
+            {
+                queued += partition.queue.size();
+            }
+        }
+        statistics.put("asyncWriter.queued", queued);
+        statistics.put("asyncWriter.submitted", submitted.get());
+        statistics.put("asyncWriter.written", written.get());
+        statistics.put("asyncWriter.failed", failed.get());
+        statistics.put("asyncWriter.rejected", rejected.get());
+        statistics.put("asyncWriter.batches", batches.get());
+    }
+
+    /**
+     * Sends the given puts to the server
+     *
+     * @param tableName the table the puts were submitted for
+     * @param puts the puts, in submission order
+     */
+    protected abstract void send(String tableName, List<Put> puts);
+
+    /**
+     * Queues the given write and records it as the last one of its table, both
+     * under the partition monitor so that they happen in the same order. Blocked
+     * submitters wait on that monitor, that the writer notifies as it drains.
+     */
+    private void enqueue(Partition partition, PendingWrite write)
+    {
+        boolean block = fullAction != BackpressureAction.FAIL;
+        long wait = maxWait;
+        long deadline = System.currentTimeMillis() + wait;
+        synchronized (partition)
+        {
+            while (!partition.queue.offer(write))
+            {
+                partition.checkAlive();
+                long remaining = deadline - System.currentTimeMillis();
+                if (!block || wait >= 0 && remaining <= 0)
+                {
+                    rejected.incrementAndGet();
+                    throw new HBaseServiceException("Async write queue is full");
+                }
+                try
+                {
+                    partition.wait(wait >= 0 ? Math.min(remaining, 100) : 100);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new HBaseServiceException(e);
+                }
+            }
+            partition.lastWrites.put(write.tableName, write);
+        }
+    }
+
+    private Partition partitionFor(String tableName, Put put)
+    {
+        Partition[] current = partitions;
+        if (current == null)
+        {
+            throw new HBaseServiceException("Async writer is not running");
+        }
+        int hash = 31 * tableName.hashCode() + Arrays.hashCode(put.getRow());
+        Partition partition = current[(hash & Integer.MAX_VALUE) % current.length];
+        partition.checkAlive();
+        return partition;
+    }
+
+    private void write(Partition partition, List<PendingWrite> batch)
+    {
+        Map<String, List<PendingWrite>> writesByTable = new LinkedHashMap<String, List<PendingWrite>>();
+        for (PendingWrite write : batch)
+        {
+            List<PendingWrite> tableWrites = writesByTable.get(write.tableName);
+            if (tableWrites == null)
+            {
+                tableWrites = new ArrayList<PendingWrite>();
+                writesByTable.put(write.tableName, tableWrites);
+            }
+            tableWrites.add(write);
+        }
+        for (Entry<String, List<PendingWrite>> entry : writesByTable.entrySet())
+        {
+            List<Put> puts = new ArrayList<Put>(entry.getValue().size());
+            for (PendingWrite write : entry.getValue())
+            {
+                puts.add(write.put);
+            }
+            Throwable failure = null;
+            try
+            {
+                send(entry.getKey(), puts);
+                written.addAndGet(puts.size());
+            }
+            catch (RuntimeException e)
+            {
+                logger.error("Could not write " + puts.size() + " puts to table " + entry.getKey(), e);
+                failed.addAndGet(puts.size());
+                failure = e;
+            }
+            for (PendingWrite write : entry.getValue())
+            {
+                write.complete(failure);
+                partition.lastWrites.remove(entry.getKey(), write);
+            }
+        }
+        batches.incrementAndGet();
+    }
+
+    // ------------ Configuration
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public void setQueueSize(int queueSize)
+    {
+        Validate.isTrue(queueSize > 0, "queueSize must be positive");
+        this.queueSize = queueSize;
+    }
+
+    public void setWriters(int writers)
+    {
+        Validate.isTrue(writers > 0, "writers must be positive");
+        this.writers = writers;
+    }
+
+    public void setBatchSize(int batchSize)
+    {
+        Validate.isTrue(batchSize > 0, "batchSize must be positive");
+        this.batchSize = batchSize;
+    }
+
+    public void setFullAction(BackpressureAction fullAction)
+    {
+        Validate.notNull(fullAction);
+        this.fullAction = fullAction;
+    }
+
+    /**
+     * Sets the max millis to wait for queue space when full action is
+     * {@link BackpressureAction#BLOCK}, and for pending puts. Negative values mean
+     * wait forever
+     */
+    public void setMaxWait(long maxWait)
+    {
+        this.maxWait = maxWait;
+    }
+
+    private final class Partition implements Runnable
+    {
+        private final BlockingQueue<PendingWrite> queue;
+        private final ConcurrentMap<String, PendingWrite> lastWrites = new ConcurrentHashMap<String, PendingWrite>();
+        private final Thread thread;
+        private volatile boolean running = true;
+        private volatile boolean stopped;
+
+        public Partition(int capacity, String name)
+        {
+            this.queue = new ArrayBlockingQueue<PendingWrite>(capacity);
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Writes batches until stopped and drained. If the thread ends for any other
+         * reason, the writes still pending are failed, so that nobody waits for them
+         */
+        public void run()
+        {
+            List<PendingWrite> batch = new ArrayList<PendingWrite>(batchSize);
+            try
+            {
+                while (running || !queue.isEmpty())
+                {
+                    PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null)
+                    {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    synchronized (this)
+                    {
+                        notifyAll();
+                    }
+                    write(this, batch);
+                    batch.clear();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                stopped = true;
+                HBaseServiceException failure = new HBaseServiceException("Async writer " + thread.getName()
+                                                                          + " stopped");
+                queue.drainTo(batch);
+                for (PendingWrite write : batch)
+                {
+                    write.complete(failure);
+                }
+                lastWrites.clear();
+                synchronized (this)
+                {
+                    notifyAll();
+                }
+            }
+        }
+
+        /** Fails if the writer thread of this partition is no longer running */
+        public void checkAlive()
+        {
+            if (stopped)
+            {
+                throw new HBaseServiceException("Async writer " + thread.getName() + " is not running");
+            }
+        }
+    }
+
+    /** A queued put, and its completion handle */
+    private static final class PendingWrite implements Future<Void>
+    {
+        private final String tableName;
+        private final Put put;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Throwable failure;
+
+        public PendingWrite(String tableName, Put put)
+        {
+            this.tableName = tableName;
+            this.put = put;
+        }
+
+        /** Completes the write, unless it already was */
+        public synchronized void complete(Throwable failure)
+        {
+            if (done.getCount() > 0)
+            {
+                this.failure = failure;
+                done.countDown();
+            }
+        }
+
+        /** Answers if the write completed within the given millis */
+        public boolean await(long millis)
+        {
+            try
+            {
+                return done.await(millis, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new HBaseServiceException(e);
+            }
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            return false;
+        }
+
+        public boolean isCancelled()
+        {
+            return false;
+        }
+
+        public boolean isDone()
+        {
+            return done.getCount() == 0;
+        }
+
+        public Void get() throws InterruptedException, ExecutionException
+        {
+            done.await();
+            return result();
+        }
+
+        public Void get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException
+        {
+            if (!done.await(timeout, unit))
+            {
+                throw new TimeoutException();
+            }
+            return result();
+        }
+
+        private Void result() throws ExecutionException
+        {
+            if (failure != null)
+            {
+                throw new ExecutionException(failure);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import org.mule.module.hbase.api.HBaseServiceException;
+import org.mule.module.hbase.api.PoolExhaustedAction;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.HTableInterfaceFactory;
+
+/**
+ * A bounded pool of {@link HTableInterface}s, keyed by table name. At most
+ * <code>maxSize</code> handles per table are lent at the same time; released
+ * handles are kept idle and reused by the next borrower, so that table setup and
+ * region location lookups are not paid on every operation.
+ */
+public class BoundedHTablePool
+{
+    private static final Charset UTF8 = Charset.forName("utf-8");
+
+    private final ConcurrentMap<String, TableSlots> slots = new ConcurrentHashMap<String, TableSlots>();
+    private final HTableInterfaceFactory hTableInterfaceFactory;
+    private final Configuration configuration;
+
+    private volatile int maxSize = 10;
+    private volatile PoolExhaustedAction exhaustedAction = PoolExhaustedAction.BLOCK;
+    private volatile long maxWait = 5000;
+
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong borrowWaitNanos = new AtomicLong();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+    private final AtomicLong exhaustions = new AtomicLong();
+
+    public BoundedHTablePool(Configuration configuration, HTableInterfaceFactory hTableInterfaceFactory)
+    {
+        Validate.notNull(configuration);
+        Validate.notNull(hTableInterfaceFactory);
+        this.configuration = configuration;
+        this.hTableInterfaceFactory = hTableInterfaceFactory;
+    }
+
+    /**
+     * Lends a handle for the given table, reusing an idle one if possible. Callers
+     * must give it back through {@link #release(String, HTableInterface, boolean)}
+     *
+     * @throws HBaseServiceException if the pool is exhausted and either the
+     *             exhausted action is {@link PoolExhaustedAction#FAIL} or max wait
+     *             elapsed
+     */
+    public HTableInterface borrow(String tableName)
+    {
+        TableSlots tableSlots = getSlots(tableName);
+        long start = System.nanoTime();
+        acquire(tableName, tableSlots);
+        recordWait(System.nanoTime() - start);
+
+        HTableInterface hTable = tableSlots.idle.poll();
+        if (hTable != null)
+        {
+            return hTable;
+        }
+        try
+        {
+            return hTableInterfaceFactory.createHTableInterface(configuration, tableName.getBytes(UTF8));
+        }
+        catch (RuntimeException e)
+        {
+            tableSlots.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives back a handle previously lent by {@link #borrow(String)}.
+     *
+     * @param discard if the handle must not be reused - for example, because the
+     *            operation performed on it failed and it may hold stale state
+     */
+    public void release(String tableName, HTableInterface hTable, boolean discard)
+    {
+        TableSlots tableSlots = getSlots(tableName);
+        try
+        {
+            if (discard)
+            {
+                closeHTable(hTable);
+            }
+            else
+            {
+                tableSlots.idle.offer(hTable);
+            }
+        }
+        finally
+        {
+            tableSlots.permits.release();
+        }
+    }
+
+    /** Releases every idle handle. Lent handles are released when given back */
+    public void close()
+    {
+        for (TableSlots tableSlots : slots.values())
+        {
+            HTableInterface hTable;
+            while ((hTable = tableSlots.idle.poll()) != null)
+            {
+                closeHTable(hTable);
+            }
+        }
+    }
+
+    /** Adds the pool counters to the given statistics map */
+    public void collectStatistics(Map<String, Number> statistics)
+    {
+        int idle = 0;
+        int active = 0;
+        for (TableSlots tableSlots : slots.values())
+        {
+            idle += tableSlots.idle.size();
+            active += tableSlots.maxSize - tableSlots.permits.availablePermits();
+        }
+        statistics.put("tablePool.idle", idle);
+        statistics.put("tablePool.active", active);
+        statistics.put("tablePool.borrows", borrows.get());
+        statistics.put("tablePool.exhaustions", exhaustions.get());
+        statistics.put("tablePool.borrowWaitMillis.total", TimeUnit.NANOSECONDS.toMillis(borrowWaitNanos.get()));
+        statistics.put("tablePool.borrowWaitMillis.max", TimeUnit.NANOSECONDS.toMillis(maxBorrowWaitNanos.get()));
+    }
+
+    private static void closeHTable(HTableInterface hTable)
+    {
+        try
+        {
+            hTable.close();
+        }
+        catch (IOException e)
+        {
+            throw new HBaseServiceException(e);
+        }
+    }
+
+    private void acquire(String tableName, TableSlots tableSlots)
+    {
+        boolean acquired;
+        try
+        {
+            if (exhaustedAction == PoolExhaustedAction.FAIL)
+            {
+                acquired = tableSlots.permits.tryAcquire();
+            }
+            else if (maxWait < 0)
+            {
+                tableSlots.permits.acquire();
+                acquired = true;
+            }
+            else
+            {
+                acquired = tableSlots.permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new HBaseServiceException(e);
+        }
+        if (!acquired)
+        {
+            exhaustions.incrementAndGet();
+            throw new HBaseServiceException("Table pool for " + tableName + " exhausted: all "
+                                            + tableSlots.maxSize + " handles are in use");
+        }
+    }
+
+    private void recordWait(long waitNanos)
+    {
+        borrows.incrementAndGet();
+        borrowWaitNanos.addAndGet(waitNanos);
+        long max;
+        do
+        {
+            max = maxBorrowWaitNanos.get();
+        }
+        while (waitNanos > max && !maxBorrowWaitNanos.compareAndSet(max, waitNanos));
+    }
+
+    private TableSlots getSlots(String tableName)
+    {
+        TableSlots tableSlots = slots.get(tableName);
+        if (tableSlots == null)
+        {
+            TableSlots newSlots = new TableSlots(maxSize);
+            tableSlots = slots.putIfAbsent(tableName, newSlots);
+            if (tableSlots == null)
+            {
+                tableSlots = newSlots;
+            }
+        }
+        return tableSlots;
+    }
+
+    // ------------ Configuration
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /** Sets the max amount of handles per table. Only affects tables not used yet */
+    public void setMaxSize(int maxSize)
+    {
+        Validate.isTrue(maxSize > 0, "maxSize must be positive");
+        this.maxSize = maxSize;
+    }
+
+    public PoolExhaustedAction getExhaustedAction()
+    {
+        return exhaustedAction;
+    }
+
+    public void setExhaustedAction(PoolExhaustedAction exhaustedAction)
+    {
+        Validate.notNull(exhaustedAction);
+        this.exhaustedAction = exhaustedAction;
+    }
+
+    public long getMaxWait()
+    {
+        return maxWait;
+    }
+
+    /**
+     * Sets the max millis to wait for a handle when exhausted action is
+     * {@link PoolExhaustedAction#BLOCK}. Negative values mean wait forever
+     */
+    public void setMaxWait(long maxWait)
+    {
+        this.maxWait = maxWait;
+    }
+
+    private static final class TableSlots
+    {
+        private final int maxSize;
+        private final Semaphore permits;
+        private final Queue<HTableInterface> idle = new ConcurrentLinkedQueue<HTableInterface>();
+
+        public TableSlots(int maxSize)
+        {
+            this.maxSize = maxSize;
+            this.permits = new Semaphore(maxSize, true);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Bounded cache of the UTF-8 encodings of table, family and qualifier names, so
+ * that the few names a client uses over and over are encoded once and shared by
+ * every operation. Lookups do not lock nor allocate. When full, the cache is
+ * cleared and refilled with the names in use, which keeps it cheap for clients
+ * that use an unbounded set of qualifiers.
+ * <p>
+ * The answered arrays are shared, so they must never be modified. Row keys and
+ * values must not be cached.
+ */
+public class NameCache
+{
+    private static final Charset UTF8 = Charset.forName("utf-8");
+
+    private final ConcurrentMap<String, byte[]> names = new ConcurrentHashMap<String, byte[]>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+    private volatile int maxEntries = 1024;
+
+    /** Answers the UTF-8 encoding of the given name */
+    public byte[] toBytes(String name)
+    {
+        if (maxEntries == 0)
+        {
+            return name.getBytes(UTF8);
+        }
+        byte[] bytes = names.get(name);
+        if (bytes != null)
+        {
+            hits.incrementAndGet();
+            return bytes;
+        }
+        misses.incrementAndGet();
+        bytes = name.getBytes(UTF8);
+        if (names.size() >= maxEntries)
+        {
+            names.clear();
+            resets.incrementAndGet();
+        }
+        byte[] previous = names.putIfAbsent(name, bytes);
+        return previous != null ? previous : bytes;
+    }
+
+    /** Adds the cache counters to the given statistics map */
+    public void collectStatistics(Map<String, Number> statistics)
+    {
+        statistics.put("nameCache.names", names.size());
+        statistics.put("nameCache.hits", hits.get());
+        statistics.put("nameCache.misses", misses.get());
+        statistics.put("nameCache.resets", resets.get());
+    }
+
+    // ------------ Configuration
+
+    /** Sets the max amount of cached names, or 0 for disabling the cache */
+    public void setMaxEntries(int maxEntries)
+    {
+        Validate.isTrue(maxEntries >= 0, "maxEntries must not be negative");
+        this.maxEntries = maxEntries;
+        names.clear();
+    }
+}
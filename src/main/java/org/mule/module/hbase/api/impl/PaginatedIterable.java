@@ -11,9 +11,20 @@
 package org.mule.module.hbase.api.impl;
 
 import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.lang.UnhandledException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,19 +38,59 @@ public abstract class PaginatedIterable<T, Page> extends AbstractCollection<T> i
 {
     private static Logger logger = LoggerFactory.getLogger(PaginatedIterable.class);
 
+    private Executor prefetchExecutor;
+    private int prefetchPages;
+    private final Set<PrefetchingIterator> prefetchingIterators = new HashSet<PrefetchingIterator>();
+
+    /**
+     * Makes iterators fetch up to the given amount of pages ahead of the consumer,
+     * using tasks run by the given executor, so that fetching and processing pages
+     * overlap. Pages are fetched on demand if the amount is 0.
+     */
+    public void setPrefetch(Executor prefetchExecutor, int prefetchPages)
+    {
+        this.prefetchExecutor = prefetchExecutor;
+        this.prefetchPages = prefetchPages;
+    }
+
     @Override
     public Iterator<T> iterator()
     {
         final Page initialPageInfo = firstPage();
+        if (prefetchPages > 0)
+        {
+            PrefetchingIterator iterator = new PrefetchingIterator(initialPageInfo);
+            synchronized (prefetchingIterators)
+            {
+                prefetchingIterators.add(iterator);
+            }
+            try
+            {
+                iterator.start();
+            }
+            catch (RuntimeException e)
+            {
+                iterator.finish();
+                release(initialPageInfo);
+                throw e;
+            }
+            return iterator;
+        }
         return new Iterator<T>()
         {
             private Page currentList = initialPageInfo;
             private Iterator<T> currentIter = pageIterator(initialPageInfo);
+            private boolean released = false;
 
             public boolean hasNext()
             {
                 updateIter();
-                return currentIter.hasNext();
+                if (currentIter.hasNext())
+                {
+                    return true;
+                }
+                releaseOnce();
+                return false;
             }
 
             public T next()
@@ -55,15 +106,280 @@ public abstract class PaginatedIterable<T, Page> extends AbstractCollection<T> i
 
             private void updateIter()
             {
-                if (!currentIter.hasNext() && hasNextPage(currentList))
+                if (!currentIter.hasNext() && !released && hasNextPage(currentList))
                 {
-                    currentList = nextPage(currentList);
+                    try
+                    {
+                        currentList = nextPage(currentList);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        releaseOnce();
+                        throw e;
+                    }
                     currentIter = pageIterator(currentList);
                 }
             }
+
+            private void releaseOnce()
+            {
+                if (!released)
+                {
+                    released = true;
+                    release(currentList);
+                }
+            }
         };
     }
 
+    /**
+     * Stops fetching pages ahead for every iterator still in progress. Their
+     * consumers get the pages already fetched, and then a
+     * {@link CancellationException} instead of the end of the iteration.
+     */
+    protected void cancelPrefetches()
+    {
+        List<PrefetchingIterator> iterators;
+        synchronized (prefetchingIterators)
+        {
+            iterators = new ArrayList<PrefetchingIterator>(prefetchingIterators);
+            prefetchingIterators.clear();
+        }
+        for (PrefetchingIterator iterator : iterators)
+        {
+            iterator.cancel();
+        }
+    }
+
+    /**
+     * Iterator whose pages are fetched by a background task, that stays up to
+     * <code>prefetchPages</code> pages ahead and releases the pagination as soon as
+     * it fetches the last page. The task ends whenever it is that many pages
+     * ahead, and the consumer starts it again once it takes a page, so that a slow
+     * consumer holds no thread while it processes the pages already fetched.
+     */
+    private final class PrefetchingIterator implements Iterator<T>, Runnable
+    {
+        private final Object end = new Object();
+        private final BlockingQueue<Object> pages = new LinkedBlockingQueue<Object>();
+        private volatile boolean cancelled;
+        // guarded by this
+        private Page lastPage;
+        private int freeSlots = prefetchPages;
+        private boolean fetching = true;
+        private boolean ended;
+        private Iterator<T> currentIter;
+        private boolean done;
+
+        public PrefetchingIterator(Page firstPage)
+        {
+            this.lastPage = firstPage;
+            this.currentIter = pageIterator(firstPage);
+        }
+
+        public void start()
+        {
+            prefetchExecutor.execute(this);
+        }
+
+        public boolean hasNext()
+        {
+            while (!currentIter.hasNext())
+            {
+                if (done)
+                {
+                    return false;
+                }
+                Object next;
+                try
+                {
+                    next = takeNext();
+                }
+                catch (RuntimeException e)
+                {
+                    finish();
+                    throw e;
+                }
+                if (next == end)
+                {
+                    finish();
+                    return false;
+                }
+                if (next instanceof RuntimeException)
+                {
+                    finish();
+                    throw (RuntimeException) next;
+                }
+                releaseSlot();
+                @SuppressWarnings("unchecked")
+                Page page = (Page) next;
+                currentIter = pageIterator(page);
+            }
+            return true;
+        }
+
+        public T next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            return currentIter.next();
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        private Object takeNext()
+        {
+            try
+            {
+                Object next = pages.poll(100, TimeUnit.MILLISECONDS);
+                while (next == null)
+                {
+                    if (cancelled)
+                    {
+                        throw cancellation();
+                    }
+                    next = pages.poll(100, TimeUnit.MILLISECONDS);
+                }
+                return next;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new UnhandledException(e);
+            }
+        }
+
+        private void finish()
+        {
+            done = true;
+            synchronized (prefetchingIterators)
+            {
+                prefetchingIterators.remove(this);
+            }
+        }
+
+        /**
+         * Frees the slot of a taken page, starting the fetching task again if it
+         * ended for lack of slots
+         */
+        private void releaseSlot()
+        {
+            boolean resume;
+            synchronized (this)
+            {
+                freeSlots++;
+                resume = !fetching && !ended;
+                fetching |= resume;
+            }
+            if (resume)
+            {
+                try
+                {
+                    start();
+                }
+                catch (RuntimeException e)
+                {
+                    endFetching(e);
+                }
+            }
+        }
+
+        /**
+         * Stops fetching pages. A running task ends with a cancellation once its
+         * current page is fetched, and a stopped one is ended right away
+         */
+        public void cancel()
+        {
+            cancelled = true;
+            boolean stopped;
+            synchronized (this)
+            {
+                stopped = !fetching && !ended;
+                fetching |= stopped;
+            }
+            if (stopped)
+            {
+                endFetching(cancellation());
+            }
+        }
+
+        /**
+         * Fetches the pages that follow the last fetched one while there are free
+         * slots, and ends them with the end marker - or with the failure that
+         * stopped the fetching, so that a cut off iteration is never taken as a
+         * complete one
+         */
+        public void run()
+        {
+            Object last = end;
+            try
+            {
+                Page page;
+                synchronized (this)
+                {
+                    page = lastPage;
+                }
+                while (hasNextPage(page))
+                {
+                    synchronized (this)
+                    {
+                        if (cancelled)
+                        {
+                            throw cancellation();
+                        }
+                        if (freeSlots == 0)
+                        {
+                            fetching = false;
+                            return;
+                        }
+                        freeSlots--;
+                    }
+                    page = nextPage(page);
+                    synchronized (this)
+                    {
+                        lastPage = page;
+                    }
+                    pages.add(page);
+                }
+            }
+            catch (RuntimeException e)
+            {
+                last = cancelled ? cancellation() : e;
+            }
+            endFetching(last);
+        }
+
+        /** Releases the pagination and ends the fetched pages with the given marker */
+        private void endFetching(Object last)
+        {
+            Page page;
+            synchronized (this)
+            {
+                ended = true;
+                fetching = false;
+                page = lastPage;
+            }
+            try
+            {
+                release(page);
+            }
+            finally
+            {
+                pages.add(last);
+            }
+        }
+
+        private CancellationException cancellation()
+        {
+            return new CancellationException("Iteration was cancelled before it was exhausted");
+        }
+    }
+
     /**
      * Answers the first page of the paginated result
      */
@@ -93,6 +409,16 @@ public abstract class PaginatedIterable<T, Page> extends AbstractCollection<T> i
      */
     protected abstract Iterator<T> pageIterator(Page page);
 
+    /**
+     * Releases any resource held by the pagination, once the iteration is exhausted
+     * or a page could not be fetched. Does nothing by default
+     * 
+     * @param lastPage the last fetched page
+     */
+    protected void release(Page lastPage)
+    {
+    }
+
     /**
      * Hack for enabling collection splitter to work, which forces evaluation of
      * whole iterable. This will not work with huge lists, but there is no better
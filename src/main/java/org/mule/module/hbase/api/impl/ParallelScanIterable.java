@@ -0,0 +1,323 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import org.mule.api.lifecycle.Disposable;
+import org.mule.module.hbase.api.HBaseServiceException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+
+/**
+ * Lazy scan results read by many region scans at once. Each iteration runs the
+ * region scans on its own pool of at most <code>parallelism</code> threads, that
+ * buffer up to <code>fetchSize</code> results per region ahead of the consumer.
+ * Results are answered either in key order - region after region - or as soon as
+ * any region answers them.
+ */
+public abstract class ParallelScanIterable extends PaginatedIterable<Result, ParallelScanIterable.Chunk>
+    implements Disposable
+{
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final List<Scan> regionScans;
+    private final int parallelism;
+    private final boolean ordered;
+    private final int fetchSize;
+    private final Set<Execution> executions = new HashSet<Execution>();
+
+    /**
+     * @param regionScans the scans of each region, sorted by start row
+     * @param parallelism the max amount of regions scanned at once
+     * @param ordered if results must be answered in key order
+     * @param fetchSize the amount of results read ahead per region
+     */
+    public ParallelScanIterable(List<Scan> regionScans, int parallelism, boolean ordered, int fetchSize)
+    {
+        this.regionScans = regionScans;
+        this.parallelism = Math.max(1, Math.min(parallelism, regionScans.size()));
+        this.ordered = ordered;
+        this.fetchSize = Math.max(1, fetchSize);
+    }
+
+    /**
+     * Answers the results of the given region scan. If they are
+     * {@link Disposable}, they are disposed once read
+     */
+    protected abstract Iterable<Result> scanRegion(Scan regionScan);
+
+    @Override
+    protected Chunk firstPage()
+    {
+        Execution execution = new Execution();
+        synchronized (executions)
+        {
+            executions.add(execution);
+        }
+        try
+        {
+            execution.start();
+            return execution.take();
+        }
+        catch (RuntimeException e)
+        {
+            release(new Chunk(execution, null, true));
+            throw e;
+        }
+    }
+
+    @Override
+    protected boolean hasNextPage(Chunk page)
+    {
+        return !page.last;
+    }
+
+    @Override
+    protected Chunk nextPage(Chunk currentPage)
+    {
+        return currentPage.execution.take();
+    }
+
+    @Override
+    protected Iterator<Result> pageIterator(Chunk page)
+    {
+        return page.results.iterator();
+    }
+
+    @Override
+    protected void release(Chunk lastPage)
+    {
+        synchronized (executions)
+        {
+            executions.remove(lastPage.execution);
+        }
+        lastPage.execution.cancel();
+    }
+
+    /** Stops the region scans of every iteration still in progress */
+    public void dispose()
+    {
+        List<Execution> running;
+        synchronized (executions)
+        {
+            running = new ArrayList<Execution>(executions);
+            executions.clear();
+        }
+        for (Execution execution : running)
+        {
+            execution.cancel();
+        }
+    }
+
+    /** A page of results, taken from a single region */
+    protected static final class Chunk
+    {
+        private final Execution execution;
+        private final List<Result> results;
+        private final boolean last;
+
+        private Chunk(Execution execution, List<Result> results, boolean last)
+        {
+            this.execution = execution;
+            this.results = results;
+            this.last = last;
+        }
+    }
+
+    /** A batch of region results, its end marker, or its failure */
+    private static final class Batch
+    {
+        private static final Batch END = new Batch(null, null);
+
+        private final List<Result> results;
+        private final RuntimeException failure;
+
+        private Batch(List<Result> results, RuntimeException failure)
+        {
+            this.results = results;
+            this.failure = failure;
+        }
+    }
+
+    /** The region scans of a single iteration */
+    private final class Execution
+    {
+        private final List<BlockingQueue<Batch>> queues;
+        private final ExecutorService executor;
+        private volatile boolean cancelled;
+        private int current;
+        private int finished;
+
+        public Execution()
+        {
+            queues = new ArrayList<BlockingQueue<Batch>>(regionScans.size());
+            BlockingQueue<Batch> shared = new ArrayBlockingQueue<Batch>(parallelism);
+            for (int i = 0; i < regionScans.size(); i++)
+            {
+                queues.add(ordered ? new ArrayBlockingQueue<Batch>(1) : shared);
+            }
+            executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "hbase-parallel-scan-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        /**
+         * Submits the region scans in key order, so that the region an ordered
+         * consumer waits for has always been started before the ones after it
+         */
+        public void start()
+        {
+            for (int i = 0; i < regionScans.size(); i++)
+            {
+                executor.execute(new RegionReader(regionScans.get(i), queues.get(i)));
+            }
+            executor.shutdown();
+        }
+
+        /** Answers the next non empty chunk, or the last one */
+        public Chunk take()
+        {
+            while (current < queues.size() && finished < queues.size())
+            {
+                Batch batch;
+                try
+                {
+                    batch = queues.get(current).poll(100, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new HBaseServiceException(e);
+                }
+                if (cancelled)
+                {
+                    break;
+                }
+                if (batch == null)
+                {
+                    continue;
+                }
+                if (batch.failure != null)
+                {
+                    throw batch.failure;
+                }
+                if (batch == Batch.END)
+                {
+                    if (ordered)
+                    {
+                        current++;
+                    }
+                    else
+                    {
+                        finished++;
+                    }
+                    continue;
+                }
+                return new Chunk(this, batch.results, false);
+            }
+            return new Chunk(this, Collections.<Result> emptyList(), true);
+        }
+
+        public void cancel()
+        {
+            cancelled = true;
+            executor.shutdownNow();
+        }
+
+        private final class RegionReader implements Runnable
+        {
+            private final Scan regionScan;
+            private final BlockingQueue<Batch> queue;
+
+            public RegionReader(Scan regionScan, BlockingQueue<Batch> queue)
+            {
+                this.regionScan = regionScan;
+                this.queue = queue;
+            }
+
+            public void run()
+            {
+                Iterable<Result> results = null;
+                try
+                {
+                    results = scanRegion(regionScan);
+                    read(results);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                catch (RuntimeException e)
+                {
+                    offerFailure(e);
+                }
+                finally
+                {
+                    if (results instanceof Disposable)
+                    {
+                        ((Disposable) results).dispose();
+                    }
+                }
+            }
+
+            private void read(Iterable<Result> results) throws InterruptedException
+            {
+                List<Result> batch = new ArrayList<Result>(fetchSize);
+                for (Iterator<Result> iter = results.iterator(); !cancelled && iter.hasNext();)
+                {
+                    batch.add(iter.next());
+                    if (batch.size() == fetchSize)
+                    {
+                        queue.put(new Batch(batch, null));
+                        batch = new ArrayList<Result>(fetchSize);
+                    }
+                }
+                if (!batch.isEmpty())
+                {
+                    queue.put(new Batch(batch, null));
+                }
+                queue.put(Batch.END);
+            }
+
+            private void offerFailure(RuntimeException e)
+            {
+                try
+                {
+                    queue.put(new Batch(null, e));
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -10,21 +10,59 @@
 
 package org.mule.module.hbase.api.impl;
 
+import org.mule.api.lifecycle.Disposable;
+import org.mule.module.hbase.api.BackpressureAction;
 import org.mule.module.hbase.api.BloomFilterType;
 import org.mule.module.hbase.api.ByteArrayConverter;
+import org.mule.module.hbase.api.CellValue;
+import org.mule.module.hbase.api.CompareOperator;
 import org.mule.module.hbase.api.CompressionType;
+import org.mule.module.hbase.api.DecodedRow;
+import org.mule.module.hbase.api.DecodedRowIterable;
 import org.mule.module.hbase.api.HBaseService;
 import org.mule.module.hbase.api.HBaseServiceException;
+import org.mule.module.hbase.api.PoolExhaustedAction;
+import org.mule.module.hbase.api.ScanFilter;
+import org.mule.module.hbase.api.ScanOptions;
+import org.mule.module.hbase.api.ScanPage;
+import org.mule.module.hbase.api.ValueCodec;
+import org.mule.module.hbase.api.ValueEncoding;
+import org.mule.module.hbase.api.codec.DefaultValueCodec;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang.UnhandledException;
 import org.apache.commons.lang.Validate;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseConfiguration;
@@ -45,8 +83,28 @@ import org.apache.hadoop.hbase.client.HTableInterfaceFactory;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
 import org.apache.hadoop.hbase.client.RowLock;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.ScannerTimeoutException;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.PageFilter;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
+import org.apache.hadoop.hbase.filter.QualifierFilter;
+import org.apache.hadoop.hbase.filter.RegexStringComparator;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.filter.ValueFilter;
+import org.apache.hadoop.hbase.util.Base64;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * {@link HBaseService} that uses the official RPC client to connect with the
@@ -67,15 +125,104 @@ import org.apache.hadoop.hbase.client.Scan;
 public class RPCHBaseService implements HBaseService
 {
 
+    private static Logger logger = LoggerFactory.getLogger(RPCHBaseService.class);
     private static final Charset UTF8 = Charset.forName("utf-8");
-    private static final ByteArrayConverter BYTE_ARRAY_CONVERTER = new ByteArrayConverter(UTF8);
+    private static final byte CONTINUATION_VERSION = 2;
+    private static final int CONTINUATION_DIGEST_LENGTH = 8;
     private HTableInterfaceFactory hTableInterfaceFactory;
     private Configuration configuration;
+    private BoundedHTablePool tablePool;
+    private WriteBuffer writeBuffer;
+    private AsyncWriter asyncWriter;
+    private final RowCache rowCache = new RowCache();
+    private final TableMetadataCache metadataCache = new TableMetadataCache();
+    private final NameCache nameCache = new NameCache();
+    private final ValueCompressor compressor = new ValueCompressor();
+    private final RowKeySalter salter = new RowKeySalter();
+    private volatile HBaseAdmin hBaseAdmin;
+    private final AtomicInteger openScanners = new AtomicInteger();
+    private final AtomicLong renewedScanners = new AtomicLong();
+    private final AtomicLong reapedScanners = new AtomicLong();
+    private final Set<ScanCursor> liveCursors = new HashSet<ScanCursor>();
+    private volatile long scannerMaxIdleMillis = 300000;
+    private ScheduledExecutorService scannerReaper;
+    private volatile ValueCodec valueCodec = new DefaultValueCodec();
+    private volatile Map<String, ValueCodec> columnFamilyCodecs = Collections.emptyMap();
+    private volatile int maxCellSize = 0;
+    private volatile int scanPrefetchPages;
+    private volatile long scanTargetPageBytes;
+    private volatile long scanTargetPageMillis;
+    private volatile int scanMaxFetchSize = 1000;
+    private final AtomicLong adaptivePages = new AtomicLong();
+    private volatile int lastAdaptiveFetchSize;
+    private volatile long lastAdaptiveRowBytes;
+    private volatile long lastAdaptivePageMillis;
+    private ExecutorService prefetchExecutor;
 
     public RPCHBaseService()
     {
-        hTableInterfaceFactory = new HTableFactory();
+        this(new HTableFactory());
+    }
+
+    public RPCHBaseService(HTableInterfaceFactory hTableInterfaceFactory)
+    {
+        this.hTableInterfaceFactory = hTableInterfaceFactory;
         configuration = HBaseConfiguration.create();
+        tablePool = new BoundedHTablePool(configuration, hTableInterfaceFactory);
+        writeBuffer = new WriteBuffer()
+        {
+            @Override
+            protected void send(String tableName, final List<Put> puts)
+            {
+                List<Put> sent = new ArrayList<Put>(puts);
+                try
+                {
+                    doWithHTable(tableName, new TableCallback<Void>()
+                    {
+                        public Void doWithHBaseAdmin(HTableInterface hTable) throws Exception
+                        {
+                            try
+                            {
+                                hTable.put(puts);
+                            }
+                            catch (RetriesExhaustedWithDetailsException e)
+                            {
+                                // the other puts of the batch were written
+                                puts.retainAll(failedPuts(e));
+                                throw e;
+                            }
+                            return null;
+                        }
+                    });
+                }
+                finally
+                {
+                    invalidateCachedRows(tableName, sent);
+                }
+            }
+        };
+        asyncWriter = new AsyncWriter()
+        {
+            @Override
+            protected void send(String tableName, final List<Put> puts)
+            {
+                try
+                {
+                    doWithHTable(tableName, new TableCallback<Void>()
+                    {
+                        public Void doWithHBaseAdmin(HTableInterface hTable) throws Exception
+                        {
+                            hTable.put(puts);
+                            return null;
+                        }
+                    });
+                }
+                finally
+                {
+                    invalidateCachedRows(tableName, puts);
+                }
+            }
+        };
     }
 
     // ------------ Admin Operations
@@ -130,31 +277,22 @@ public class RPCHBaseService implements HBaseService
                 {
                     throw new HBaseServiceException(e);
                 }
+                finally
+                {
+                    metadataCache.invalidate(name);
+                }
             }
         });
     }
 
     /** @see HBaseService#existsTable(String) */
-    public boolean existsTable(final String name)
+    public boolean existsTable(String name)
     {
-        return doWithHBaseAdmin(new AdminCallback<Boolean>()
+        if (metadataCache.isEnabled())
         {
-            public Boolean doWithHBaseAdmin(HBaseAdmin hBaseAdmin)
-            {
-                try
-                {
-                    return hBaseAdmin.getTableDescriptor(name.getBytes(UTF8)) != null;
-                }
-                catch (TableNotFoundException e)
-                {
-                    return false;
-                }
-                catch (IOException e)
-                {
-                    throw new HBaseServiceException(e);
-                }
-            }
-        });
+            return getCachedTable(name).exists();
+        }
+        return getTableDescriptor(name) != null;
     }
 
     /** @see HBaseService#deleteTable(String) */
@@ -169,12 +307,17 @@ public class RPCHBaseService implements HBaseService
                     hBaseAdmin.disableTable(name);
                     hBaseAdmin.deleteTable(name);
                     doFlush(hBaseAdmin, name);
+                    rowCache.invalidateTable(name);
                     return null;
                 }
                 catch (IOException e)
                 {
                     throw new HBaseServiceException(e);
                 }
+                finally
+                {
+                    metadataCache.invalidate(name);
+                }
             }
         });
     }
@@ -274,6 +417,10 @@ public class RPCHBaseService implements HBaseService
                 {
                     throw new HBaseServiceException(e);
                 }
+                finally
+                {
+                    metadataCache.invalidate(name);
+                }
             }
         });
     }
@@ -281,13 +428,22 @@ public class RPCHBaseService implements HBaseService
     /** @see HBaseService#existsColumn(String, String) */
     public boolean existsColumn(String tableName, final String columnFamilyName)
     {
+        if (metadataCache.isEnabled())
+        {
+            TableMetadataCache.CachedTable cached = getCachedTable(tableName);
+            if (!cached.exists())
+            {
+                throw new HBaseServiceException(new TableNotFoundException(tableName));
+            }
+            return cached.getDescriptor().getFamily(nameCache.toBytes(columnFamilyName)) != null;
+        }
         return doWithHTable(tableName, new TableCallback<Boolean>()
         {
             public Boolean doWithHBaseAdmin(HTableInterface hTable)
             {
                 try
                 {
-                    return hTable.getTableDescriptor().getFamily(columnFamilyName.getBytes(UTF8)) != null;
+                    return hTable.getTableDescriptor().getFamily(nameCache.toBytes(columnFamilyName)) != null;
                 }
                 catch (IOException e)
                 {
@@ -322,7 +478,7 @@ public class RPCHBaseService implements HBaseService
                 try
                 {
                     HTableDescriptor otd = hBaseAdmin.getTableDescriptor(tableName.getBytes(UTF8));
-                    HColumnDescriptor ocd = otd.getFamily(columnFamilyName.getBytes(UTF8));
+                    HColumnDescriptor ocd = otd.getFamily(nameCache.toBytes(columnFamilyName));
                     HColumnDescriptor descriptor = new HColumnDescriptor(ocd);
                     loadPropertiesInDescriptor(descriptor, maxVersions, blocksize, compressionType,
                         compactionCompressionType, inMemory, timeToLive, blockCacheEnabled, bloomFilterType,
@@ -337,6 +493,10 @@ public class RPCHBaseService implements HBaseService
                 {
                     throw new HBaseServiceException(e);
                 }
+                finally
+                {
+                    metadataCache.invalidate(tableName);
+                }
             }
 
             private void loadPropertiesInDescriptor(HColumnDescriptor descriptor,
@@ -412,12 +572,17 @@ public class RPCHBaseService implements HBaseService
                     hBaseAdmin.deleteColumn(tableName, columnFamilyName);
                     hBaseAdmin.enableTable(tableName);
                     doFlush(hBaseAdmin, tableName);
+                    rowCache.invalidateTable(tableName);
                     return null;
                 }
                 catch (IOException e)
                 {
                     throw new HBaseServiceException(e);
                 }
+                finally
+                {
+                    metadataCache.invalidate(tableName);
+                }
             }
         });
     }
@@ -427,13 +592,138 @@ public class RPCHBaseService implements HBaseService
     public Result get(String tableName, final String rowKey, final Integer maxVersions, final Long timestamp)
 
     {
-        return doWithHTable(tableName, new TableCallback<Result>()
+        return get(tableName, rowKey, null, maxVersions, timestamp, null, null);
+    }
+
+    /**
+     * @see HBaseService#get(String, String, Collection, Integer, Long, Long, Long)
+     */
+    public Result get(final String tableName,
+                      final String rowKey,
+                      final Collection<String> columns,
+                      final Integer maxVersions,
+                      final Long timestamp,
+                      final Long minTimestamp,
+                      final Long maxTimestamp)
+    {
+        // before borrowing a handle, so that bad arguments are not taken as failures of it
+        Validate.isTrue(timestamp == null || minTimestamp == null && maxTimestamp == null,
+            "timestamp can not be combined with a time range");
+        String projection = null;
+        long stamp = 0;
+        if (rowCache.isEnabled())
+        {
+            projection = projection(columns, maxVersions, timestamp, minTimestamp, maxTimestamp);
+            Result cached = rowCache.get(tableName, rowKey, projection);
+            if (cached != null)
+            {
+                return cached;
+            }
+            stamp = rowCache.stamp(tableName, rowKey);
+        }
+        final boolean salted = salter.isSalted(tableName);
+        Result result = doWithHTable(tableName, new TableCallback<Result>()
         {
             public Result doWithHBaseAdmin(HTableInterface hTable) throws Exception
             {
-                return hTable.get(createGet(rowKey, maxVersions, timestamp));
+                Result result = hTable.get(createGet(tableName, rowKey, columns, maxVersions, timestamp,
+                    minTimestamp, maxTimestamp));
+                return compressor.decompress(salted ? salter.unsalt(result) : result);
             }
         });
+        if (projection != null && result != null)
+        {
+            rowCache.put(tableName, rowKey, projection, result, stamp);
+        }
+        return result;
+    }
+
+    /** @see HBaseService#decode(Result) */
+    public DecodedRow decode(Result result)
+    {
+        return new DecodedRow(result, valueCodec, columnFamilyCodecs);
+    }
+
+    /** @see HBaseService#decodeAll(Iterable) */
+    public Iterable<DecodedRow> decodeAll(Iterable<Result> results)
+    {
+        return new DecodedRowIterable(results, valueCodec, columnFamilyCodecs);
+    }
+
+    /** @see HBaseService#getValue(String, String, String, String, Long) */
+    public Object getValue(String tableName,
+                           String rowKey,
+                           String columnFamilyName,
+                           String columnQualifier,
+                           Long timestamp)
+    {
+        Validate.notNull(columnFamilyName, "columnFamilyName must not be null");
+        Validate.notNull(columnQualifier, "columnQualifier must not be null");
+        Result result = get(tableName, rowKey, toColumns(columnFamilyName, columnQualifier), 1, timestamp, null,
+            null);
+        byte[] value = result.getValue(nameCache.toBytes(columnFamilyName), nameCache.toBytes(columnQualifier));
+        return value != null ? codecFor(columnFamilyName).decode(value) : null;
+    }
+
+    /**
+     * @see HBaseService#getAll(String, Collection, String, String, Integer, Long)
+     */
+    public List<Result> getAll(final String tableName,
+                               Collection<String> rowKeys,
+                               String columnFamilyName,
+                               String columnQualifier,
+                               Integer maxVersions,
+                               Long timestamp)
+    {
+        Validate.notNull(rowKeys);
+        List<String> columns = toColumns(columnFamilyName, columnQualifier);
+        String projection = rowCache.isEnabled() ? projection(columns, maxVersions, timestamp, null, null) : null;
+        List<String> keys = new ArrayList<String>(rowKeys);
+        Result[] answer = new Result[keys.size()];
+        long[] stamps = new long[keys.size()];
+        List<Integer> fetched = new ArrayList<Integer>(keys.size());
+        final List<Get> gets = new ArrayList<Get>(keys.size());
+        for (int i = 0; i < keys.size(); i++)
+        {
+            if (projection != null)
+            {
+                answer[i] = rowCache.get(tableName, keys.get(i), projection);
+                if (answer[i] != null)
+                {
+                    continue;
+                }
+                stamps[i] = rowCache.stamp(tableName, keys.get(i));
+            }
+            gets.add(createGet(tableName, keys.get(i), columns, maxVersions, timestamp, null, null));
+            fetched.add(i);
+        }
+        if (!gets.isEmpty())
+        {
+            final boolean salted = salter.isSalted(tableName);
+            Result[] results = doWithHTable(tableName, new TableCallback<Result[]>()
+            {
+                public Result[] doWithHBaseAdmin(HTableInterface hTable) throws Exception
+                {
+                    Result[] results = hTable.get(gets);
+                    return compressor.decompress(salted ? salter.unsalt(results) : results);
+                }
+            });
+            for (int j = 0; j < results.length; j++)
+            {
+                int i = fetched.get(j);
+                if (results[j] == null)
+                {
+                    answer[i] = new Result();
+                    continue;
+                }
+                answer[i] = results[j];
+                if (projection != null)
+                {
+                    rowCache.put(tableName, keys.get(i), projection, results[j], stamps[i]);
+                }
+            }
+        }
+        return new ArrayList<Result>(Arrays.asList(answer));
     }
 
     /**
@@ -449,16 +739,113 @@ public class RPCHBaseService implements HBaseService
                     final boolean writeToWAL,
                     final RowLock lock)
     {
-        doWithHTable(tableName, new TableCallback<Void>()
+        // queued and buffered puts invalidate the row once sent too, but gets in
+        // between must not answer what was cached before them
+        if (asyncWriter.isEnabled() && lock == null)
         {
-            public Void doWithHBaseAdmin(HTableInterface hTable) throws Exception
+            asyncWriter.submit(tableName, createPut(tableName, row, columnFamilyName, columnQualifier, timestamp,
+                value, writeToWAL, lock));
+            invalidateCachedRow(tableName, row);
+            return;
+        }
+        if (writeBuffer.isEnabled() && lock == null)
+        {
+            writeBuffer.add(tableName, createPut(tableName, row, columnFamilyName, columnQualifier, timestamp,
+                value, writeToWAL, lock));
+            invalidateCachedRow(tableName, row);
+            return;
+        }
+        try
+        {
+            doWithHTable(tableName, new TableCallback<Void>()
             {
-                final Put put = createPut(row, columnFamilyName, columnQualifier, timestamp, value,
-                    writeToWAL, lock);
-                hTable.put(put);
-                return null;
+                public Void doWithHBaseAdmin(HTableInterface hTable) throws Exception
+                {
+                    final Put put = createPut(tableName, row, columnFamilyName, columnQualifier, timestamp, value,
+                        writeToWAL, lock);
+                    hTable.put(put);
+                    return null;
+                }
+            });
+        }
+        finally
+        {
+            invalidateCachedRow(tableName, row);
+        }
+    }
+
+    /**
+     * @see HBaseService#putAsync(String, String, String, String, Long, Object,
+     *      boolean)
+     */
+    public Future<Void> putAsync(final String tableName,
+                                 final String row,
+                                 final String columnFamilyName,
+                                 final String columnQualifier,
+                                 final Long timestamp,
+                                 final Object value,
+                                 final boolean writeToWAL)
+    {
+        if (asyncWriter.isEnabled())
+        {
+            Future<Void> write = asyncWriter.submit(tableName, createPut(tableName, row, columnFamilyName,
+                columnQualifier, timestamp, value, writeToWAL, null));
+            invalidateCachedRow(tableName, row);
+            return write;
+        }
+        FutureTask<Void> task = new FutureTask<Void>(new Runnable()
+        {
+            public void run()
+            {
+                put(tableName, row, columnFamilyName, columnQualifier, timestamp, value, writeToWAL, null);
             }
-        });
+        }, null);
+        task.run();
+        return task;
+    }
+
+    /** @see HBaseService#putAll(String, Collection, boolean) */
+    public void putAll(String tableName, final Collection<CellValue> values, final boolean writeToWAL)
+    {
+        Validate.notNull(values);
+        if (values.isEmpty())
+        {
+            return;
+        }
+        flushBufferedPuts(tableName);
+        final List<Put> puts = createPuts(tableName, values, writeToWAL);
+        try
+        {
+            doWithHTable(tableName, new TableCallback<Void>()
+            {
+                public Void doWithHBaseAdmin(HTableInterface hTable) throws Exception
+                {
+                    hTable.put(puts);
+                    return null;
+                }
+            });
+        }
+        finally
+        {
+            invalidateCachedRows(tableName, puts);
+        }
+    }
+
+    /** @see HBaseService#flushCommits(String) */
+    public void flushCommits(String tableName)
+    {
+        if (asyncWriter.isEnabled())
+        {
+            asyncWriter.awaitPending(tableName);
+        }
+        if (tableName == null)
+        {
+            writeBuffer.flushAll();
+        }
+        else
+        {
+            writeBuffer.flush(tableName);
+        }
     }
 
     /** @see HBaseService#exists(String, String, Integer, Long) */
@@ -481,16 +868,24 @@ public class RPCHBaseService implements HBaseService
                        final boolean deleteAllVersions,
                        final RowLock lock)
     {
-        doWithHTable(tableName, new TableCallback<Void>()
+        flushBufferedPuts(tableName);
+        try
         {
-            public Void doWithHBaseAdmin(HTableInterface hTable) throws Exception
+            doWithHTable(tableName, new TableCallback<Void>()
             {
-                final Delete delete = createDelete(row, columnFamilyName, columnQualifier, timestamp,
-                    deleteAllVersions, lock);
-                hTable.delete(delete);
-                return null;
-            }
-        });
+                public Void doWithHBaseAdmin(HTableInterface hTable) throws Exception
+                {
+                    final Delete delete = createDelete(tableName, row, columnFamilyName, columnQualifier, timestamp,
+                        deleteAllVersions, lock);
+                    hTable.delete(delete);
+                    return null;
+                }
+            });
+        }
+        finally
+        {
+            invalidateCachedRow(tableName, row);
+        }
     }
 
     /**
@@ -509,248 +904,1539 @@ public class RPCHBaseService implements HBaseService
                                  final String stopRow,
                                  final int fetchSize)
     {
-        return doWithHTable(tableName, new TableCallback<ResultIterable>()
+        return scan(tableName, columnFamilyName, columnQualifier, timestamp, maxTimestamp, caching, cacheBlocks,
+            maxVersions, startRow, stopRow, fetchSize, null);
+    }
+
+    /**
+     * @see HBaseService#scan(String, String, String, Long, Long, Integer, boolean,
+     *      int, String, String, int, ScanFilter)
+     */
+    public Iterable<Result> scan(final String tableName,
+                                 final String columnFamilyName,
+                                 final String columnQualifier,
+                                 final Long timestamp,
+                                 final Long maxTimestamp,
+                                 final Integer caching,
+                                 final boolean cacheBlocks,
+                                 final int maxVersions,
+                                 final String startRow,
+                                 final String stopRow,
+                                 final int fetchSize,
+                                 final ScanFilter filter)
+    {
+        return scan(tableName, columnFamilyName, columnQualifier, timestamp, maxTimestamp, caching, cacheBlocks,
+            maxVersions, startRow, stopRow, fetchSize, filter, null);
+    }
+
+    /**
+     * @see HBaseService#scan(String, String, String, Long, Long, Integer, boolean,
+     *      int, String, String, int, ScanFilter, ScanOptions)
+     */
+    public Iterable<Result> scan(final String tableName,
+                                 final String columnFamilyName,
+                                 final String columnQualifier,
+                                 final Long timestamp,
+                                 final Long maxTimestamp,
+                                 final Integer caching,
+                                 final boolean cacheBlocks,
+                                 final int maxVersions,
+                                 final String startRow,
+                                 final String stopRow,
+                                 final int fetchSize,
+                                 final ScanFilter filter,
+                                 final ScanOptions options)
+    {
+        ScanOptions scanOptions = options != null ? options : new ScanOptions();
+        final int parallelism = scanOptions.getParallelism();
+        final boolean ordered = scanOptions.isOrdered();
+        final Integer batch = scanOptions.getBatch();
+        Validate.isTrue(StringUtils.isNotBlank(tableName));
+        Validate.isTrue(batch == null || batch > 0, "batch must be positive");
+        // the region servers reject batched scans whose filters need whole rows
+        Validate.isTrue(batch == null || filter == null || !needsWholeRows(filter),
+            "batch can not be combined with pageSize or with a value comparison on a column");
+        try
         {
-            public ResultIterable doWithHBaseAdmin(HTableInterface hTable) throws Exception
+            Scan scan = createScan(columnFamilyName, columnQualifier, timestamp, maxTimestamp, caching,
+                cacheBlocks, maxVersions, startRow, stopRow);
+            applyFilter(scan, filter);
+            if (batch != null)
+            {
+                scan.setBatch(batch);
+            }
+            if (salter.isSalted(tableName))
             {
-                Scan scan = new Scan();
-                if (columnFamilyName != null)
+                List<Iterable<Result>> buckets = new ArrayList<Iterable<Result>>(salter.getBuckets());
+                for (Scan bucketScan : splitByBuckets(scan, filter))
                 {
-                    if (columnQualifier != null)
+                    ResultIterable bucket = new ResultIterable(tableName, bucketScan, fetchSize, true);
+                    if (scanPrefetchPages > 0)
                     {
-                        scan.addColumn(columnFamilyName.getBytes(UTF8), columnQualifier.getBytes(UTF8));
+                        bucket.setPrefetch(getPrefetchExecutor(), scanPrefetchPages);
                     }
-                    else
+                    buckets.add(bucket);
+                }
+                // page filters apply to each bucket, so the merged rows are capped too
+                long maxRows = filter != null && filter.getPageSize() != null ? filter.getPageSize() : 0;
+                return new SaltedScanIterable(buckets, salter, getPrefetchExecutor(), maxRows);
+            }
+            if (parallelism > 1)
+            {
+                return new ParallelScanIterable(splitByRegions(tableName, scan), parallelism, ordered, fetchSize)
+                {
+                    @Override
+                    protected Iterable<Result> scanRegion(Scan regionScan)
                     {
-                        scan.addFamily(columnFamilyName.getBytes(UTF8));
+                        return new ResultIterable(tableName, regionScan, fetchSize, true);
                     }
-                }
-                if (timestamp != null)
+                };
+            }
+            ResultIterable results = new ResultIterable(tableName, scan, fetchSize, true);
+            if (scanPrefetchPages > 0)
+            {
+                results.setPrefetch(getPrefetchExecutor(), scanPrefetchPages);
+            }
+            return results;
+        }
+        catch (IOException e)
+        {
+            throw new HBaseServiceException(e);
+        }
+    }
+
+    /**
+     * @see HBaseService#scanPage(String, String, String, Long, Long, boolean, int,
+     *      String, String, ScanFilter, int, String)
+     */
+    public ScanPage scanPage(final String tableName,
+                             final String columnFamilyName,
+                             final String columnQualifier,
+                             final Long timestamp,
+                             final Long maxTimestamp,
+                             final boolean cacheBlocks,
+                             final int maxVersions,
+                             final String startRow,
+                             final String stopRow,
+                             final ScanFilter filter,
+                             final int maxRows,
+                             final String continuationToken)
+    {
+        Validate.isTrue(StringUtils.isNotBlank(tableName));
+        Validate.isTrue(maxRows > 0, "maxRows must be positive");
+        Validate.isTrue(!salter.isSalted(tableName), "Salted tables can not be scanned by pages");
+        try
+        {
+            final Scan scan = createScan(columnFamilyName, columnQualifier, timestamp, maxTimestamp, null,
+                cacheBlocks, maxVersions, startRow, stopRow);
+            applyFilter(scan, filter);
+            byte[] digest = digest(tableName, scan);
+            if (continuationToken != null)
+            {
+                scan.setStartRow(decodeContinuation(digest, scan, continuationToken));
+            }
+            // one row more than the page, so that the last page needs no token
+            scan.setCaching(maxRows + 1);
+            Result[] results = doWithHTable(tableName, new TableCallback<Result[]>()
+            {
+                public Result[] doWithHBaseAdmin(HTableInterface hTable) throws Exception
                 {
-                    if (maxTimestamp != null)
+                    ResultScanner scanner = hTable.getScanner(scan);
+                    try
                     {
-                        scan.setTimeRange(timestamp, maxTimestamp);
+                        return compressor.decompress(scanner.next(maxRows + 1));
                     }
-                    else
+                    finally
                     {
-                        scan.setTimeStamp(timestamp);
+                        scanner.close();
                     }
                 }
-                if (caching != null)
-                {
-                    scan.setCaching(caching);
-                }
-                scan.setCacheBlocks(cacheBlocks);
-                scan.setMaxVersions(maxVersions);
-                if (startRow != null)
-                {
-                    scan.setStartRow(startRow.getBytes(UTF8));
-                }
-                if (stopRow != null)
-                {
-                    scan.setStopRow(stopRow.getBytes(UTF8));
-                }
-
-                return new ResultIterable(scan, fetchSize, hTable);
+            });
+            if (results.length <= maxRows)
+            {
+                return new ScanPage(Arrays.asList(results), null);
             }
-        });
+            return new ScanPage(Arrays.asList(results).subList(0, maxRows), encodeContinuation(digest,
+                results[maxRows].getRow()));
+        }
+        catch (IOException e)
+        {
+            throw new HBaseServiceException(e);
+        }
     }
 
-    private static class ScannerAndResults
+    /** @see HBaseService#countRows(String, String, String, String, int, int) */
+    public long countRows(final String tableName,
+                          final String columnFamilyName,
+                          final String startRow,
+                          final String stopRow,
+                          final int caching,
+                          final int parallelism)
     {
-        private ResultScanner scanner;
-        private Result[] results;
-
-        public ScannerAndResults(ResultScanner scanner, int fetchSize) throws IOException
+        Validate.isTrue(StringUtils.isNotBlank(tableName));
+        Validate.isTrue(caching > 0, "caching must be positive");
+        try
         {
-            this(scanner, scanner.next(fetchSize));
+            Scan scan = createScan(columnFamilyName, null, null, null, caching, false, 1, startRow, stopRow);
+            scan.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL, Arrays.<Filter> asList(
+                new FirstKeyOnlyFilter(), new KeyOnlyFilter())));
+            if (salter.isSalted(tableName))
+            {
+                return countRows(tableName, splitByBuckets(scan, null), parallelism);
+            }
+            if (parallelism <= 1)
+            {
+                return countRows(tableName, scan);
+            }
+            return countRows(tableName, splitByRegions(tableName, scan), parallelism);
         }
-
-        public ScannerAndResults(ResultScanner scanner, Result[] results)
+        catch (IOException e)
         {
-            this.scanner = scanner;
-            this.results = results;
+            throw new HBaseServiceException(e);
         }
+    }
 
-        public Result[] getResults()
+    /** Counts the rows of each region scan, running at most parallelism at once */
+    /**
+     * Counts the rows of the given scans, up to parallelism of them at once, using
+     * the shared executor of background scans. The first failure cancels the
+     * counts still running.
+     */
+    private long countRows(String tableName, List<Scan> scans, int parallelism)
+    {
+        CompletionService<Long> completion = new ExecutorCompletionService<Long>(getPrefetchExecutor());
+        List<Future<Long>> counts = new ArrayList<Future<Long>>(scans.size());
+        Iterator<Scan> pending = scans.iterator();
+        try
+        {
+            for (int i = 0; i < Math.max(1, parallelism) && pending.hasNext(); i++)
+            {
+                counts.add(completion.submit(countTask(tableName, pending.next())));
+            }
+            long total = 0;
+            for (int i = 0; i < scans.size(); i++)
+            {
+                total += completion.take().get();
+                if (pending.hasNext())
+                {
+                    counts.add(completion.submit(countTask(tableName, pending.next())));
+                }
+            }
+            return total;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new HBaseServiceException(e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new HBaseServiceException(e.getCause());
+        }
+        finally
+        {
+            // does nothing to the counts already done
+            for (Future<Long> count : counts)
+            {
+                count.cancel(true);
+            }
+        }
+    }
+
+    private Callable<Long> countTask(final String tableName, final Scan scan)
+    {
+        return new Callable<Long>()
+        {
+            public Long call()
+            {
+                return countRows(tableName, scan);
+            }
+        };
+    }
+
+    private long countRows(String tableName, Scan scan)
+    {
+        ResultIterable rows = new ResultIterable(tableName, scan, scan.getCaching());
+        try
+        {
+            long count = 0;
+            for (Iterator<Result> iter = rows.iterator(); iter.hasNext(); iter.next())
+            {
+                count++;
+            }
+            return count;
+        }
+        finally
+        {
+            rows.dispose();
+        }
+    }
+
+    /**
+     * Splits the given scan into a scan per region it spans, sorted by start row.
+     * The scan is answered as is if the region boundaries are not available.
+     */
+    private List<Scan> splitByRegions(String tableName, Scan scan) throws IOException
+    {
+        Pair<byte[][], byte[][]> keys = doWithHTable(tableName, new TableCallback<Pair<byte[][], byte[][]>>()
+        {
+            public Pair<byte[][], byte[][]> doWithHBaseAdmin(HTableInterface hTable) throws Exception
+            {
+                return hTable instanceof HTable ? ((HTable) hTable).getStartEndKeys() : null;
+            }
+        });
+        if (keys == null)
+        {
+            return Collections.singletonList(scan);
+        }
+        byte[] startRow = scan.getStartRow();
+        byte[] stopRow = scan.getStopRow();
+        List<Scan> regionScans = new ArrayList<Scan>();
+        for (int i = 0; i < keys.getFirst().length; i++)
+        {
+            byte[] regionStart = max(startRow, keys.getFirst()[i]);
+            byte[] regionStop = minStop(stopRow, keys.getSecond()[i]);
+            if (regionStop.length == 0 || Bytes.compareTo(regionStart, regionStop) < 0)
+            {
+                Scan regionScan = new Scan(scan);
+                regionScan.setStartRow(regionStart);
+                regionScan.setStopRow(regionStop);
+                regionScans.add(regionScan);
+            }
+        }
+        return regionScans;
+    }
+
+    /**
+     * Splits the given scan of a salted table into a scan per bucket, sorted by
+     * bucket. Each one gets its own filter for the given criteria, if any.
+     */
+    private List<Scan> splitByBuckets(Scan scan, ScanFilter filter) throws IOException
+    {
+        List<Scan> bucketScans = new ArrayList<Scan>(salter.getBuckets());
+        for (int bucket = 0; bucket < salter.getBuckets(); bucket++)
+        {
+            Scan bucketScan = new Scan(scan);
+            bucketScan.setStartRow(salter.prefix(bucket, scan.getStartRow()));
+            if (scan.getStopRow().length > 0)
+            {
+                bucketScan.setStopRow(salter.prefix(bucket, scan.getStopRow()));
+            }
+            else
+            {
+                // the start of the next bucket, or the end of the table for the last one
+                bucketScan.setStopRow(bucket < 255 ? new byte[]{(byte) (bucket + 1)} : new byte[0]);
+            }
+            if (filter != null && !filter.isEmpty())
+            {
+                bucketScan.setFilter(createFilter(filter, bucket));
+            }
+            bucketScans.add(bucketScan);
+        }
+        return bucketScans;
+    }
+
+    private static byte[] max(byte[] startRow, byte[] otherStartRow)
+    {
+        return Bytes.compareTo(startRow, otherStartRow) >= 0 ? startRow : otherStartRow;
+    }
+
+    /** Answers the lower of the given stop rows, where an empty one means no stop */
+    private static byte[] minStop(byte[] stopRow, byte[] otherStopRow)
+    {
+        if (stopRow.length == 0)
+        {
+            return otherStopRow;
+        }
+        if (otherStopRow.length == 0)
+        {
+            return stopRow;
+        }
+        return Bytes.compareTo(stopRow, otherStopRow) <= 0 ? stopRow : otherStopRow;
+    }
+
+    private Scan createScan(final String columnFamilyName,
+                            final String columnQualifier,
+                            final Long timestamp,
+                            final Long maxTimestamp,
+                            final Integer caching,
+                            final boolean cacheBlocks,
+                            final int maxVersions,
+                            final String startRow,
+                            final String stopRow) throws IOException
+    {
+        Scan scan = new Scan();
+        if (columnFamilyName != null)
+        {
+            if (columnQualifier != null)
+            {
+                scan.addColumn(nameCache.toBytes(columnFamilyName), nameCache.toBytes(columnQualifier));
+            }
+            else
+            {
+                scan.addFamily(nameCache.toBytes(columnFamilyName));
+            }
+        }
+        if (timestamp != null)
+        {
+            if (maxTimestamp != null)
+            {
+                scan.setTimeRange(timestamp, maxTimestamp);
+            }
+            else
+            {
+                scan.setTimeStamp(timestamp);
+            }
+        }
+        if (caching != null)
+        {
+            scan.setCaching(caching);
+        }
+        scan.setCacheBlocks(cacheBlocks);
+        scan.setMaxVersions(maxVersions);
+        if (startRow != null)
+        {
+            scan.setStartRow(startRow.getBytes(UTF8));
+        }
+        if (stopRow != null)
+        {
+            scan.setStopRow(stopRow.getBytes(UTF8));
+        }
+        return scan;
+    }
+
+    /**
+     * Sets on the given scan the filter of the given criteria, if any. A row prefix
+     * after the start row becomes the start row, so that the region servers seek
+     * to the first prefixed row instead of filtering every row before it.
+     */
+    private void applyFilter(Scan scan, ScanFilter criteria)
+    {
+        if (criteria == null)
+        {
+            return;
+        }
+        Validate.isTrue(criteria.getValueColumnQualifier() == null || criteria.getValueColumnFamilyName() != null,
+            "valueColumnFamilyName must be set along with valueColumnQualifier");
+        validateValueComparison(scan, criteria);
+        if (criteria.isEmpty())
+        {
+            return;
+        }
+        scan.setFilter(createFilter(criteria));
+        if (criteria.getRowPrefix() != null)
+        {
+            scan.setStartRow(max(scan.getStartRow(), criteria.getRowPrefix().getBytes(UTF8)));
+        }
+    }
+
+    /**
+     * Rejects value comparisons that can not be evaluated on compressed values. The
+     * region servers compare the stored bytes, so only equality holds, and only
+     * when the compared value is known to be compressed the same way - that is,
+     * when the scanned families are either all compressed or none is.
+     */
+    private void validateValueComparison(Scan scan, ScanFilter criteria)
+    {
+        if (criteria.getValueCompareOperator() == null || !compressor.isEnabled())
+        {
+            return;
+        }
+        if (criteria.getValueColumnFamilyName() == null)
+        {
+            Validate.isTrue(scan.hasFamilies() && !isAnyCompressed(scan.getFamilies()),
+                "valueColumnFamilyName must be set to compare values while scanning compressed families");
+        }
+        else if (compressor.isCompressed(nameCache.toBytes(criteria.getValueColumnFamilyName())))
+        {
+            CompareOperator operator = criteria.getValueCompareOperator();
+            Validate.isTrue(operator == CompareOperator.EQUAL || operator == CompareOperator.NOT_EQUAL,
+                "Values of compressed families can only be compared for equality");
+        }
+    }
+
+    private boolean isAnyCompressed(byte[][] families)
+    {
+        for (byte[] family : families)
+        {
+            if (compressor.isCompressed(family))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the server-side filter for the given criteria. The page filter goes
+     * last, so that it counts only the rows that pass the other filters.
+     */
+    private Filter createFilter(ScanFilter criteria)
+    {
+        return createFilter(criteria, null);
+    }
+
+    /**
+     * Creates the server-side filter for the given criteria, with the row prefix
+     * salted with the given bucket, if any
+     */
+    private Filter createFilter(ScanFilter criteria, Integer bucket)
+    {
+        List<Filter> filters = new ArrayList<Filter>();
+        if (criteria.getRowPrefix() != null)
+        {
+            byte[] rowPrefix = criteria.getRowPrefix().getBytes(UTF8);
+            filters.add(new PrefixFilter(bucket != null ? salter.prefix(bucket, rowPrefix) : rowPrefix));
+        }
+        if (criteria.getColumnPrefix() != null)
+        {
+            filters.add(new ColumnPrefixFilter(criteria.getColumnPrefix().getBytes(UTF8)));
+        }
+        if (criteria.getQualifierRegex() != null)
+        {
+            filters.add(new QualifierFilter(CompareOp.EQUAL, new RegexStringComparator(
+                criteria.getQualifierRegex())));
+        }
+        if (criteria.getValueCompareOperator() != null)
+        {
+            filters.add(createValueFilter(criteria));
+        }
+        if (criteria.isKeyOnly())
+        {
+            filters.add(new KeyOnlyFilter());
+        }
+        if (criteria.getPageSize() != null)
+        {
+            filters.add(new PageFilter(criteria.getPageSize()));
+        }
+        if (filters.size() == 1)
+        {
+            return filters.get(0);
+        }
+        return new FilterList(FilterList.Operator.MUST_PASS_ALL, filters);
+    }
+
+    /**
+     * Answers if the filter of the given criteria decides on whole rows - a page
+     * filter or a single column value filter - so it can not be used in batched
+     * scans
+     */
+    private static boolean needsWholeRows(ScanFilter criteria)
+    {
+        return criteria.getPageSize() != null
+               || (criteria.getValueCompareOperator() != null && criteria.getValueColumnFamilyName() != null);
+    }
+
+    private Filter createValueFilter(ScanFilter criteria)
+    {
+        Validate.notNull(criteria.getValue(), "value must be set when comparing values");
+        CompareOp compareOp = criteria.getValueCompareOperator().getCompareOp();
+        byte[] value = encode(criteria.getValueColumnFamilyName(), criteria.getValue());
+        if (criteria.getValueColumnFamilyName() == null)
+        {
+            return new ValueFilter(compareOp, new BinaryComparator(value));
+        }
+        Validate.notNull(criteria.getValueColumnQualifier(),
+            "valueColumnQualifier must be set along with valueColumnFamilyName");
+        SingleColumnValueFilter filter = new SingleColumnValueFilter(
+            nameCache.toBytes(criteria.getValueColumnFamilyName()),
+            nameCache.toBytes(criteria.getValueColumnQualifier()), compareOp, value);
+        filter.setFilterIfMissing(true);
+        return filter;
+    }
+
+    private static class ScannerAndResults
+    {
+        private ScanCursor cursor;
+        private Result[] results;
+        private int fetchSize;
+        private AdaptiveFetchSize adaptiveFetchSize;
+
+        public ScannerAndResults(ScanCursor cursor, int fetchSize)
+        {
+            this(cursor, cursor.next(fetchSize));
+            this.fetchSize = fetchSize;
+        }
+
+        public ScannerAndResults(ScanCursor cursor, Result[] results)
+        {
+            this.cursor = cursor;
+            this.results = results;
+            this.fetchSize = results.length;
+        }
+
+        public Result[] getResults()
         {
             return results;
         }
 
     }
 
-    private static final class ResultIterable extends PaginatedIterable<Result, ScannerAndResults>
+    /**
+     * A table handle and a scanner opened on it, owned by a single iteration over a
+     * {@link ResultIterable}. The handle is not taken from the table pool, so that
+     * slow or abandoned iterations can not starve other operations.
+     */
+    private final class ScanCursor
     {
-        private final HTableInterface hTable;
-        private final int fetchSize;
+        private final String tableName;
         private final Scan scan;
+        private HTableInterface hTable;
+        private ResultScanner scanner;
+        private byte[] lastRow;
+        private boolean closed;
+        private volatile long lastUsed = System.currentTimeMillis();
 
-        public ResultIterable(Scan scan, int fetchSize, HTableInterface hTable)
+        public ScanCursor(String tableName, Scan scan)
         {
+            this.tableName = tableName;
             this.scan = scan;
-            this.fetchSize = fetchSize;
-            this.hTable = hTable;
+            this.hTable = hTableInterfaceFactory.createHTableInterface(configuration, nameCache.toBytes(tableName));
+            try
+            {
+                open(scan);
+            }
+            catch (IOException e)
+            {
+                closeQuietly();
+                throw new HBaseServiceException(e);
+            }
+            synchronized (liveCursors)
+            {
+                liveCursors.add(this);
+            }
         }
 
-        @Override
-        protected ScannerAndResults firstPage()
+        private void open(Scan scan) throws IOException
+        {
+            scanner = hTable.getScanner(scan);
+            openScanners.incrementAndGet();
+        }
+
+        /**
+         * Answers the next results. If the region server lease expired because the
+         * consumer took too long between pages, or the cursor was reaped for being
+         * idle, the scanner is reopened right after the last returned row - unless
+         * the scan is batched, as the last result may be a part of a row. Any other
+         * failure closes the cursor.
+         */
+        public synchronized Result[] next(int fetchSize)
+        {
+            Validate.isTrue(!closed, "Scanner already closed");
+            lastUsed = System.currentTimeMillis();
+            try
+            {
+                if (hTable == null)
+                {
+                    resume();
+                }
+                Result[] results;
+                try
+                {
+                    results = scanner.next(fetchSize);
+                }
+                catch (ScannerTimeoutException e)
+                {
+                    if (scan.getBatch() > 0)
+                    {
+                        throw e;
+                    }
+                    renew();
+                    results = scanner.next(fetchSize);
+                }
+                if (results.length > 0)
+                {
+                    lastRow = results[results.length - 1].getRow();
+                }
+                lastUsed = System.currentTimeMillis();
+                return compressor.decompress(results);
+            }
+            catch (IOException e)
+            {
+                closeQuietly();
+                throw new HBaseServiceException(e);
+            }
+            catch (RuntimeException e)
+            {
+                closeQuietly();
+                throw e;
+            }
+        }
+
+        private void renew() throws IOException
+        {
+            closeScanner();
+            Scan resumed = new Scan(scan);
+            if (lastRow != null)
+            {
+                resumed.setStartRow(Bytes.add(lastRow, new byte[]{0}));
+            }
+            open(resumed);
+            renewedScanners.incrementAndGet();
+        }
+
+        /** Reopens the table handle and the scanner of a reaped cursor */
+        private void resume() throws IOException
+        {
+            if (scan.getBatch() > 0)
+            {
+                throw new HBaseServiceException("The scanner of table " + tableName
+                                                + " was closed for being idle, and batched scans can not be resumed");
+            }
+            hTable = hTableInterfaceFactory.createHTableInterface(configuration, nameCache.toBytes(tableName));
+            synchronized (liveCursors)
+            {
+                liveCursors.add(this);
+            }
+            renew();
+        }
+
+        /**
+         * Closes the scanner and the table handle if the cursor was not used since
+         * the given time. The cursor stays usable, as its next use resumes it.
+         */
+        public synchronized void reapIfIdleSince(long time)
+        {
+            if (closed || hTable == null || lastUsed >= time)
+            {
+                return;
+            }
+            logger.warn("Closing the scanner of table {}, that was not used for {} ms", tableName,
+                System.currentTimeMillis() - lastUsed);
+            try
+            {
+                closeTable();
+            }
+            catch (RuntimeException e)
+            {
+                logger.warn("Could not close idle scanner of table " + tableName, e);
+            }
+            reapedScanners.incrementAndGet();
+        }
+
+        private void closeScanner()
+        {
+            if (scanner != null)
+            {
+                try
+                {
+                    scanner.close();
+                }
+                finally
+                {
+                    scanner = null;
+                    openScanners.decrementAndGet();
+                }
+            }
+        }
+
+        /** Closes the scanner and the table handle. It can be safely called many times */
+        public synchronized void close()
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            closeTable();
+        }
+
+        private void closeTable()
+        {
+            synchronized (liveCursors)
+            {
+                liveCursors.remove(this);
+            }
+            if (hTable == null)
+            {
+                return;
+            }
+            try
+            {
+                closeScanner();
+            }
+            finally
+            {
+                try
+                {
+                    hTable.close();
+                }
+                catch (IOException e)
+                {
+                    throw new HBaseServiceException(e);
+                }
+                finally
+                {
+                    hTable = null;
+                }
+            }
+        }
+
+        /**
+         * Closes the cursor after a failure or on dispose, logging close failures
+         * so that they do not hide the original one nor leave other cursors open
+         */
+        public void closeQuietly()
+        {
+            try
+            {
+                close();
+            }
+            catch (RuntimeException e)
+            {
+                logger.warn("Could not close scanner of table " + tableName, e);
+            }
+        }
+    }
+
+    /**
+     * Lazy scan results. Each iteration opens its own {@link ScanCursor}, that is
+     * closed as soon as the iteration is exhausted or fails, or when this iterable is
+     * disposed - whatever happens first.
+     */
+    private final class ResultIterable extends PaginatedIterable<Result, ScannerAndResults>
+        implements Disposable
+    {
+        private final String tableName;
+        private final int fetchSize;
+        private final Scan scan;
+        private final boolean adaptive;
+        private final Set<ScanCursor> cursors = new HashSet<ScanCursor>();
+
+        public ResultIterable(String tableName, Scan scan, int fetchSize)
+        {
+            this(tableName, scan, fetchSize, false);
+        }
+
+        /**
+         * @param adaptive if the amount of rows per page should be resized to the
+         *            target page bytes, when it is set. Otherwise, every page
+         *            requests fetchSize rows
+         */
+        public ResultIterable(String tableName, Scan scan, int fetchSize, boolean adaptive)
+        {
+            this.tableName = tableName;
+            this.scan = scan;
+            this.fetchSize = fetchSize;
+            this.adaptive = adaptive;
+        }
+
+        @Override
+        protected ScannerAndResults firstPage()
+        {
+            ScanCursor cursor = new ScanCursor(tableName, scan);
+            synchronized (cursors)
+            {
+                cursors.add(cursor);
+            }
+            try
+            {
+                if (adaptive && scanTargetPageBytes > 0)
+                {
+                    return readPage(cursor, new AdaptiveFetchSize(fetchSize, scanTargetPageBytes,
+                        scanTargetPageMillis, scanMaxFetchSize));
+                }
+                return new ScannerAndResults(cursor, fetchSize);
+            }
+            catch (RuntimeException e)
+            {
+                synchronized (cursors)
+                {
+                    cursors.remove(cursor);
+                }
+                cursor.closeQuietly();
+                throw e;
+            }
+        }
+
+        @Override
+        protected boolean hasNextPage(ScannerAndResults page)
+        {
+            return page.getResults().length == page.fetchSize;
+        }
+
+        @Override
+        protected ScannerAndResults nextPage(ScannerAndResults currentPage)
+        {
+            if (currentPage.adaptiveFetchSize != null)
+            {
+                return readPage(currentPage.cursor, currentPage.adaptiveFetchSize);
+            }
+            return new ScannerAndResults(currentPage.cursor, fetchSize);
+        }
+
+        /** Reads a page of the size chosen by the given sizing, and resizes the next one */
+        private ScannerAndResults readPage(ScanCursor cursor, AdaptiveFetchSize adaptiveFetchSize)
+        {
+            int size = adaptiveFetchSize.getFetchSize();
+            long start = System.currentTimeMillis();
+            ScannerAndResults page = new ScannerAndResults(cursor, size);
+            adaptiveFetchSize.observe(page.results, System.currentTimeMillis() - start);
+            page.adaptiveFetchSize = adaptiveFetchSize;
+            adaptivePages.incrementAndGet();
+            lastAdaptiveFetchSize = adaptiveFetchSize.getFetchSize();
+            lastAdaptiveRowBytes = Math.round(adaptiveFetchSize.getRowBytes());
+            lastAdaptivePageMillis = Math.round(adaptiveFetchSize.getPageMillis());
+            return page;
+        }
+
+        @Override
+        protected Iterator<Result> pageIterator(ScannerAndResults page)
+        {
+            return Arrays.asList(page.results).iterator();
+        }
+
+        @Override
+        protected void release(ScannerAndResults lastPage)
+        {
+            synchronized (cursors)
+            {
+                cursors.remove(lastPage.cursor);
+            }
+            lastPage.cursor.close();
+        }
+
+        /** Closes the scanners of every iteration still in progress */
+        public void dispose()
+        {
+            cancelPrefetches();
+            List<ScanCursor> openCursors;
+            synchronized (cursors)
+            {
+                openCursors = new ArrayList<ScanCursor>(cursors);
+                cursors.clear();
+            }
+            for (ScanCursor cursor : openCursors)
+            {
+                cursor.closeQuietly();
+            }
+        }
+
+    }
+
+    /** @see HBaseService#increment(String, String, String, String, long, boolean) */
+    public long increment(final String tableName,
+                          final String row,
+                          final String columnFamilyName,
+                          final String columnQualifier,
+                          final long amount,
+                          final boolean writeToWAL)
+    {
+        Validate.isTrue(StringUtils.isNotBlank(tableName));
+        Validate.isTrue(StringUtils.isNotBlank(row));
+        Validate.isTrue(StringUtils.isNotBlank(columnFamilyName));
+        Validate.isTrue(StringUtils.isNotBlank(columnQualifier));
+        flushBufferedPuts(tableName);
+        try
+        {
+            return doWithHTable(tableName, new TableCallback<Long>()
+            {
+                public Long doWithHBaseAdmin(HTableInterface hTable) throws Exception
+                {
+                    return hTable.incrementColumnValue(toRowKey(tableName, row),
+                        nameCache.toBytes(columnFamilyName), nameCache.toBytes(columnQualifier), amount, writeToWAL);
+                }
+            });
+        }
+        finally
+        {
+            invalidateCachedRow(tableName, row);
+        }
+    }
+
+    /**
+     * @see HBaseService#checkAndPut(String, String, String, String, String, String,
+     *      String, Long, String, Boolean, RowLock)
+     */
+    public boolean checkAndPut(final String tableName,
+                               final String row,
+                               final String checkColumnFamilyName,
+                               final String checkColumnQualifier,
+                               final Object checkValue,
+                               final String putColumnFamilyName,
+                               final String putColumnQualifier,
+                               final Long putTimestamp,
+                               final Object putValue,
+                               final boolean putWriteToWAL,
+                               final RowLock putLock)
+    {
+        flushBufferedPuts(tableName);
+        try
+        {
+            return doWithHTable(tableName, new TableCallback<Boolean>()
+            {
+                public Boolean doWithHBaseAdmin(HTableInterface hTable) throws Exception
+                {
+                    final Put put = createPut(tableName, row, putColumnFamilyName, putColumnQualifier,
+                        putTimestamp, putValue, putWriteToWAL, putLock);
+                    return hTable.checkAndPut(toRowKey(tableName, row), nameCache.toBytes(checkColumnFamilyName),
+                        nameCache.toBytes(checkColumnQualifier), encode(checkColumnFamilyName, checkValue), put);
+                }
+            });
+        }
+        finally
+        {
+            invalidateCachedRow(tableName, row);
+        }
+    }
+
+    /**
+     * @see HBaseService#checkAndDelete(String, String, String, String, String,
+     *      String, String, Long, Boolean, RowLock)
+     */
+    public boolean checkAndDelete(final String tableName,
+                                  final String row,
+                                  final String checkColumnFamilyName,
+                                  final String checkColumnQualifier,
+                                  final Object checkValue,
+                                  final String deleteColumnFamilyName,
+                                  final String deleteColumnQualifier,
+                                  final Long deleteTimestamp,
+                                  final Boolean deleteAllVersions,
+                                  final RowLock deleteLock)
+    {
+        flushBufferedPuts(tableName);
+        try
+        {
+            return doWithHTable(tableName, new TableCallback<Boolean>()
+            {
+                public Boolean doWithHBaseAdmin(HTableInterface hTable) throws Exception
+                {
+                    final Delete delete = createDelete(tableName, row, deleteColumnFamilyName,
+                        deleteColumnQualifier, deleteTimestamp, deleteAllVersions, deleteLock);
+                    return hTable.checkAndDelete(toRowKey(tableName, row), nameCache.toBytes(checkColumnFamilyName),
+                        nameCache.toBytes(checkColumnQualifier), encode(checkColumnFamilyName, checkValue), delete);
+                }
+            });
+        }
+        finally
+        {
+            invalidateCachedRow(tableName, row);
+        }
+    }
+
+    /** @see HBaseService#lock(String, String) */
+    public RowLock lock(final String tableName, final String row)
+    {
+        return doWithHTable(tableName, new TableCallback<RowLock>()
+        {
+            public RowLock doWithHBaseAdmin(HTableInterface hTable) throws Exception
+            {
+                return hTable.lockRow(toRowKey(tableName, row));
+            }
+        });
+    }
+
+    /** @see HBaseService#unlock(String, RowLock) */
+    public void unlock(final String tableName, final RowLock lock)
+    {
+        doWithHTable(tableName, new TableCallback<Void>()
+        {
+            public Void doWithHBaseAdmin(HTableInterface hTable) throws Exception
+            {
+                hTable.unlockRow(lock);
+                return null;
+            }
+        });
+    }
+
+    // ------------ Lifecycle
+    /**
+     * Opens the cluster connection. Admin and table operations share it until
+     * {@link #disconnect()} is called, so that they do not pay a new ZooKeeper
+     * session each.
+     *
+     * @see HBaseService#connect()
+     */
+    public void connect()
+    {
+        getHBaseAdmin();
+        writeBuffer.start();
+        asyncWriter.start();
+        startScannerReaper();
+    }
+
+    /** @see HBaseService#disconnect() */
+    public synchronized void disconnect()
+    {
+        try
+        {
+            try
+            {
+                asyncWriter.stop();
+            }
+            finally
+            {
+                try
+                {
+                    writeBuffer.stop();
+                }
+                finally
+                {
+                    tablePool.close();
+                }
+            }
+        }
+        finally
+        {
+            if (scannerReaper != null)
+            {
+                scannerReaper.shutdown();
+                scannerReaper = null;
+            }
+            if (prefetchExecutor != null)
+            {
+                // interrupts the prefetches in progress, that fail their iterations
+                prefetchExecutor.shutdownNow();
+                prefetchExecutor = null;
+            }
+            rowCache.clear();
+            metadataCache.clear();
+            hBaseAdmin = null;
+            HConnectionManager.deleteConnection(configuration, true);
+        }
+    }
+
+    // ------------ Configuration
+    /** @see HBaseService#addProperties(Map) */
+    public void addProperties(Map<String, String> properties)
+    {
+        for (Entry<String, String> entry : properties.entrySet())
+        {
+            configuration.set(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /** @see HBaseService#getStatistics() */
+    public Map<String, Number> getStatistics()
+    {
+        Map<String, Number> statistics = new TreeMap<String, Number>();
+        tablePool.collectStatistics(statistics);
+        writeBuffer.collectStatistics(statistics);
+        asyncWriter.collectStatistics(statistics);
+        rowCache.collectStatistics(statistics);
+        metadataCache.collectStatistics(statistics);
+        nameCache.collectStatistics(statistics);
+        compressor.collectStatistics(statistics);
+        statistics.put("scanners.open", openScanners.get());
+        statistics.put("scanners.renewed", renewedScanners.get());
+        statistics.put("scanners.reaped", reapedScanners.get());
+        statistics.put("scanners.adaptive.pages", adaptivePages.get());
+        statistics.put("scanners.adaptive.fetchSize", lastAdaptiveFetchSize);
+        statistics.put("scanners.adaptive.rowBytes", lastAdaptiveRowBytes);
+        statistics.put("scanners.adaptive.pageMillis", lastAdaptivePageMillis);
+        return statistics;
+    }
+
+    /** Sets the max amount of pooled handles per table */
+    public void setTablePoolSize(int tablePoolSize)
+    {
+        tablePool.setMaxSize(tablePoolSize);
+    }
+
+    /** Sets what to do when a table has no more pooled handles to lend */
+    public void setTablePoolExhaustedAction(PoolExhaustedAction tablePoolExhaustedAction)
+    {
+        tablePool.setExhaustedAction(tablePoolExhaustedAction);
+    }
+
+    /** Sets the max millis to wait for a pooled handle. Negative means forever */
+    public void setTablePoolMaxWait(long tablePoolMaxWait)
+    {
+        tablePool.setMaxWait(tablePoolMaxWait);
+    }
+
+    /**
+     * Sets if single puts without row lock are buffered on the client instead of
+     * being sent immediately. Must be set before {@link #connect()}
+     */
+    public void setWriteBufferEnabled(boolean writeBufferEnabled)
+    {
+        writeBuffer.setEnabled(writeBufferEnabled);
+    }
+
+    /** Sets the size in bytes a table write buffer is flushed at */
+    public void setWriteBufferSize(long writeBufferSize)
+    {
+        writeBuffer.setMaxSize(writeBufferSize);
+    }
+
+    /** Sets the max millis a put can stay in the write buffer */
+    public void setWriteBufferMaxAge(long writeBufferMaxAge)
+    {
+        writeBuffer.setMaxAge(writeBufferMaxAge);
+    }
+
+    /**
+     * Sets the max bytes of puts buffered for all the tables together, including
+     * the ones kept after a failed flush. Further puts are rejected
+     */
+    public void setWriteBufferLimit(long writeBufferLimit)
+    {
+        writeBuffer.setLimit(writeBufferLimit);
+    }
+
+    /**
+     * Sets if single puts without row lock are queued and written by background
+     * threads. Must be set before {@link #connect()}
+     */
+    public void setAsyncWriteEnabled(boolean asyncWriteEnabled)
+    {
+        asyncWriter.setEnabled(asyncWriteEnabled);
+    }
+
+    /** Sets the max amount of puts waiting to be written asynchronously */
+    public void setAsyncWriteQueueSize(int asyncWriteQueueSize)
+    {
+        asyncWriter.setQueueSize(asyncWriteQueueSize);
+    }
+
+    /** Sets the amount of asynchronous writer threads */
+    public void setAsyncWriteThreads(int asyncWriteThreads)
+    {
+        asyncWriter.setWriters(asyncWriteThreads);
+    }
+
+    /** Sets the max amount of puts an asynchronous writer sends at once */
+    public void setAsyncWriteBatchSize(int asyncWriteBatchSize)
+    {
+        asyncWriter.setBatchSize(asyncWriteBatchSize);
+    }
+
+    /** Sets what to do when the asynchronous write queue is full */
+    public void setAsyncWriteFullAction(BackpressureAction asyncWriteFullAction)
+    {
+        asyncWriter.setFullAction(asyncWriteFullAction);
+    }
+
+    /** Sets the max millis to wait for asynchronous write queue space or pending writes */
+    public void setAsyncWriteMaxWait(long asyncWriteMaxWait)
+    {
+        asyncWriter.setMaxWait(asyncWriteMaxWait);
+    }
+
+    /**
+     * Sets the amount of pages a sequential scan fetches in background ahead of its
+     * consumer. Pages are fetched on demand if 0
+     */
+    public void setScanPrefetchPages(int scanPrefetchPages)
+    {
+        Validate.isTrue(scanPrefetchPages >= 0, "scanPrefetchPages must not be negative");
+        this.scanPrefetchPages = scanPrefetchPages;
+    }
+
+    /**
+     * Sets the bytes per page that scans aim for, by resizing the amount of rows
+     * they request to the observed row sizes. 0 disables it, so that every page
+     * requests the fetch size of the scan
+     */
+    public void setScanTargetPageBytes(long scanTargetPageBytes)
+    {
+        Validate.isTrue(scanTargetPageBytes >= 0, "scanTargetPageBytes must not be negative");
+        this.scanTargetPageBytes = scanTargetPageBytes;
+    }
+
+    /**
+     * Sets the millis per page that adaptive scans aim for, besides the target
+     * bytes. 0 means any
+     */
+    public void setScanTargetPageMillis(long scanTargetPageMillis)
+    {
+        Validate.isTrue(scanTargetPageMillis >= 0, "scanTargetPageMillis must not be negative");
+        this.scanTargetPageMillis = scanTargetPageMillis;
+    }
+
+    /**
+     * Sets the millis a scan cursor may stay unused before its scanner and table
+     * handle are closed. A reaped cursor is reopened after its last row when used
+     * again. 0 disables reaping.
+     */
+    public void setScannerMaxIdleMillis(long scannerMaxIdleMillis)
+    {
+        Validate.isTrue(scannerMaxIdleMillis >= 0, "scannerMaxIdleMillis must not be negative");
+        this.scannerMaxIdleMillis = scannerMaxIdleMillis;
+    }
+
+    /** Sets the max amount of rows adaptive scans request per page */
+    public void setScanMaxFetchSize(int scanMaxFetchSize)
+    {
+        Validate.isTrue(scanMaxFetchSize > 0, "scanMaxFetchSize must be positive");
+        this.scanMaxFetchSize = scanMaxFetchSize;
+    }
+
+    /**
+     * Sets the max amount of bytes a scanner answers per request to a region
+     * server, regardless of the caching
+     */
+    public void setScannerMaxResultSize(long scannerMaxResultSize)
+    {
+        Validate.isTrue(scannerMaxResultSize > 0, "scannerMaxResultSize must be positive");
+        configuration.setLong(HConstants.HBASE_CLIENT_SCANNER_MAX_RESULT_SIZE_KEY, scannerMaxResultSize);
+    }
+
+    /**
+     * Sets how values that are neither byte arrays nor strings are written by the
+     * default codec
+     */
+    public void setValueEncoding(ValueEncoding valueEncoding)
+    {
+        valueCodec = new DefaultValueCodec(valueEncoding);
+    }
+
+    /** Sets the codec of the column families that have none of their own */
+    public void setValueCodec(ValueCodec valueCodec)
+    {
+        Validate.notNull(valueCodec, "valueCodec must not be null");
+        this.valueCodec = valueCodec;
+    }
+
+    /** Sets the tables whose row keys are salted, if any */
+    public void setSaltedTables(Collection<String> saltedTables)
+    {
+        salter.setTables(saltedTables);
+    }
+
+    /** Sets the amount of buckets the row keys of salted tables are spread across */
+    public void setSaltBuckets(int saltBuckets)
+    {
+        salter.setBuckets(saltBuckets);
+    }
+
+    /** Sets the families whose values are compressed on the client, if any */
+    public void setCompressedColumnFamilies(Collection<String> compressedColumnFamilies)
+    {
+        compressor.setFamilies(compressedColumnFamilies);
+    }
+
+    /** Sets the min size in bytes of the values that are compressed */
+    public void setValueCompressionThreshold(int valueCompressionThreshold)
+    {
+        compressor.setThreshold(valueCompressionThreshold);
+    }
+
+    /** Sets the max size in bytes of a written value, or 0 for any */
+    public void setMaxCellSize(int maxCellSize)
+    {
+        Validate.isTrue(maxCellSize >= 0, "maxCellSize must not be negative");
+        this.maxCellSize = maxCellSize;
+    }
+
+    /** Sets the codecs of specific column families, by family name */
+    public void setColumnFamilyCodecs(Map<String, ValueCodec> columnFamilyCodecs)
+    {
+        Validate.notNull(columnFamilyCodecs, "columnFamilyCodecs must not be null");
+        this.columnFamilyCodecs = new HashMap<String, ValueCodec>(columnFamilyCodecs);
+    }
+
+    /** Sets if row reads are cached on the client */
+    public void setRowCacheEnabled(boolean rowCacheEnabled)
+    {
+        rowCache.setEnabled(rowCacheEnabled);
+    }
+
+    /** Sets the max amount of results kept in the row cache */
+    public void setRowCacheMaxEntries(int rowCacheMaxEntries)
+    {
+        rowCache.setMaxEntries(rowCacheMaxEntries);
+    }
+
+    /** Sets the max amount of bytes kept in the row cache */
+    public void setRowCacheMaxBytes(long rowCacheMaxBytes)
+    {
+        rowCache.setMaxBytes(rowCacheMaxBytes);
+    }
+
+    /** Sets the millis a result is kept in the row cache since it was read */
+    public void setRowCacheTtl(long rowCacheTtl)
+    {
+        rowCache.setTtl(rowCacheTtl);
+    }
+
+    /** Sets if table descriptors are cached on the client for existence checks */
+    public void setMetadataCacheEnabled(boolean metadataCacheEnabled)
+    {
+        metadataCache.setEnabled(metadataCacheEnabled);
+    }
+
+    /** Sets the millis a table descriptor is kept in the cache since it was read */
+    public void setMetadataCacheTtl(long metadataCacheTtl)
+    {
+        metadataCache.setTtl(metadataCacheTtl);
+    }
+
+    /** Sets the max amount of encoded names cached, or 0 for disabling the cache */
+    public void setNameCacheMaxEntries(int nameCacheMaxEntries)
+    {
+        nameCache.setMaxEntries(nameCacheMaxEntries);
+    }
+
+    // ------------ Private
+
+    /** Answers the cached metadata of the given table, reading it on cache misses */
+    private TableMetadataCache.CachedTable getCachedTable(String name)
+    {
+        TableMetadataCache.CachedTable cached = metadataCache.get(name);
+        if (cached == null)
         {
-            try
-            {
-                return getMoreResults(hTable.getScanner(scan));
-            }
-            catch (IOException e)
-            {
-                throw new UnhandledException(e);
-            }
+            long stamp = metadataCache.stamp();
+            cached = metadataCache.put(name, getTableDescriptor(name), stamp);
         }
+        return cached;
+    }
 
-        private ScannerAndResults getMoreResults(ResultScanner scanner)
+    /** Answers the descriptor of the given table, or null if it does not exist */
+    private HTableDescriptor getTableDescriptor(final String name)
+    {
+        return doWithHBaseAdmin(new AdminCallback<HTableDescriptor>()
         {
-            try
-            {
-                return new ScannerAndResults(scanner, fetchSize);
-            }
-            catch (IOException e)
+            public HTableDescriptor doWithHBaseAdmin(HBaseAdmin hBaseAdmin)
             {
-                throw new UnhandledException(e);
+                try
+                {
+                    return hBaseAdmin.getTableDescriptor(name.getBytes(UTF8));
+                }
+                catch (TableNotFoundException e)
+                {
+                    return null;
+                }
+                catch (IOException e)
+                {
+                    throw new HBaseServiceException(e);
+                }
             }
-        }
-
-        @Override
-        protected boolean hasNextPage(ScannerAndResults page)
-        {
-            return page.getResults().length == fetchSize;
-        }
+        });
+    }
 
-        @Override
-        protected ScannerAndResults nextPage(ScannerAndResults currentPage)
+    private void invalidateCachedRow(String tableName, String row)
+    {
+        if (rowCache.isEnabled())
         {
-            return getMoreResults(currentPage.scanner);
+            rowCache.invalidate(tableName, row);
         }
+    }
 
-        @Override
-        protected Iterator<Result> pageIterator(ScannerAndResults page)
+    /** Answers the puts a batch could not write, as told by its failure */
+    private static Set<Put> failedPuts(RetriesExhaustedWithDetailsException failure)
+    {
+        Set<Put> failed = new HashSet<Put>();
+        for (int i = 0; i < failure.getNumExceptions(); i++)
         {
-            return Arrays.asList(page.results).iterator();
+            if (failure.getRow(i) instanceof Put)
+            {
+                failed.add((Put) failure.getRow(i));
+            }
         }
-
+        return failed;
     }
 
-    /** @see HBaseService#increment(String, String, String, String, long, boolean) */
-    public long increment(final String tableName,
-                          final String row,
-                          final String columnFamilyName,
-                          final String columnQualifier,
-                          final long amount,
-                          final boolean writeToWAL)
+    private void invalidateCachedRows(String tableName, List<Put> puts)
     {
-        Validate.isTrue(StringUtils.isNotBlank(tableName));
-        Validate.isTrue(StringUtils.isNotBlank(row));
-        Validate.isTrue(StringUtils.isNotBlank(columnFamilyName));
-        Validate.isTrue(StringUtils.isNotBlank(columnQualifier));
-        return doWithHTable(tableName, new TableCallback<Long>()
+        if (rowCache.isEnabled())
         {
-            public Long doWithHBaseAdmin(HTableInterface hTable) throws Exception
+            boolean salted = salter.isSalted(tableName);
+            for (Put put : puts)
             {
-                return hTable.incrementColumnValue(row.getBytes(UTF8), columnFamilyName.getBytes(UTF8),
-                    columnQualifier.getBytes(UTF8), amount, writeToWAL);
+                byte[] row = salted ? salter.unsalt(put.getRow()) : put.getRow();
+                rowCache.invalidate(tableName, new String(row, UTF8));
             }
-        });
+        }
     }
 
     /**
-     * @see HBaseService#checkAndPut(String, String, String, String, String, String,
-     *      String, Long, String, Boolean, RowLock)
+     * Answers a digest of the given table and scan, that continuation tokens carry
+     * so that they only resume scans with the same parameters
      */
-    public boolean checkAndPut(final String tableName,
-                               final String row,
-                               final String checkColumnFamilyName,
-                               final String checkColumnQualifier,
-                               final Object checkValue,
-                               final String putColumnFamilyName,
-                               final String putColumnQualifier,
-                               final Long putTimestamp,
-                               final Object putValue,
-                               final boolean putWriteToWAL,
-                               final RowLock putLock)
+    private static byte[] digest(String tableName, Scan scan) throws IOException
     {
-        return doWithHTable(tableName, new TableCallback<Boolean>()
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(tableName);
+        scan.write(out);
+        out.close();
+        try
         {
-            public Boolean doWithHBaseAdmin(HTableInterface hTable) throws Exception
-            {
-                final Put put = createPut(row, putColumnFamilyName, putColumnQualifier, putTimestamp,
-                    putValue, putWriteToWAL, putLock);
-                return hTable.checkAndPut(row.getBytes(UTF8), checkColumnFamilyName.getBytes(UTF8),
-                    checkColumnQualifier.getBytes(UTF8), toByteArray(checkValue), put);
-            }
-        });
+            return Bytes.head(MessageDigest.getInstance("SHA-1").digest(bytes.toByteArray()),
+                CONTINUATION_DIGEST_LENGTH);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new HBaseServiceException(e);
+        }
     }
 
     /**
-     * @see HBaseService#checkAndDelete(String, String, String, String, String,
-     *      String, String, Long, Boolean, RowLock)
+     * Answers a URL safe token that resumes the scan of the given digest at the
+     * given row. It holds nothing else: the scan is built again from the arguments
+     * of each call, and only its start row is taken from the token.
      */
-    public boolean checkAndDelete(final String tableName,
-                                  final String row,
-                                  final String checkColumnFamilyName,
-                                  final String checkColumnQualifier,
-                                  final Object checkValue,
-                                  final String deleteColumnFamilyName,
-                                  final String deleteColumnQualifier,
-                                  final Long deleteTimestamp,
-                                  final Boolean deleteAllVersions,
-                                  final RowLock deleteLock)
+    private static String encodeContinuation(byte[] digest, byte[] resumeRow)
     {
-        return doWithHTable(tableName, new TableCallback<Boolean>()
-        {
-            public Boolean doWithHBaseAdmin(HTableInterface hTable) throws Exception
-            {
-                final Delete delete = createDelete(row, deleteColumnFamilyName, deleteColumnQualifier,
-                    deleteTimestamp, deleteAllVersions, deleteLock);
-                return hTable.checkAndDelete(row.getBytes(UTF8), checkColumnFamilyName.getBytes(UTF8),
-                    checkColumnQualifier.getBytes(UTF8), toByteArray(checkValue), delete);
-            }
-        });
+        byte[] token = new byte[1 + digest.length + resumeRow.length];
+        token[0] = CONTINUATION_VERSION;
+        System.arraycopy(digest, 0, token, 1, digest.length);
+        System.arraycopy(resumeRow, 0, token, 1 + digest.length, resumeRow.length);
+        return Base64.encodeBytes(token, Base64.URL_SAFE | Base64.DONT_BREAK_LINES);
     }
 
-    /** @see HBaseService#lock(String, String) */
-    public RowLock lock(final String tableName, final String row)
+    /**
+     * Answers the row the given token resumes the given scan at
+     *
+     * @throws IllegalArgumentException if the token is malformed, belongs to a scan
+     *             with other parameters or points outside of the scan rows
+     */
+    private static byte[] decodeContinuation(byte[] digest, Scan scan, String continuationToken)
     {
-        return doWithHTable(tableName, new TableCallback<RowLock>()
+        byte[] token;
+        try
         {
-            public RowLock doWithHBaseAdmin(HTableInterface hTable) throws Exception
-            {
-                return hTable.lockRow(row.getBytes(UTF8));
-            }
-        });
+            token = Base64.decode(continuationToken, Base64.URL_SAFE | Base64.DONT_BREAK_LINES);
+        }
+        catch (RuntimeException e)
+        {
+            token = null;
+        }
+        Validate.isTrue(token != null && token.length > digest.length && token[0] == CONTINUATION_VERSION,
+            "invalid continuationToken");
+        Validate.isTrue(Bytes.compareTo(digest, 0, digest.length, token, 1, digest.length) == 0,
+            "continuationToken belongs to a scan with other parameters");
+        byte[] resumeRow = Bytes.tail(token, token.length - 1 - digest.length);
+        Validate.isTrue(Bytes.compareTo(resumeRow, scan.getStartRow()) >= 0
+                        && (scan.getStopRow().length == 0 || Bytes.compareTo(resumeRow, scan.getStopRow()) < 0),
+            "continuationToken is out of the scanned rows");
+        return resumeRow;
     }
 
-    /** @see HBaseService#unlock(String, RowLock) */
-    public void unlock(final String tableName, final RowLock lock)
+    /** Answers the key that identifies the cells and versions a get reads */
+    private static String projection(Collection<String> columns,
+                                     Integer maxVersions,
+                                     Long timestamp,
+                                     Long minTimestamp,
+                                     Long maxTimestamp)
     {
-        doWithHTable(tableName, new TableCallback<Void>()
-        {
-            public Void doWithHBaseAdmin(HTableInterface hTable) throws Exception
-            {
-                hTable.unlockRow(lock);
-                return null;
-            }
-        });
+        return columns + "/" + maxVersions + "/" + timestamp + "/" + minTimestamp + "/" + maxTimestamp;
     }
 
-    // ------------ Configuration
-    /** @see HBaseService#addProperties(Map) */
-    public void addProperties(Map<String, String> properties)
+    /**
+     * Sends the puts buffered or queued for the given table, so that the mutation
+     * that follows is applied after them. Puts queued for other tables are not
+     * waited for
+     */
+    private void flushBufferedPuts(String tableName)
     {
-        for (Entry<String, String> entry : properties.entrySet())
+        if (asyncWriter.isEnabled())
         {
-            configuration.set(entry.getKey(), entry.getValue());
+            asyncWriter.awaitPending(tableName);
+        }
+        if (writeBuffer.isEnabled())
+        {
+            writeBuffer.flush(tableName);
         }
     }
 
-    // ------------ Private
-
     private void doFlush(HBaseAdmin hBaseAdmin, String name)
     {
         try
@@ -767,20 +2453,55 @@ public class RPCHBaseService implements HBaseService
         }
     }
 
-    private Get createGet(String rowKey, Integer maxVersions, Long timestamp)
+    /** Answers the given row key, salted if the given table is */
+    private byte[] toRowKey(String tableName, String row)
+    {
+        byte[] rowKey = row.getBytes(UTF8);
+        return salter.isSalted(tableName) ? salter.salt(rowKey) : rowKey;
+    }
+
+    private Get createGet(String tableName,
+                          String rowKey,
+                          Collection<String> columns,
+                          Integer maxVersions,
+                          Long timestamp,
+                          Long minTimestamp,
+                          Long maxTimestamp)
     {
-        Get get = new Get(rowKey.getBytes(UTF8));
-        if (maxVersions != null)
+        Get get = new Get(toRowKey(tableName, rowKey));
+        if (columns != null)
         {
-            try
+            for (String column : columns)
+            {
+                int separator = column.indexOf(':');
+                if (separator < 0)
+                {
+                    get.addFamily(nameCache.toBytes(column));
+                }
+                else
+                {
+                    get.addColumn(nameCache.toBytes(column.substring(0, separator)),
+                        nameCache.toBytes(column.substring(separator + 1)));
+                }
+            }
+        }
+        try
+        {
+            if (maxVersions != null)
             {
                 get.setMaxVersions(maxVersions);
             }
-            catch (IOException e)
+            if (minTimestamp != null || maxTimestamp != null)
             {
-                new HBaseServiceException(e);
+                long min = minTimestamp != null ? minTimestamp : 0L;
+                long max = maxTimestamp != null ? maxTimestamp : Long.MAX_VALUE;
+                get.setTimeRange(min, max);
             }
         }
+        catch (IOException e)
+        {
+            throw new HBaseServiceException(e);
+        }
         if (timestamp != null)
         {
             get.setTimeStamp(timestamp);
@@ -788,7 +2509,25 @@ public class RPCHBaseService implements HBaseService
         return get;
     }
 
-    private Put createPut(final String row,
+    /**
+     * Answers the column of the given family and optional qualifier, in the
+     * <code>family[:qualifier]</code> format, or null if there is no family
+     */
+    private List<String> toColumns(String columnFamilyName, String columnQualifier)
+    {
+        if (columnFamilyName == null)
+        {
+            return null;
+        }
+        if (columnQualifier == null)
+        {
+            return Collections.singletonList(columnFamilyName);
+        }
+        return Collections.singletonList(columnFamilyName + ":" + columnQualifier);
+    }
+
+    private Put createPut(final String tableName,
+                          final String row,
                           final String columnFamilyName,
                           final String columnQualifier,
                           final Long timestamp,
@@ -799,51 +2538,86 @@ public class RPCHBaseService implements HBaseService
         final Put put;
         if (lock == null)
         {
-            put = new Put(row.getBytes(UTF8));
+            put = new Put(toRowKey(tableName, row));
         }
         else
         {
-            put = new Put(row.getBytes(UTF8), lock);
+            put = new Put(toRowKey(tableName, row), lock);
+        }
+        addToPut(put, columnFamilyName, columnQualifier, timestamp, value);
+        put.setWriteToWAL(writeToWAL);
+        return put;
+    }
+
+    /** Creates a put per row, in the order rows first appear in the given values */
+    private List<Put> createPuts(final String tableName,
+                                 final Collection<CellValue> values,
+                                 final boolean writeToWAL)
+    {
+        final Map<String, Put> puts = new LinkedHashMap<String, Put>();
+        for (CellValue cell : values)
+        {
+            Put put = puts.get(cell.getRow());
+            if (put == null)
+            {
+                put = createPut(tableName, cell.getRow(), cell.getColumnFamilyName(), cell.getColumnQualifier(),
+                    cell.getTimestamp(), cell.getValue(), writeToWAL, null);
+                puts.put(cell.getRow(), put);
+            }
+            else
+            {
+                addToPut(put, cell.getColumnFamilyName(), cell.getColumnQualifier(), cell.getTimestamp(),
+                    cell.getValue());
+            }
         }
+        return new ArrayList<Put>(puts.values());
+    }
+
+    private void addToPut(final Put put,
+                          final String columnFamilyName,
+                          final String columnQualifier,
+                          final Long timestamp,
+                          final Object value)
+    {
         if (timestamp == null)
         {
-            put.add(columnFamilyName.getBytes(UTF8), columnQualifier.getBytes(UTF8), toByteArray(value));
+            put.add(nameCache.toBytes(columnFamilyName), nameCache.toBytes(columnQualifier), encode(columnFamilyName,
+                value));
         }
         else
         {
-            put.add(columnFamilyName.getBytes(UTF8), columnQualifier.getBytes(UTF8), timestamp,
-                toByteArray(value));
+            put.add(nameCache.toBytes(columnFamilyName), nameCache.toBytes(columnQualifier), timestamp,
+                encode(columnFamilyName, value));
         }
-        put.setWriteToWAL(writeToWAL);
-        return put;
     }
 
-    private Delete createDelete(final String row,
+    private Delete createDelete(final String tableName,
+                                final String row,
                                 final String columnFamilyName,
                                 final String columnQualifier,
                                 final Long timestamp,
                                 final boolean deleteAllVersions,
                                 final RowLock lock)
     {
-        final Delete delete = new Delete(row.getBytes(UTF8), HConstants.LATEST_TIMESTAMP, lock);
+        final Delete delete = new Delete(toRowKey(tableName, row), HConstants.LATEST_TIMESTAMP, lock);
         if (columnFamilyName != null)
         {
             if (columnQualifier != null)
             {
                 if (deleteAllVersions)
                 {
-                    delete.deleteColumns(columnFamilyName.getBytes(UTF8), columnQualifier.getBytes(UTF8),
+                    delete.deleteColumns(nameCache.toBytes(columnFamilyName), nameCache.toBytes(columnQualifier),
                         coalesceTimestamp(timestamp));
                 }
                 else
                 {
-                    delete.deleteColumn(columnFamilyName.getBytes(UTF8), columnQualifier.getBytes(UTF8),
+                    delete.deleteColumn(nameCache.toBytes(columnFamilyName), nameCache.toBytes(columnQualifier),
                         coalesceTimestamp(timestamp));
                 }
             }
             else
             {
-                delete.deleteFamily(columnFamilyName.getBytes(UTF8), coalesceTimestamp(timestamp));
+                delete.deleteFamily(nameCache.toBytes(columnFamilyName), coalesceTimestamp(timestamp));
             }
         }
         return delete;
@@ -854,15 +2628,100 @@ public class RPCHBaseService implements HBaseService
         return timestamp != null ? timestamp : HConstants.LATEST_TIMESTAMP;
     }
 
-    private HTableInterface createHTable(String tableName)
+    /**
+     * Returns the shared {@link HBaseAdmin}, creating it - and thus the cluster
+     * connection - if this service is not connected yet
+     */
+    private HBaseAdmin getHBaseAdmin()
     {
-        return hTableInterfaceFactory.createHTableInterface(configuration, tableName.getBytes(UTF8));
+        HBaseAdmin admin = hBaseAdmin;
+        if (admin == null)
+        {
+            synchronized (this)
+            {
+                admin = hBaseAdmin;
+                if (admin == null)
+                {
+                    admin = createHBaseAdmin();
+                    hBaseAdmin = admin;
+                }
+            }
+        }
+        return admin;
     }
 
     /**
-     * Returns a new instance of {@link HBaseAdmin}. Clients should call
-     * {@link RPCHBaseService#destroyHBaseAdmin(HBaseAdmin)}.
+     * Starts reaping in background the scan cursors left idle for longer than max
+     * idle millis, if enabled, as iterations that are abandoned without being
+     * disposed would keep them open otherwise
      */
+    private synchronized void startScannerReaper()
+    {
+        if (scannerMaxIdleMillis == 0 || scannerReaper != null)
+        {
+            return;
+        }
+        scannerReaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "hbase-scanner-reaper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(scannerMaxIdleMillis / 2, 10);
+        scannerReaper.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                reapIdleCursors();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Closes the scanners and table handles of the cursors idle for longer than max idle millis */
+    void reapIdleCursors()
+    {
+        if (scannerMaxIdleMillis == 0)
+        {
+            return;
+        }
+        long idleSince = System.currentTimeMillis() - scannerMaxIdleMillis;
+        List<ScanCursor> cursors;
+        synchronized (liveCursors)
+        {
+            cursors = new ArrayList<ScanCursor>(liveCursors);
+        }
+        for (ScanCursor cursor : cursors)
+        {
+            if (cursor.lastUsed < idleSince)
+            {
+                cursor.reapIfIdleSince(idleSince);
+            }
+        }
+    }
+
+    /** Returns the executor of scan prefetching and counting tasks, creating it if necessary */
+    private synchronized ExecutorService getPrefetchExecutor()
+    {
+        if (prefetchExecutor == null)
+        {
+            prefetchExecutor = Executors.newCachedThreadPool(new ThreadFactory()
+            {
+                private final AtomicInteger threadCount = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "hbase-scan-prefetch-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return prefetchExecutor;
+    }
+
     private HBaseAdmin createHBaseAdmin()
     {
         try
@@ -879,45 +2738,60 @@ public class RPCHBaseService implements HBaseService
         }
     }
 
-    /** Release any resources allocated by {@link HBaseAdmin} */
-    private void destroyHBaseAdmin(final HBaseAdmin hBaseAdmin)
-    {
-        if (hBaseAdmin != null)
-        {
-            HConnectionManager.deleteConnection(hBaseAdmin.getConfiguration(), true);
-        }
-    }
-
-    private byte[] toByteArray(Object o)
+    /** Answers the codec of the given column family, or the default one */
+    private ValueCodec codecFor(String columnFamilyName)
     {
-        return BYTE_ARRAY_CONVERTER.toByteArray(o);
+        ValueCodec codec = columnFamilyName != null ? columnFamilyCodecs.get(columnFamilyName) : null;
+        return codec != null ? codec : valueCodec;
     }
 
-    /** Retain and release the {@link HBaseAdmin} */
-    private <T> T doWithHBaseAdmin(AdminCallback<T> callback)
+    /**
+     * Encodes the given value with the codec of the given family. Byte buffers and
+     * input streams are read into the byte array the codec is given, failing as
+     * soon as they exceed the max cell size. Values of compressed families are
+     * compressed once encoded
+     */
+    private byte[] encode(String columnFamilyName, Object value)
     {
-        HBaseAdmin hBaseAdmin = null;
-        try
+        if (ByteArrayConverter.isStreamed(value))
         {
-            hBaseAdmin = createHBaseAdmin();
-            return callback.doWithHBaseAdmin(hBaseAdmin);
+            value = ByteArrayConverter.readFully(value, maxCellSize);
         }
-        finally
+        byte[] bytes = codecFor(columnFamilyName).encode(value);
+        if (maxCellSize > 0 && bytes.length > maxCellSize)
+        {
+            throw new IllegalArgumentException("Value of " + bytes.length + " bytes exceeds the max cell size of "
+                                               + maxCellSize + " bytes");
+        }
+        if (compressor.isEnabled() && columnFamilyName != null
+            && compressor.isCompressed(nameCache.toBytes(columnFamilyName)))
         {
-            destroyHBaseAdmin(hBaseAdmin);
+            return compressor.compress(bytes);
         }
+        return bytes;
     }
 
-    /** Retain and release the {@link HTable} */
+    /** Use the shared {@link HBaseAdmin} */
+    private <T> T doWithHBaseAdmin(AdminCallback<T> callback)
+    {
+        return callback.doWithHBaseAdmin(getHBaseAdmin());
+    }
+
+    /**
+     * Borrow the {@link HTable} from the pool and give it back. Tables whose
+     * operation failed are discarded instead of being reused
+     */
     private <T> T doWithHTable(final String tableName, final TableCallback<T> callback)
     {
         Validate.isTrue(StringUtils.isNotBlank(tableName));
         Validate.notNull(callback);
-        HTableInterface hTable = null;
+        HTableInterface hTable = tablePool.borrow(tableName);
+        boolean failed = true;
         try
         {
-            hTable = createHTable(tableName);
-            return callback.doWithHBaseAdmin(hTable);
+            T result = callback.doWithHBaseAdmin(hTable);
+            failed = false;
+            return result;
         }
         catch (Exception e)
         {
@@ -925,17 +2799,27 @@ public class RPCHBaseService implements HBaseService
         }
         finally
         {
-            if (hTable != null)
+            release(tableName, hTable, failed);
+        }
+    }
+
+    /**
+     * Gives the given handle back to the pool. Failures to release a handle whose
+     * operation already failed are logged, so that they do not hide the original one
+     */
+    private void release(String tableName, HTableInterface hTable, boolean failed)
+    {
+        try
+        {
+            tablePool.release(tableName, hTable, failed);
+        }
+        catch (RuntimeException e)
+        {
+            if (!failed)
             {
-                try
-                {
-                    hTable.close();
-                }
-                catch (IOException e)
-                {
-                    throw new HBaseServiceException(e);
-                }
+                throw e;
             }
+            logger.warn("Could not release failed handle of table " + tableName, e);
         }
     }
 
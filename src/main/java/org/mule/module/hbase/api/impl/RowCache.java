@@ -0,0 +1,298 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.Validate;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+
+/**
+ * Client-side cache of row reads. Results are kept per row and projection - the
+ * requested columns, versions and time range - and expire <code>ttl</code> millis
+ * after being read. Rows are evicted in least recently used order whenever the
+ * cache holds more than <code>maxEntries</code> results or <code>maxBytes</code>
+ * bytes.
+ * <p>
+ * Writes must invalidate the rows they change. In order not to cache a result read
+ * before a concurrent write, loads take a stamp before reading from the server,
+ * and their results are discarded if the row was invalidated meanwhile.
+ */
+public class RowCache
+{
+    private static final int STAMP_STRIPES = 64;
+
+    private final LinkedHashMap<RowId, CachedRow> rows = new LinkedHashMap<RowId, CachedRow>(16, 0.75f, true);
+    private final long[] invalidationStamps = new long[STAMP_STRIPES];
+    private volatile boolean enabled = false;
+    private volatile int maxEntries = 10000;
+    private volatile long maxBytes = 64 * 1024 * 1024;
+    private volatile long ttl = 60000;
+
+    private int entries;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    /**
+     * Answers the cached result of the given row and projection, or null if it is
+     * not cached or has expired
+     */
+    public synchronized Result get(String tableName, String row, String projection)
+    {
+        CachedRow cachedRow = rows.get(new RowId(tableName, row));
+        CachedResult cached = cachedRow != null ? cachedRow.results.get(projection) : null;
+        if (cached != null && cached.expiresAt <= System.currentTimeMillis())
+        {
+            cachedRow.results.remove(projection);
+            removed(cached);
+            if (cachedRow.results.isEmpty())
+            {
+                rows.remove(new RowId(tableName, row));
+            }
+            expirations++;
+            cached = null;
+        }
+        if (cached == null)
+        {
+            misses++;
+            return null;
+        }
+        hits++;
+        return cached.result;
+    }
+
+    /**
+     * Answers the stamp that must be given to
+     * {@link #put(String, String, String, Result, long)} for the result of a read
+     * started right now
+     */
+    public synchronized long stamp(String tableName, String row)
+    {
+        return invalidationStamps[stripe(tableName, row)];
+    }
+
+    /**
+     * Caches the given result, unless the row has been invalidated since the given
+     * stamp was taken
+     */
+    public synchronized void put(String tableName, String row, String projection, Result result, long stamp)
+    {
+        if (invalidationStamps[stripe(tableName, row)] != stamp)
+        {
+            return;
+        }
+        RowId rowId = new RowId(tableName, row);
+        CachedRow cachedRow = rows.get(rowId);
+        if (cachedRow == null)
+        {
+            cachedRow = new CachedRow();
+            rows.put(rowId, cachedRow);
+        }
+        CachedResult cached = new CachedResult(result, sizeOf(result), System.currentTimeMillis() + ttl);
+        CachedResult previous = cachedRow.results.put(projection, cached);
+        if (previous != null)
+        {
+            removed(previous);
+        }
+        entries++;
+        bytes += cached.size;
+        evictExceeding();
+    }
+
+    /** Discards every cached result of the given row */
+    public synchronized void invalidate(String tableName, String row)
+    {
+        invalidationStamps[stripe(tableName, row)]++;
+        CachedRow cachedRow = rows.remove(new RowId(tableName, row));
+        if (cachedRow != null)
+        {
+            removedRow(cachedRow);
+            invalidations++;
+        }
+    }
+
+    /** Discards every cached result of the given table */
+    public synchronized void invalidateTable(String tableName)
+    {
+        for (int i = 0; i < STAMP_STRIPES; i++)
+        {
+            invalidationStamps[i]++;
+        }
+        for (Iterator<Map.Entry<RowId, CachedRow>> iter = rows.entrySet().iterator(); iter.hasNext();)
+        {
+            Map.Entry<RowId, CachedRow> entry = iter.next();
+            if (entry.getKey().tableName.equals(tableName))
+            {
+                iter.remove();
+                removedRow(entry.getValue());
+                invalidations++;
+            }
+        }
+    }
+
+    /** Discards every cached result */
+    public synchronized void clear()
+    {
+        for (int i = 0; i < STAMP_STRIPES; i++)
+        {
+            invalidationStamps[i]++;
+        }
+        rows.clear();
+        entries = 0;
+        bytes = 0;
+    }
+
+    /** Adds the cache counters to the given statistics map */
+    public synchronized void collectStatistics(Map<String, Number> statistics)
+    {
+        long lookups = hits + misses;
+        statistics.put("rowCache.entries", entries);
+        statistics.put("rowCache.bytes", bytes);
+        statistics.put("rowCache.hits", hits);
+        statistics.put("rowCache.misses", misses);
+        statistics.put("rowCache.hitRatio", lookups == 0 ? 0d : (double) hits / lookups);
+        statistics.put("rowCache.evictions", evictions);
+        statistics.put("rowCache.expirations", expirations);
+        statistics.put("rowCache.invalidations", invalidations);
+    }
+
+    private void evictExceeding()
+    {
+        Iterator<CachedRow> eldest = rows.values().iterator();
+        while ((entries > maxEntries || bytes > maxBytes) && eldest.hasNext())
+        {
+            CachedRow cachedRow = eldest.next();
+            eldest.remove();
+            removedRow(cachedRow);
+            evictions++;
+        }
+    }
+
+    private void removedRow(CachedRow cachedRow)
+    {
+        for (CachedResult cached : cachedRow.results.values())
+        {
+            removed(cached);
+        }
+    }
+
+    private void removed(CachedResult cached)
+    {
+        entries--;
+        bytes -= cached.size;
+    }
+
+    private static int stripe(String tableName, String row)
+    {
+        return ((31 * tableName.hashCode() + row.hashCode()) & Integer.MAX_VALUE) % STAMP_STRIPES;
+    }
+
+    private static long sizeOf(Result result)
+    {
+        long size = 0;
+        KeyValue[] keyValues = result.raw();
+        if (keyValues != null)
+        {
+            for (KeyValue keyValue : keyValues)
+            {
+                size += keyValue.getLength();
+            }
+        }
+        return size;
+    }
+
+    // ------------ Configuration
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public void setMaxEntries(int maxEntries)
+    {
+        Validate.isTrue(maxEntries > 0, "maxEntries must be positive");
+        this.maxEntries = maxEntries;
+    }
+
+    public void setMaxBytes(long maxBytes)
+    {
+        Validate.isTrue(maxBytes > 0, "maxBytes must be positive");
+        this.maxBytes = maxBytes;
+    }
+
+    public void setTtl(long ttl)
+    {
+        Validate.isTrue(ttl > 0, "ttl must be positive");
+        this.ttl = ttl;
+    }
+
+    private static final class RowId
+    {
+        private final String tableName;
+        private final String row;
+
+        public RowId(String tableName, String row)
+        {
+            this.tableName = tableName;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof RowId))
+            {
+                return false;
+            }
+            RowId other = (RowId) obj;
+            return tableName.equals(other.tableName) && row.equals(other.row);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * tableName.hashCode() + row.hashCode();
+        }
+    }
+
+    /** The cached results of a row, per projection */
+    private static final class CachedRow
+    {
+        private final Map<String, CachedResult> results = new HashMap<String, CachedResult>(4);
+    }
+
+    private static final class CachedResult
+    {
+        private final Result result;
+        private final long size;
+        private final long expiresAt;
+
+        public CachedResult(Result result, long size, long expiresAt)
+        {
+            this.result = result;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.lang.Validate;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Prefixes the row keys of the configured tables with a salt byte - a bucket
+ * derived from a hash of the key - so that consecutive keys, like time-ordered
+ * ones, are spread across <code>buckets</code> key ranges, and thus across region
+ * servers, instead of all landing on the last region.
+ * <p>
+ * The bucket of a key only depends on the key itself, so it can be computed
+ * again for reading it. Row key order is kept within each bucket, so ordered
+ * scans read every bucket and merge them. As unsalted keys can not be told apart,
+ * salting must only be enabled for tables that hold no rows yet, and the amount
+ * of buckets never changed afterwards.
+ */
+public class RowKeySalter
+{
+    private volatile Set<String> tables = Collections.emptySet();
+    private volatile int buckets = 16;
+
+    /** Answers if the row keys of the given table are salted */
+    public boolean isSalted(String tableName)
+    {
+        return tables.contains(tableName);
+    }
+
+    public int getBuckets()
+    {
+        return buckets;
+    }
+
+    /** Answers the bucket of the given unsalted row key */
+    public int bucketOf(byte[] row)
+    {
+        int hash = Arrays.hashCode(row);
+        // spreads the poorly mixed high bits of the hash into the low ones
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return (hash & Integer.MAX_VALUE) % buckets;
+    }
+
+    /** Answers the given row key prefixed with its bucket */
+    public byte[] salt(byte[] row)
+    {
+        return prefix(bucketOf(row), row);
+    }
+
+    /** Answers the given row key prefixed with the given bucket */
+    public byte[] prefix(int bucket, byte[] row)
+    {
+        byte[] salted = new byte[row.length + 1];
+        salted[0] = (byte) bucket;
+        System.arraycopy(row, 0, salted, 1, row.length);
+        return salted;
+    }
+
+    /** Answers the given salted row key without its bucket */
+    public byte[] unsalt(byte[] salted)
+    {
+        return Bytes.tail(salted, salted.length - 1);
+    }
+
+    /** Answers the given result of a salted table with its row keys unsalted */
+    public Result unsalt(Result result)
+    {
+        KeyValue[] cells = result != null ? result.raw() : null;
+        if (cells == null || cells.length == 0)
+        {
+            return result;
+        }
+        byte[] row = unsalt(cells[0].getRow());
+        KeyValue[] unsalted = new KeyValue[cells.length];
+        for (int i = 0; i < cells.length; i++)
+        {
+            KeyValue cell = cells[i];
+            unsalted[i] = new KeyValue(row, cell.getFamily(), cell.getQualifier(), cell.getTimestamp(),
+                cell.getValue());
+        }
+        return new Result(unsalted);
+    }
+
+    /** Answers the given results of a salted table unsalted, in place */
+    public Result[] unsalt(Result[] results)
+    {
+        for (int i = 0; i < results.length; i++)
+        {
+            results[i] = unsalt(results[i]);
+        }
+        return results;
+    }
+
+    // ------------ Configuration
+
+    /** Sets the tables whose row keys are salted, if any */
+    public void setTables(Collection<String> tables)
+    {
+        Validate.notNull(tables, "tables must not be null");
+        this.tables = new HashSet<String>(tables);
+    }
+
+    /** Sets the amount of buckets row keys are spread across */
+    public void setBuckets(int buckets)
+    {
+        Validate.isTrue(buckets > 0 && buckets <= 256, "buckets must be between 1 and 256");
+        this.buckets = buckets;
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import org.mule.api.lifecycle.Disposable;
+import org.mule.module.hbase.api.HBaseServiceException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Merges the results of the scans of every bucket of a salted table back into
+ * row key order, answering them unsalted. Each bucket answers its results in key
+ * order, so the next result is always the lowest of the next ones of each bucket.
+ * Consecutive results of the same row - as answered by batched scans - come from
+ * the same bucket, so they are kept together.
+ * <p>
+ * The first page of every bucket is requested at once, on the given executor. As
+ * page filters are applied by each bucket on its own, the merged rows may be
+ * capped to <code>maxRows</code>. Once the cap is reached - or a bucket fails to
+ * open - the scans of every bucket are disposed.
+ */
+public class SaltedScanIterable implements Iterable<Result>, Disposable
+{
+    /** Compares salted row keys ignoring their bucket */
+    private static final Comparator<Head> BY_UNSALTED_ROW = new Comparator<Head>()
+    {
+        public int compare(Head head, Head other)
+        {
+            byte[] row = head.result.getRow();
+            byte[] otherRow = other.result.getRow();
+            return Bytes.compareTo(row, 1, row.length - 1, otherRow, 1, otherRow.length - 1);
+        }
+    };
+
+    private final List<Iterable<Result>> buckets;
+    private final RowKeySalter salter;
+    private final Executor executor;
+    private final long maxRows;
+
+    /**
+     * @param buckets the results of the scan of each bucket
+     * @param salter the salter of the scanned table
+     */
+    public SaltedScanIterable(List<Iterable<Result>> buckets, RowKeySalter salter)
+    {
+        this(buckets, salter, null, 0);
+    }
+
+    /**
+     * @param buckets the results of the scan of each bucket
+     * @param salter the salter of the scanned table
+     * @param executor the executor the first page of each bucket is requested on,
+     *            or null for requesting them one after the other
+     * @param maxRows the max amount of rows answered, or 0 for no limit
+     */
+    public SaltedScanIterable(List<Iterable<Result>> buckets, RowKeySalter salter, Executor executor, long maxRows)
+    {
+        this.buckets = buckets;
+        this.salter = salter;
+        this.executor = executor;
+        this.maxRows = maxRows;
+    }
+
+    public Iterator<Result> iterator()
+    {
+        List<FutureTask<Iterator<Result>>> openings = new ArrayList<FutureTask<Iterator<Result>>>(buckets.size());
+        RuntimeException failure = null;
+        for (final Iterable<Result> bucket : buckets)
+        {
+            FutureTask<Iterator<Result>> opening = new FutureTask<Iterator<Result>>(new Callable<Iterator<Result>>()
+            {
+                public Iterator<Result> call()
+                {
+                    return bucket.iterator();
+                }
+            });
+            try
+            {
+                if (executor != null)
+                {
+                    executor.execute(opening);
+                }
+                else
+                {
+                    opening.run();
+                }
+            }
+            catch (RuntimeException e)
+            {
+                failure = e;
+                break;
+            }
+            openings.add(opening);
+        }
+        List<Iterator<Result>> iterators = new ArrayList<Iterator<Result>>(openings.size());
+        for (FutureTask<Iterator<Result>> opening : openings)
+        {
+            try
+            {
+                iterators.add(opening.get());
+            }
+            catch (ExecutionException e)
+            {
+                if (failure == null)
+                {
+                    failure = e.getCause() instanceof RuntimeException
+                                    ? (RuntimeException) e.getCause()
+                                    : new HBaseServiceException(e.getCause());
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                if (failure == null)
+                {
+                    failure = new HBaseServiceException(e);
+                }
+            }
+        }
+        if (failure != null)
+        {
+            // closes the scanners of the buckets that did open
+            dispose();
+            throw failure;
+        }
+        return new MergingIterator(iterators);
+    }
+
+    /** Disposes the scan of every bucket */
+    public void dispose()
+    {
+        for (Iterable<Result> bucket : buckets)
+        {
+            if (bucket instanceof Disposable)
+            {
+                ((Disposable) bucket).dispose();
+            }
+        }
+    }
+
+    /** The next result of a bucket, and the ones after it */
+    private static final class Head
+    {
+        private Result result;
+        private final Iterator<Result> rest;
+
+        public Head(Iterator<Result> rest)
+        {
+            this.result = rest.next();
+            this.rest = rest;
+        }
+    }
+
+    private final class MergingIterator implements Iterator<Result>
+    {
+        private final List<Iterator<Result>> iterators;
+        private PriorityQueue<Head> heads;
+        private long rows;
+        private byte[] lastRow;
+
+        public MergingIterator(List<Iterator<Result>> iterators)
+        {
+            this.iterators = iterators;
+        }
+
+        public boolean hasNext()
+        {
+            Head head = heads().peek();
+            if (head != null && maxRows > 0 && rows == maxRows && !Bytes.equals(lastRow, head.result.getRow()))
+            {
+                heads.clear();
+                dispose();
+            }
+            return !heads.isEmpty();
+        }
+
+        public Result next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            Head head = heads.poll();
+            Result result = head.result;
+            if (!Bytes.equals(lastRow, result.getRow()))
+            {
+                lastRow = result.getRow();
+                rows++;
+            }
+            if (head.rest.hasNext())
+            {
+                head.result = head.rest.next();
+                heads.add(head);
+            }
+            return salter.unsalt(result);
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        private PriorityQueue<Head> heads()
+        {
+            if (heads == null)
+            {
+                heads = new PriorityQueue<Head>(Math.max(1, iterators.size()), BY_UNSALTED_ROW);
+                for (Iterator<Result> iterator : iterators)
+                {
+                    if (iterator.hasNext())
+                    {
+                        heads.add(new Head(iterator));
+                    }
+                }
+            }
+            return heads;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.Validate;
+import org.apache.hadoop.hbase.HTableDescriptor;
+
+/**
+ * Client-side cache of table descriptors, that answers existence checks without
+ * asking the master. Tables that do not exist are cached too. Descriptors expire
+ * <code>ttl</code> millis after being read, so that schema changes made by other
+ * clients are eventually seen.
+ * <p>
+ * Schema changes made through this client must invalidate the tables they change.
+ * Loads take a stamp before reading from the master, and their descriptors are
+ * discarded if any table was invalidated meanwhile.
+ */
+public class TableMetadataCache
+{
+    private final Map<String, CachedTable> tables = new HashMap<String, CachedTable>();
+    private volatile boolean enabled = false;
+    private volatile long ttl = 60000;
+
+    private long invalidationStamp;
+    private long hits;
+    private long misses;
+    private long expirations;
+    private long invalidations;
+
+    /**
+     * Answers the cached metadata of the given table, or null if it is not cached or
+     * has expired
+     */
+    public synchronized CachedTable get(String tableName)
+    {
+        CachedTable cached = tables.get(tableName);
+        if (cached != null && cached.expiresAt <= System.currentTimeMillis())
+        {
+            tables.remove(tableName);
+            expirations++;
+            cached = null;
+        }
+        if (cached == null)
+        {
+            misses++;
+            return null;
+        }
+        hits++;
+        return cached;
+    }
+
+    /**
+     * Answers the stamp that must be given to
+     * {@link #put(String, HTableDescriptor, long)} for a descriptor read started
+     * right now
+     */
+    public synchronized long stamp()
+    {
+        return invalidationStamp;
+    }
+
+    /**
+     * Answers the metadata of the given descriptor - null if the table does not
+     * exist - caching it unless a table has been invalidated since the given stamp
+     * was taken
+     */
+    public synchronized CachedTable put(String tableName, HTableDescriptor descriptor, long stamp)
+    {
+        CachedTable cached = new CachedTable(descriptor, System.currentTimeMillis() + ttl);
+        if (invalidationStamp == stamp)
+        {
+            tables.put(tableName, cached);
+        }
+        return cached;
+    }
+
+    /** Discards the cached metadata of the given table */
+    public synchronized void invalidate(String tableName)
+    {
+        invalidationStamp++;
+        if (tables.remove(tableName) != null)
+        {
+            invalidations++;
+        }
+    }
+
+    /** Discards every cached table */
+    public synchronized void clear()
+    {
+        invalidationStamp++;
+        tables.clear();
+    }
+
+    /** Adds the cache counters to the given statistics map */
+    public synchronized void collectStatistics(Map<String, Number> statistics)
+    {
+        statistics.put("metadataCache.tables", tables.size());
+        statistics.put("metadataCache.hits", hits);
+        statistics.put("metadataCache.misses", misses);
+        statistics.put("metadataCache.expirations", expirations);
+        statistics.put("metadataCache.invalidations", invalidations);
+    }
+
+    // ------------ Configuration
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public void setTtl(long ttl)
+    {
+        Validate.isTrue(ttl > 0, "ttl must be positive");
+        this.ttl = ttl;
+    }
+
+    /** The cached metadata of a table */
+    public static final class CachedTable
+    {
+        private final HTableDescriptor descriptor;
+        private final long expiresAt;
+
+        private CachedTable(HTableDescriptor descriptor, long expiresAt)
+        {
+            this.descriptor = descriptor;
+            this.expiresAt = expiresAt;
+        }
+
+        /** Answers if the table exists */
+        public boolean exists()
+        {
+            return descriptor != null;
+        }
+
+        /** Answers the descriptor of the table, or null if it does not exist */
+        public HTableDescriptor getDescriptor()
+        {
+            return descriptor;
+        }
+    }
+}
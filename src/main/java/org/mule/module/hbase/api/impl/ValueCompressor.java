@@ -0,0 +1,256 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.commons.lang.Validate;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Compresses the values of the configured column families on the client, so that
+ * they travel and are cached compressed, not only stored so. Every value of those
+ * families is prefixed with a header byte: values of at least
+ * <code>threshold</code> bytes are deflated when that makes them smaller, and the
+ * rest are stored as is.
+ * <p>
+ * As values without a header can not be told apart, compression must only be
+ * enabled for families that hold no values yet, and never for families of
+ * counters, that the region servers write themselves.
+ */
+public class ValueCompressor
+{
+    private static final Charset UTF8 = Charset.forName("utf-8");
+    private static final byte PLAIN = 0;
+    private static final byte DEFLATED = 1;
+
+    private volatile List<byte[]> families = Collections.emptyList();
+    private volatile int threshold = 1024;
+
+    private final AtomicLong compressedValues = new AtomicLong();
+    private final AtomicLong plainValues = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong decompressedValues = new AtomicLong();
+
+    /** Answers if the values of any family are compressed */
+    public boolean isEnabled()
+    {
+        return !families.isEmpty();
+    }
+
+    /** Answers if the values of the given family are compressed */
+    public boolean isCompressed(byte[] family)
+    {
+        for (byte[] compressed : families)
+        {
+            if (Arrays.equals(compressed, family))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isCompressed(KeyValue cell)
+    {
+        for (byte[] compressed : families)
+        {
+            if (cell.matchingFamily(compressed))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Answers the value to store for the given one, that belongs to a compressed family */
+    public byte[] compress(byte[] value)
+    {
+        if (value.length >= threshold && value.length > 1)
+        {
+            byte[] deflated = deflate(value);
+            if (deflated != null)
+            {
+                compressedValues.incrementAndGet();
+                rawBytes.addAndGet(value.length);
+                compressedBytes.addAndGet(deflated.length);
+                return deflated;
+            }
+        }
+        plainValues.incrementAndGet();
+        byte[] plain = new byte[value.length + 1];
+        plain[0] = PLAIN;
+        System.arraycopy(value, 0, plain, 1, value.length);
+        return plain;
+    }
+
+    /** Answers the original value of the given stored one */
+    public byte[] decompress(byte[] stored)
+    {
+        if (stored.length == 0)
+        {
+            return stored;
+        }
+        if (stored[0] == PLAIN)
+        {
+            return Bytes.tail(stored, stored.length - 1);
+        }
+        Validate.isTrue(stored[0] == DEFLATED, "Value has an unknown compression header");
+        decompressedValues.incrementAndGet();
+        return inflate(stored);
+    }
+
+    /**
+     * Answers the given result with the values of the compressed families
+     * decompressed, or the result itself if it has none
+     */
+    public Result decompress(Result result)
+    {
+        KeyValue[] cells = result != null ? result.raw() : null;
+        if (cells == null || !isEnabled())
+        {
+            return result;
+        }
+        KeyValue[] decompressed = null;
+        for (int i = 0; i < cells.length; i++)
+        {
+            KeyValue cell = cells[i];
+            if (cell.getValueLength() > 0 && isCompressed(cell))
+            {
+                if (decompressed == null)
+                {
+                    decompressed = cells.clone();
+                }
+                decompressed[i] = new KeyValue(cell.getRow(), cell.getFamily(), cell.getQualifier(),
+                    cell.getTimestamp(), decompress(cell.getValue()));
+            }
+        }
+        return decompressed != null ? new Result(decompressed) : result;
+    }
+
+    /** Answers the given results decompressed, in place */
+    public Result[] decompress(Result[] results)
+    {
+        if (isEnabled())
+        {
+            for (int i = 0; i < results.length; i++)
+            {
+                results[i] = decompress(results[i]);
+            }
+        }
+        return results;
+    }
+
+    /** Adds the compression counters to the given statistics map */
+    public void collectStatistics(Map<String, Number> statistics)
+    {
+        long raw = rawBytes.get();
+        long compressed = compressedBytes.get();
+        statistics.put("valueCompression.compressedValues", compressedValues.get());
+        statistics.put("valueCompression.plainValues", plainValues.get());
+        statistics.put("valueCompression.rawBytes", raw);
+        statistics.put("valueCompression.compressedBytes", compressed);
+        statistics.put("valueCompression.ratio", compressed > 0 ? (double) raw / compressed : 1.0);
+        statistics.put("valueCompression.decompressedValues", decompressedValues.get());
+    }
+
+    /** Answers the header and deflated value, or null if it is not smaller */
+    private static byte[] deflate(byte[] value)
+    {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try
+        {
+            deflater.setInput(value);
+            deflater.finish();
+            byte[] deflated = new byte[value.length];
+            deflated[0] = DEFLATED;
+            int length = 1;
+            while (!deflater.finished() && length < deflated.length)
+            {
+                length += deflater.deflate(deflated, length, deflated.length - length);
+            }
+            return deflater.finished() ? Bytes.head(deflated, length) : null;
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] stored)
+    {
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(stored, 1, stored.length - 1);
+            byte[] inflated = new byte[Math.max(64, 4 * stored.length)];
+            int length = 0;
+            while (!inflater.finished())
+            {
+                if (length == inflated.length)
+                {
+                    byte[] grown = new byte[2 * inflated.length];
+                    System.arraycopy(inflated, 0, grown, 0, length);
+                    inflated = grown;
+                }
+                int read = inflater.inflate(inflated, length, inflated.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    throw new IllegalArgumentException("Value is not a complete deflated value");
+                }
+                length += read;
+            }
+            return length == inflated.length ? inflated : Bytes.head(inflated, length);
+        }
+        catch (DataFormatException e)
+        {
+            throw new IllegalArgumentException("Value is not a deflated value", e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+    // ------------ Configuration
+
+    /** Sets the families whose values are compressed, or none for disabling it */
+    public void setFamilies(Collection<String> families)
+    {
+        Validate.notNull(families, "families must not be null");
+        List<byte[]> encoded = new ArrayList<byte[]>(families.size());
+        for (String family : families)
+        {
+            encoded.add(family.getBytes(UTF8));
+        }
+        this.families = encoded;
+    }
+
+    /** Sets the min size in bytes of the values that are compressed */
+    public void setThreshold(int threshold)
+    {
+        Validate.isTrue(threshold >= 0, "threshold must not be negative");
+        this.threshold = threshold;
+    }
+}
@@ -0,0 +1,445 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import org.mule.module.hbase.api.HBaseServiceException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+import org.apache.hadoop.hbase.client.Put;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client-side buffer of puts, kept per table. A table buffer is flushed when its
+ * size reaches <code>maxSize</code> bytes, when its oldest put is older than
+ * <code>maxAge</code> millis, or when explicitly requested. Flushes of the same
+ * table are serialized, so puts reach the server in the order they were buffered.
+ * <p>
+ * Puts that a flush could not write are kept at the head of the buffer, and sent
+ * again by the next flush; the ones it did write are not. So a put is not
+ * reported as failed to the caller that buffered it, even when its addition
+ * triggers a failing flush: only explicit flushes fail. As kept puts may pile up
+ * while the cluster is unavailable, the buffers of every table hold at most
+ * <code>limit</code> bytes, and further puts are rejected.
+ */
+public abstract class WriteBuffer
+{
+    private static Logger logger = LoggerFactory.getLogger(WriteBuffer.class);
+
+    private final ConcurrentMap<String, TableBuffer> buffers = new ConcurrentHashMap<String, TableBuffer>();
+    private volatile boolean enabled = false;
+    private volatile long maxSize = 2 * 1024 * 1024;
+    private volatile long maxAge = 1000;
+    private volatile long limit = 32 * 1024 * 1024;
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicLong flushedPuts = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    /**
+     * Buffers the given put, flushing the table buffer if it becomes full. If the
+     * flush fails, the put is kept for the next one.
+     *
+     * @throws HBaseServiceException if the buffers are at their limit, even after
+     *             flushing them
+     */
+    public void add(String tableName, Put put)
+    {
+        long size = put.heapSize();
+        if (!reserve(size))
+        {
+            try
+            {
+                flushAll();
+            }
+            catch (RuntimeException e)
+            {
+                // already logged, the limit check below tells the caller
+            }
+            if (!reserve(size))
+            {
+                throw new HBaseServiceException("Write buffer limit of " + limit + " bytes reached, as the "
+                                                + bufferedBytes.get() + " bytes of buffered puts could not be flushed");
+            }
+        }
+        TableBuffer buffer = getBuffer(tableName);
+        if (buffer.add(put) >= maxSize)
+        {
+            try
+            {
+                flush(tableName, buffer);
+            }
+            catch (RuntimeException e)
+            {
+                logger.warn("Could not flush write buffer of table " + tableName
+                            + ", its puts are kept for the next flush", e);
+            }
+        }
+    }
+
+    /** Flushes the puts buffered for the given table, if any */
+    public void flush(String tableName)
+    {
+        TableBuffer buffer = buffers.get(tableName);
+        if (buffer != null)
+        {
+            flush(tableName, buffer);
+        }
+    }
+
+    /**
+     * Flushes the puts buffered for every table. Every table is flushed even if
+     * some fail, and then the first failure is thrown.
+     */
+    public void flushAll()
+    {
+        RuntimeException failure = null;
+        for (Entry<String, TableBuffer> entry : buffers.entrySet())
+        {
+            try
+            {
+                flush(entry.getKey(), entry.getValue());
+            }
+            catch (RuntimeException e)
+            {
+                logger.error("Could not flush write buffer of table " + entry.getKey() + ", "
+                             + entry.getValue().count() + " puts are kept", e);
+                if (failure == null)
+                {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    /** Starts flushing buffers older than max age in background, if enabled */
+    public synchronized void start()
+    {
+        if (!enabled || scheduler != null)
+        {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "hbase-write-buffer-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(maxAge / 2, 10);
+        scheduler.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                flushExpired();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background flushing and flushes every pending put. The puts that
+     * can not be flushed are logged and discarded.
+     */
+    public synchronized void stop()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+        try
+        {
+            flushAll();
+        }
+        finally
+        {
+            discardAll();
+        }
+    }
+
+    /** Adds the buffer counters to the given statistics map */
+    public void collectStatistics(Map<String, Number> statistics)
+    {
+        int bufferedPuts = 0;
+        long bufferedBytes = 0;
+        for (TableBuffer buffer : buffers.values())
+        {
+            synchronized (buffer)
+            {
+                bufferedPuts += buffer.puts.size();
+                bufferedBytes += buffer.size;
+            }
+        }
+        statistics.put("writeBuffer.bufferedPuts", bufferedPuts);
+        statistics.put("writeBuffer.bufferedBytes", bufferedBytes);
+        statistics.put("writeBuffer.flushes", flushes.get());
+        statistics.put("writeBuffer.flushFailures", flushFailures.get());
+        statistics.put("writeBuffer.flushedPuts", flushedPuts.get());
+        statistics.put("writeBuffer.flushMillis.total", TimeUnit.NANOSECONDS.toMillis(flushNanos.get()));
+        statistics.put("writeBuffer.flushMillis.max", TimeUnit.NANOSECONDS.toMillis(maxFlushNanos.get()));
+    }
+
+    /**
+     * Sends the given puts to the server. If it fails, it must leave in the given
+     * list just the puts that were not written, so that only those are sent again.
+     *
+     * @param tableName the table the puts were buffered for
+     * @param puts the puts, in buffering order
+     */
+    protected abstract void send(String tableName, List<Put> puts);
+
+    private void flushExpired()
+    {
+        long now = System.currentTimeMillis();
+        for (Entry<String, TableBuffer> entry : buffers.entrySet())
+        {
+            if (entry.getValue().isOlderThan(maxAge, now))
+            {
+                try
+                {
+                    flush(entry.getKey(), entry.getValue());
+                }
+                catch (RuntimeException e)
+                {
+                    logger.error("Could not flush write buffer of table " + entry.getKey(), e);
+                }
+            }
+        }
+    }
+
+    private void flush(String tableName, TableBuffer buffer)
+    {
+        synchronized (buffer.flushLock)
+        {
+            List<Put> puts = buffer.drain();
+            if (puts.isEmpty())
+            {
+                return;
+            }
+            int count = puts.size();
+            long size = heapSize(puts);
+            long start = System.nanoTime();
+            try
+            {
+                send(tableName, puts);
+                flushedPuts.addAndGet(count);
+                bufferedBytes.addAndGet(-size);
+            }
+            catch (RuntimeException e)
+            {
+                flushFailures.incrementAndGet();
+                flushedPuts.addAndGet(count - puts.size());
+                bufferedBytes.addAndGet(heapSize(puts) - size);
+                buffer.restore(puts);
+                throw e;
+            }
+            finally
+            {
+                recordFlush(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /** Reserves the given bytes for a put, answering false if they exceed the limit */
+    private boolean reserve(long size)
+    {
+        long current;
+        do
+        {
+            current = bufferedBytes.get();
+            if (current + size > limit)
+            {
+                return false;
+            }
+        }
+        while (!bufferedBytes.compareAndSet(current, current + size));
+        return true;
+    }
+
+    private void discardAll()
+    {
+        for (Entry<String, TableBuffer> entry : buffers.entrySet())
+        {
+            synchronized (entry.getValue().flushLock)
+            {
+                List<Put> puts = entry.getValue().drain();
+                if (!puts.isEmpty())
+                {
+                    logger.error("Discarding " + puts.size() + " buffered puts of table " + entry.getKey()
+                                 + ", as they could not be flushed");
+                    bufferedBytes.addAndGet(-heapSize(puts));
+                }
+            }
+        }
+    }
+
+    private static long heapSize(List<Put> puts)
+    {
+        long size = 0;
+        for (Put put : puts)
+        {
+            size += put.heapSize();
+        }
+        return size;
+    }
+
+    private void recordFlush(long nanos)
+    {
+        flushes.incrementAndGet();
+        flushNanos.addAndGet(nanos);
+        long max;
+        do
+        {
+            max = maxFlushNanos.get();
+        }
+        while (nanos > max && !maxFlushNanos.compareAndSet(max, nanos));
+    }
+
+    private TableBuffer getBuffer(String tableName)
+    {
+        TableBuffer buffer = buffers.get(tableName);
+        if (buffer == null)
+        {
+            TableBuffer newBuffer = new TableBuffer();
+            buffer = buffers.putIfAbsent(tableName, newBuffer);
+            if (buffer == null)
+            {
+                buffer = newBuffer;
+            }
+        }
+        return buffer;
+    }
+
+    // ------------ Configuration
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize)
+    {
+        Validate.isTrue(maxSize > 0, "maxSize must be positive");
+        this.maxSize = maxSize;
+    }
+
+    public long getMaxAge()
+    {
+        return maxAge;
+    }
+
+    public void setMaxAge(long maxAge)
+    {
+        Validate.isTrue(maxAge > 0, "maxAge must be positive");
+        this.maxAge = maxAge;
+    }
+
+    public long getLimit()
+    {
+        return limit;
+    }
+
+    /** Sets the max bytes of puts buffered for all the tables together */
+    public void setLimit(long limit)
+    {
+        Validate.isTrue(limit > 0, "limit must be positive");
+        this.limit = limit;
+    }
+
+    private static final class TableBuffer
+    {
+        private final Object flushLock = new Object();
+        private List<Put> puts = new ArrayList<Put>();
+        private long size;
+        private long oldest;
+
+        public synchronized long add(Put put)
+        {
+            if (puts.isEmpty())
+            {
+                oldest = System.currentTimeMillis();
+            }
+            puts.add(put);
+            size += put.heapSize();
+            return size;
+        }
+
+        public synchronized int count()
+        {
+            return puts.size();
+        }
+
+        public synchronized List<Put> drain()
+        {
+            List<Put> drained = puts;
+            puts = new ArrayList<Put>();
+            size = 0;
+            return drained;
+        }
+
+        /**
+         * Puts back the given drained puts ahead of the ones buffered since. They
+         * are aged from now, so that failing flushes are not retried continuously
+         */
+        public synchronized void restore(List<Put> drained)
+        {
+            if (puts.isEmpty())
+            {
+                oldest = System.currentTimeMillis();
+            }
+            List<Put> restored = new ArrayList<Put>(drained.size() + puts.size());
+            restored.addAll(drained);
+            restored.addAll(puts);
+            for (Put put : drained)
+            {
+                size += put.heapSize();
+            }
+            puts = restored;
+        }
+
+        public synchronized boolean isOlderThan(long maxAge, long now)
+        {
+            return !puts.isEmpty() && now - oldest >= maxAge;
+        }
+    }
+}
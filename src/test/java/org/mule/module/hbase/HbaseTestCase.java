@@ -18,16 +18,25 @@ import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.RowLock;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import org.mule.module.hbase.api.BloomFilterType;
+import org.mule.module.hbase.api.CompareOperator;
 import org.mule.module.hbase.api.CompressionType;
 import org.mule.module.hbase.api.HBaseService;
+import org.mule.module.hbase.api.ScanFilter;
+import org.mule.module.hbase.api.ScanOptions;
 
 public class HbaseTestCase
 {
@@ -99,9 +108,19 @@ public class HbaseTestCase
         verify(facade).delete(eq(TABLE_NAME), eq(SOME_ROW_KEY), eq("family"), eq("qualifier"), eq(123L),
             eq(false), eq(lock));
 
-        connector.scanTable(TABLE_NAME, "family", "qualifier", 123L, 456L, 2, true, 2, "row20", "row30", 50);
+        connector.scanTable(TABLE_NAME, "family", "qualifier", 123L, 456L, 2, 100, true, 2, "row20", "row30",
+            50, "row2", null, null, CompareOperator.EQUAL, null, null, "v1", 10L, false, 4, false);
+        ArgumentCaptor<ScanFilter> filter = ArgumentCaptor.forClass(ScanFilter.class);
+        ArgumentCaptor<ScanOptions> options = ArgumentCaptor.forClass(ScanOptions.class);
         verify(facade).scan(eq(TABLE_NAME), eq("family"), eq("qualifier"), eq(123L), eq(456L), eq(2), eq(true),
-            eq(2), eq("row20"), eq("row30"), eq(50));
+            eq(2), eq("row20"), eq("row30"), eq(50), filter.capture(), options.capture());
+        assertEquals("row2", filter.getValue().getRowPrefix());
+        assertEquals(CompareOperator.EQUAL, filter.getValue().getValueCompareOperator());
+        assertEquals("v1", filter.getValue().getValue());
+        assertEquals(Long.valueOf(10), filter.getValue().getPageSize());
+        assertEquals(4, options.getValue().getParallelism());
+        assertFalse(options.getValue().isOrdered());
+        assertEquals(Integer.valueOf(100), options.getValue().getBatch());
 
         connector.incrementValue(TABLE_NAME, SOME_ROW_KEY, "f1", "q", 3L, true);
         verify(facade).increment(eq(TABLE_NAME), eq(SOME_ROW_KEY), eq("f1"), eq("q"), eq(3L), eq(true));
@@ -122,13 +141,123 @@ public class HbaseTestCase
     {
         Result mockResult = mock(Result.class);
         when(mockResult.isEmpty()).thenReturn(false);
-        when(facade.get(eq(TABLE_NAME), eq(SOME_ROW_KEY), anyInt(), anyLong())).thenReturn(mockResult);
+        List<String> columns = Arrays.asList("f1", "f2:q");
+        when(facade.get(eq(TABLE_NAME), eq(SOME_ROW_KEY), eq(columns), eq(3), (Long) isNull(), eq(100L), eq(200L)))
+            .thenReturn(mockResult);
 
-        Result result = connector.getValues(TABLE_NAME, SOME_ROW_KEY, 3, 12345L);
+        Result result = connector.getValues(TABLE_NAME, SOME_ROW_KEY, 3, null, columns, 100L, 200L);
         assertFalse(result.isEmpty());
+        verify(facade).get(eq(TABLE_NAME), eq(SOME_ROW_KEY), eq(columns), eq(3), (Long) isNull(), eq(100L), eq(200L));
 
         connector.putValue(TABLE_NAME, SOME_ROW_KEY, COLUMN_NAME, "q", 123L, "value", true, lock);
         verify(facade).put(eq(TABLE_NAME), eq(SOME_ROW_KEY), eq(COLUMN_NAME), eq("q"), eq(123L), eq("value"),
             eq(true), eq(lock));
     }
+
+    @Test
+    public void testGetMultipleValues()
+    {
+        List<String> rowKeys = Arrays.asList("r1", "r2");
+        connector.getMultipleValues(TABLE_NAME, rowKeys, COLUMN_NAME, "q", 3, 12345L);
+        verify(facade).getAll(eq(TABLE_NAME), eq(rowKeys), eq(COLUMN_NAME), eq("q"), eq(3), eq(12345L));
+    }
+
+    @Test
+    public void testCountRows()
+    {
+        when(facade.countRows(TABLE_NAME, "f1", "r1", "r9", 1000, 4)).thenReturn(42L);
+        assertEquals(42L, connector.countRows(TABLE_NAME, "f1", "r1", "r9", 1000, 4));
+    }
+
+    @Test
+    public void testScanPage()
+    {
+        connector.scanPage(TABLE_NAME, "f1", "q1", 123L, 456L, true, 1, "r1", "r9", "r", null, null, null, null,
+            null, null, true, 20, "token");
+        ArgumentCaptor<ScanFilter> filter = ArgumentCaptor.forClass(ScanFilter.class);
+        verify(facade).scanPage(eq(TABLE_NAME), eq("f1"), eq("q1"), eq(123L), eq(456L), eq(true), eq(1), eq("r1"),
+            eq("r9"), filter.capture(), eq(20), eq("token"));
+        assertEquals("r", filter.getValue().getRowPrefix());
+        assertTrue(filter.getValue().isKeyOnly());
+    }
+
+    @Test
+    public void testGetValue()
+    {
+        when(facade.getValue(TABLE_NAME, SOME_ROW_KEY, COLUMN_NAME, "q", 123L)).thenReturn(10L);
+        assertEquals(10L, connector.getValue(TABLE_NAME, SOME_ROW_KEY, COLUMN_NAME, "q", 123L));
+    }
+
+    @Test
+    public void testDecodeRows()
+    {
+        Result result = new Result();
+        Iterable<Result> results = Collections.emptyList();
+        connector.decodeRow(result);
+        verify(facade).decode(result);
+        connector.decodeRows(results);
+        verify(facade).decodeAll(results);
+    }
+
+    @Test
+    public void testEncodeRowKey()
+    {
+        List<Object> components = Arrays.<Object> asList("SABE", 42L);
+        String key = connector.encodeRowKey("STRING,LONG", components, false);
+        assertEquals(components, connector.decodeRowKey("STRING,LONG", key));
+        assertTrue(connector.encodeRowKey("STRING,LONG", components, true).compareTo(key) > 0);
+    }
+
+    @Test
+    public void testPutValueAsync()
+    {
+        connector.putValueAsync(TABLE_NAME, SOME_ROW_KEY, COLUMN_NAME, "q", 123L, "value", true);
+        verify(facade).putAsync(eq(TABLE_NAME), eq(SOME_ROW_KEY), eq(COLUMN_NAME), eq("q"), eq(123L),
+            eq("value"), eq(true));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPutValues()
+    {
+        Map<String, Object> entry = new HashMap<String, Object>();
+        entry.put("rowKey", SOME_ROW_KEY);
+        entry.put("columnFamilyName", COLUMN_NAME);
+        entry.put("columnQualifier", "q1");
+        entry.put("value", "v1");
+        Map<String, Map<String, Map<String, Object>>> rowValues = Collections.singletonMap("r2",
+            Collections.singletonMap(COLUMN_NAME, Collections.<String, Object> singletonMap("q2", "v2")));
+
+        connector.putValues(TABLE_NAME, Collections.singletonList(entry), rowValues, true);
+
+        ArgumentCaptor<Collection> values = ArgumentCaptor.forClass(Collection.class);
+        verify(facade).putAll(eq(TABLE_NAME), values.capture(), eq(true));
+        assertEquals(2, values.getValue().size());
+    }
+
+    @Test
+    public void testFlushCommits()
+    {
+        connector.flushCommits(TABLE_NAME);
+        verify(facade).flushCommits(eq(TABLE_NAME));
+    }
+
+    @Test
+    public void testLifecycle() throws Exception
+    {
+        connector.initialise();
+        verify(facade).connect();
+
+        connector.dispose();
+        verify(facade).disconnect();
+    }
+
+    @Test
+    public void testStatistics()
+    {
+        Map<String, Number> statistics = new HashMap<String, Number>();
+        when(facade.getStatistics()).thenReturn(statistics);
+        assertSame(statistics, connector.getStatistics());
+        verify(facade).getStatistics();
+    }
 }
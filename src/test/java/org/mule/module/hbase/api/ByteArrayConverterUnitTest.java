@@ -12,10 +12,18 @@ package org.mule.module.hbase.api;
 
 import static org.junit.Assert.*;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
 
 import org.apache.commons.lang.math.LongRange;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
 /**
@@ -46,4 +54,75 @@ public class ByteArrayConverterUnitTest
         assertNotNull(c.toByteArray(new LongRange(10, 20)));
     }
 
+    @Test
+    public void testToByteArrayFixedWidthIsCompatibleWithBytes()
+    {
+        ByteArrayConverter fixed = new ByteArrayConverter(Charset.forName("utf-8"), ValueEncoding.FIXED_WIDTH);
+        assertArrayEquals(Bytes.toBytes(42L), fixed.toByteArray(42L));
+        assertArrayEquals(Bytes.toBytes(42), fixed.toByteArray(42));
+        assertArrayEquals(Bytes.toBytes(4.2d), fixed.toByteArray(4.2d));
+        assertArrayEquals(Bytes.toBytes(true), fixed.toByteArray(true));
+        assertEquals(16, fixed.toByteArray(UUID.randomUUID()).length);
+        assertTrue(fixed.toByteArray(new LongRange(10, 20)).length > 8);
+    }
+
+    @Test
+    public void testFromByteArrayFixedWidth()
+    {
+        ByteArrayConverter fixed = new ByteArrayConverter(Charset.forName("utf-8"), ValueEncoding.FIXED_WIDTH);
+        UUID uuid = UUID.randomUUID();
+        BigDecimal decimal = new BigDecimal("-1234.5678");
+        Date date = new Date();
+        assertEquals(Long.valueOf(-7), fixed.fromByteArray(fixed.toByteArray(-7L), Long.class));
+        assertEquals(Short.valueOf((short) 3), fixed.fromByteArray(fixed.toByteArray((short) 3), Short.class));
+        assertEquals(Float.valueOf(1.5f), fixed.fromByteArray(fixed.toByteArray(1.5f), Float.class));
+        assertEquals(uuid, fixed.fromByteArray(fixed.toByteArray(uuid), UUID.class));
+        assertEquals(decimal, fixed.fromByteArray(fixed.toByteArray(decimal), BigDecimal.class));
+        assertEquals(date, fixed.fromByteArray(fixed.toByteArray(date), Date.class));
+    }
+
+    @Test
+    public void testFromByteArrayReadsSerializedValuesInFixedWidth()
+    {
+        ByteArrayConverter fixed = new ByteArrayConverter(Charset.forName("utf-8"), ValueEncoding.FIXED_WIDTH);
+        assertEquals(Long.valueOf(42), fixed.fromByteArray(c.toByteArray(42L), Long.class));
+        assertEquals(new BigDecimal("1.5"), fixed.fromByteArray(c.toByteArray(new BigDecimal("1.5")),
+            BigDecimal.class));
+        assertNotNull(fixed.fromByteArray(c.toByteArray(new LongRange(10, 20)), LongRange.class));
+    }
+
+    @Test
+    public void testToByteArrayByteBuffer()
+    {
+        byte[] ba = new byte[]{10, 20, 30};
+        assertSame(ba, c.toByteArray(ByteBuffer.wrap(ba)));
+        assertArrayEquals(new byte[]{20, 30}, c.toByteArray(ByteBuffer.wrap(ba, 1, 2)));
+        ByteBuffer direct = ByteBuffer.allocateDirect(3);
+        direct.put(ba).flip();
+        assertArrayEquals(ba, c.toByteArray(direct));
+        assertEquals(3, direct.remaining());
+    }
+
+    @Test
+    public void testToByteArrayInputStream()
+    {
+        byte[] ba = new byte[10000];
+        Arrays.fill(ba, (byte) 7);
+        assertArrayEquals(ba, c.toByteArray(new ByteArrayInputStream(ba)));
+        assertArrayEquals(ba, c.toByteArray(new BufferedInputStream(new ByteArrayInputStream(ba), 16)
+        {
+            @Override
+            public synchronized int available()
+            {
+                return 0;
+            }
+        }));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReadFullyFailsFastOverMaxSize()
+    {
+        ByteArrayConverter.readFully(new ByteArrayInputStream(new byte[1000]), 999);
+    }
+
 }
@@ -0,0 +1,100 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+import static org.junit.Assert.*;
+import static org.mule.module.hbase.api.Results.cell;
+
+import org.mule.module.hbase.api.codec.DefaultValueCodec;
+import org.mule.module.hbase.api.codec.FixedWidthValueCodec;
+import org.mule.module.hbase.api.codec.Utf8ValueCodec;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+public class DecodedRowUnitTest
+{
+    private static final String ROW = "r1";
+    private final Result result = new Result(new KeyValue[]{cell(ROW, "f1", "a", 2L, Bytes.toBytes("new")),
+        cell(ROW, "f1", "a", 1L, Bytes.toBytes("old")), cell(ROW, "f1", "b", 1L, Bytes.toBytes("b")),
+        cell(ROW, "f2", "n", 1L, Bytes.toBytes(42L))});
+
+    @Test
+    public void testDecodesTheLatestVersionWithTheFamilyCodec() throws Exception
+    {
+        DecodedRow row = new DecodedRow(result, new Utf8ValueCodec(), Collections.<String, ValueCodec> singletonMap(
+            "f2", new FixedWidthValueCodec()));
+        assertEquals("r1", row.getRowKey());
+        assertEquals("new", row.getValue("f1", "a"));
+        assertEquals(Long.valueOf(42L), row.getValue("f2", "n", Long.class));
+        assertNull(row.getValue("f1", "c"));
+        assertNull(row.getValue("f3", "a"));
+        assertEquals(Arrays.asList("f1", "f2"), Arrays.asList(row.keySet().toArray()));
+        assertEquals(2, row.get("f1").size());
+    }
+
+    @Test
+    public void testConvertsRawValuesToTheGivenType() throws Exception
+    {
+        DefaultValueCodec codec = new DefaultValueCodec();
+        DefaultValueCodec fixedWidthCodec = new DefaultValueCodec(ValueEncoding.FIXED_WIDTH);
+        DecodedRow row = new DecodedRow(new Result(new KeyValue[]{cell(ROW, "f1", "a", 1L, codec.encode(42L)),
+            cell(ROW, "f1", "b", 1L, codec.encode("text")), cell(ROW, "f1", "c", 1L, fixedWidthCodec.encode(7))}),
+            codec, Collections.<String, ValueCodec> emptyMap());
+        assertEquals(Long.valueOf(42L), row.getValue("f1", "a", Long.class));
+        assertEquals("text", row.getValue("f1", "b", String.class));
+        assertEquals(Integer.valueOf(7), row.getValue("f1", "c", Integer.class));
+        assertTrue(Arrays.equals(Bytes.toBytes("text"), row.getValue("f1", "b", byte[].class)));
+    }
+
+    @Test
+    public void testDecodesOnlyTheCellsAccessed() throws Exception
+    {
+        CountingCodec codec = new CountingCodec();
+        DecodedRow row = new DecodedRow(result, codec, Collections.<String, ValueCodec> emptyMap());
+        assertEquals("b", row.getValue("f1", "b"));
+        assertEquals("b", row.getValue("f1", "b"));
+        assertEquals(1, codec.decoded);
+
+        Iterator<Map.Entry<String, Object>> entries = row.get("f1").entrySet().iterator();
+        assertEquals("a", entries.next().getKey());
+        assertEquals(1, codec.decoded);
+    }
+
+    @Test
+    public void testEmptyResult() throws Exception
+    {
+        DecodedRow row = new DecodedRow(new Result(), new Utf8ValueCodec(),
+            Collections.<String, ValueCodec> emptyMap());
+        assertTrue(row.isEmpty());
+        assertNull(row.getRowKey());
+        assertNull(row.getValue("f1", "a"));
+    }
+
+    private static final class CountingCodec extends Utf8ValueCodec
+    {
+        private int decoded;
+
+        @Override
+        public Object decode(byte[] bytes)
+        {
+            decoded++;
+            return super.decode(bytes);
+        }
+    }
+}
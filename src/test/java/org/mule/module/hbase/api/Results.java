@@ -0,0 +1,66 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Builds the results that tests feed to the code under test, without an HBase
+ * server
+ */
+public final class Results
+{
+    private Results()
+    {
+    }
+
+    /** Answers a result with a single cell <code>f:q</code> of the given value */
+    public static Result result(String row, String value)
+    {
+        return result(row, Bytes.toBytes(value));
+    }
+
+    /** Answers a result with a single cell <code>f:q</code> of the given bytes */
+    public static Result result(String row, byte[] value)
+    {
+        return new Result(new KeyValue[]{cell(Bytes.toBytes(row), "q", value)});
+    }
+
+    /** Answers a result with a single cell <code>f:q</code> of value <code>v</code> at the given binary row */
+    public static Result result(byte[] row)
+    {
+        return new Result(new KeyValue[]{cell(row, "q", Bytes.toBytes("v"))});
+    }
+
+    /** Answers a result with a cell of value <code>v</code> per given qualifier of family <code>f</code> */
+    public static Result columns(String row, String... qualifiers)
+    {
+        KeyValue[] cells = new KeyValue[qualifiers.length];
+        for (int i = 0; i < qualifiers.length; i++)
+        {
+            cells[i] = cell(Bytes.toBytes(row), qualifiers[i], Bytes.toBytes("v"));
+        }
+        return new Result(cells);
+    }
+
+    /** Answers a cell of the given column, version and value */
+    public static KeyValue cell(String row, String family, String qualifier, long timestamp, byte[] value)
+    {
+        return new KeyValue(Bytes.toBytes(row), Bytes.toBytes(family), Bytes.toBytes(qualifier), timestamp, value);
+    }
+
+    private static KeyValue cell(byte[] row, String qualifier, byte[] value)
+    {
+        return new KeyValue(row, Bytes.toBytes("f"), Bytes.toBytes(qualifier), 1L, value);
+    }
+}
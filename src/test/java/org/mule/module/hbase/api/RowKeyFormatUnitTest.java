@@ -0,0 +1,101 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+public class RowKeyFormatUnitTest
+{
+    private final RowKeyFormat format = RowKeyFormat.parse("STRING, LONG, REVERSED_TIMESTAMP");
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        List<Object> components = Arrays.<Object> asList("SA\u0000BE", -42L, new Date(1300000000000L));
+        assertEquals(components, format.decode(format.encode(components)));
+        assertEquals(components, format.decode(Bytes.toBytes(format.encode(components))));
+    }
+
+    @Test
+    public void testKeysSortByTheirComponents() throws Exception
+    {
+        List<List<Object>> keys = new ArrayList<List<Object>>();
+        keys.add(Arrays.<Object> asList("SABE", Long.MIN_VALUE, new Date(2000)));
+        keys.add(Arrays.<Object> asList("SABE", -1L, new Date(2000)));
+        keys.add(Arrays.<Object> asList("SABE", 9L, new Date(2000)));
+        keys.add(Arrays.<Object> asList("SABE", 10L, new Date(2000)));
+        keys.add(Arrays.<Object> asList("SABE", 10L, new Date(1000)));
+        keys.add(Arrays.<Object> asList("SABE\u0000", 0L, new Date(0)));
+        keys.add(Arrays.<Object> asList("SABEX", 0L, new Date(0)));
+        keys.add(Arrays.<Object> asList("SAEZ", 0L, new Date(0)));
+        for (int i = 1; i < keys.size(); i++)
+        {
+            byte[] previous = Bytes.toBytes(format.encode(keys.get(i - 1)));
+            byte[] next = Bytes.toBytes(format.encode(keys.get(i)));
+            assertTrue(keys.get(i - 1) + " < " + keys.get(i), Bytes.compareTo(previous, next) < 0);
+        }
+    }
+
+    @Test
+    public void testReversedTimestampsSortDatesBefore1970Last() throws Exception
+    {
+        RowKeyFormat reversed = RowKeyFormat.parse("REVERSED_TIMESTAMP");
+        long[] millis = new long[]{Long.MAX_VALUE, 1000, 0, -1, -1000, Long.MIN_VALUE};
+        for (int i = 0; i < millis.length; i++)
+        {
+            List<Object> key = Collections.<Object> singletonList(new Date(millis[i]));
+            assertEquals(key, reversed.decode(reversed.encode(key)));
+            if (i > 0)
+            {
+                byte[] previous = Bytes.toBytes(reversed.encode(Collections.singletonList(new Date(millis[i - 1]))));
+                assertTrue(millis[i - 1] + " < " + millis[i], Bytes.compareTo(previous,
+                    Bytes.toBytes(reversed.encode(key))) < 0);
+            }
+        }
+    }
+
+    @Test
+    public void testPrefixesBoundTheKeysThatStartWithThem() throws Exception
+    {
+        List<Object> prefix = Arrays.<Object> asList("SABE", 10L);
+        byte[] start = Bytes.toBytes(format.encode(prefix));
+        byte[] stop = Bytes.toBytes(format.encodePrefixEnd(prefix));
+        byte[] inside = Bytes.toBytes(format.encode(Arrays.<Object> asList("SABE", "10", 0L)));
+        byte[] outside = Bytes.toBytes(format.encode(Arrays.<Object> asList("SABE", 11L, new Date())));
+        assertTrue(Bytes.compareTo(start, inside) <= 0 && Bytes.compareTo(inside, stop) < 0);
+        assertTrue(Bytes.compareTo(stop, outside) <= 0);
+
+        byte[] stringStop = Bytes.toBytes(format.encodePrefixEnd(Collections.singletonList("SABE")));
+        byte[] longerString = Bytes.toBytes(format.encode(Collections.singletonList("SABE\u0000")));
+        assertTrue(Bytes.compareTo(stringStop, longerString) <= 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedKeysAreRejected() throws Exception
+    {
+        format.decode("SABE");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyComponentsAreRejected() throws Exception
+    {
+        RowKeyFormat.parse("LONG").encode(Arrays.asList(1L, 2L));
+    }
+}
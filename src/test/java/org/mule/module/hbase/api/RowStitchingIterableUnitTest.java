@@ -0,0 +1,79 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api;
+
+import static org.junit.Assert.*;
+import static org.mule.module.hbase.api.Results.columns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+public class RowStitchingIterableUnitTest
+{
+    private final List<Result> slices = Arrays.asList(columns("r1", "a", "b"), columns("r1", "c"),
+        columns("r2", "a"), columns("r3", "a", "b"), columns("r3", "c", "d"), columns("r3", "e"));
+
+    @Test
+    public void testSlicesAreGroupedByRow() throws Exception
+    {
+        List<String> rowKeys = new ArrayList<String>();
+        List<Integer> sliceCounts = new ArrayList<Integer>();
+        for (WideRow row : new RowStitchingIterable(slices))
+        {
+            rowKeys.add(row.getRowKey());
+            int count = 0;
+            for (Iterator<Result> iter = row.iterator(); iter.hasNext(); iter.next())
+            {
+                count++;
+            }
+            sliceCounts.add(count);
+        }
+        assertEquals(Arrays.asList("r1", "r2", "r3"), rowKeys);
+        assertEquals(Arrays.asList(2, 1, 3), sliceCounts);
+    }
+
+    @Test
+    public void testUnreadSlicesAreSkipped() throws Exception
+    {
+        Iterator<WideRow> rows = new RowStitchingIterable(slices).iterator();
+        assertEquals("r1", rows.next().getRowKey());
+        assertEquals("r2", rows.next().getRowKey());
+        WideRow r3 = rows.next();
+        r3.iterator().next();
+        assertFalse(rows.hasNext());
+    }
+
+    @Test
+    public void testRowsAreStitchedIntoSingleResults() throws Exception
+    {
+        Iterator<WideRow> rows = new RowStitchingIterable(slices).iterator();
+        rows.next();
+        rows.next();
+        Result r3 = rows.next().toResult();
+        assertEquals(5, r3.raw().length);
+        assertEquals("e", Bytes.toString(r3.raw()[4].getQualifier()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSkippedRowsCanNotBeRead() throws Exception
+    {
+        Iterator<WideRow> rows = new RowStitchingIterable(slices).iterator();
+        WideRow r1 = rows.next();
+        rows.next();
+        r1.iterator().hasNext();
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.codec;
+
+import static org.junit.Assert.*;
+
+import org.mule.module.hbase.api.ValueCodec;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+public class ValueCodecUnitTest
+{
+    @Test
+    public void testSchemaRoundTrip() throws Exception
+    {
+        ValueCodec codec = new SchemaValueCodec(schema());
+        Map<String, Object> value = new LinkedHashMap<String, Object>();
+        value.put("name", "john");
+        value.put("age", 42);
+        value.put("score", 1.5);
+        value.put("active", true);
+        byte[] bytes = codec.encode(value);
+        assertEquals(value, codec.decode(bytes));
+        assertTrue(bytes.length < "{\"name\":\"john\",\"age\":42,\"score\":1.5,\"active\":true}".length());
+    }
+
+    @Test
+    public void testSchemaSkipsMissingFields() throws Exception
+    {
+        ValueCodec codec = new SchemaValueCodec(schema());
+        Map<String, Object> value = new LinkedHashMap<String, Object>();
+        value.put("age", "7");
+        assertEquals(value.size(), ((Map<?, ?>) codec.decode(codec.encode(value))).size());
+        assertEquals(7, ((Map<?, ?>) codec.decode(codec.encode(value))).get("age"));
+    }
+
+    @Test
+    public void testSchemaReadsValuesWrittenWithFewerFields() throws Exception
+    {
+        Map<String, SchemaFieldType> fields = new LinkedHashMap<String, SchemaFieldType>();
+        fields.put("name", SchemaFieldType.STRING);
+        Map<String, Object> value = new LinkedHashMap<String, Object>();
+        value.put("name", "john");
+        byte[] bytes = new SchemaValueCodec(fields).encode(value);
+        assertEquals(value, new SchemaValueCodec(schema()).decode(bytes));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSchemaRejectsUnknownFields() throws Exception
+    {
+        Map<String, Object> value = new LinkedHashMap<String, Object>();
+        value.put("nickname", "johnny");
+        new SchemaValueCodec(schema()).encode(value);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSchemaRejectsMalformedValues() throws Exception
+    {
+        new SchemaValueCodec(schema()).decode(new byte[]{4, 1, 127});
+    }
+
+    @Test
+    public void testFixedWidth() throws Exception
+    {
+        ValueCodec codec = new FixedWidthValueCodec();
+        assertArrayEquals(Bytes.toBytes(10L), codec.encode(10L));
+        assertEquals(10L, codec.decode(Bytes.toBytes(10L)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFixedWidthRejectsOtherTypes() throws Exception
+    {
+        new FixedWidthValueCodec(Integer.class).encode(10L);
+    }
+
+    @Test
+    public void testUtf8AndRaw() throws Exception
+    {
+        assertEquals("\u00f1and\u00fa", new Utf8ValueCodec().decode(new Utf8ValueCodec().encode("\u00f1and\u00fa")));
+        byte[] bytes = new byte[]{1, 2, 3};
+        assertSame(bytes, new RawValueCodec().encode(bytes));
+        assertTrue(Arrays.equals(bytes, (byte[]) new RawValueCodec().decode(bytes)));
+    }
+
+    @Test
+    public void testUtf8KeepsByteArrays() throws Exception
+    {
+        byte[] bytes = "\u00f1and\u00fa".getBytes("utf-8");
+        assertSame(bytes, new Utf8ValueCodec().encode(bytes));
+        assertEquals("\u00f1and\u00fa", new Utf8ValueCodec().decode(bytes));
+    }
+
+    private static Map<String, SchemaFieldType> schema()
+    {
+        Map<String, SchemaFieldType> fields = new LinkedHashMap<String, SchemaFieldType>();
+        fields.put("name", SchemaFieldType.STRING);
+        fields.put("age", SchemaFieldType.INTEGER);
+        fields.put("score", SchemaFieldType.DOUBLE);
+        fields.put("active", SchemaFieldType.BOOLEAN);
+        return fields;
+    }
+}
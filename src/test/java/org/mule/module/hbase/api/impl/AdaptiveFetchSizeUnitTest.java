@@ -0,0 +1,85 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import static org.junit.Assert.*;
+import static org.mule.module.hbase.api.Results.result;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.junit.Test;
+
+public class AdaptiveFetchSizeUnitTest
+{
+    @Test
+    public void testPagesShrinkToTheTargetBytes() throws Exception
+    {
+        AdaptiveFetchSize fetchSize = new AdaptiveFetchSize(100, 10000, 0, 1000);
+        Result[] page = page(100, 1000);
+        fetchSize.observe(page, 10);
+        assertEquals((int) (10000 / rowBytes(page)), fetchSize.getFetchSize());
+    }
+
+    @Test
+    public void testPagesGrowAtMostTwiceAsLarge() throws Exception
+    {
+        AdaptiveFetchSize fetchSize = new AdaptiveFetchSize(10, 1024 * 1024, 0, 1000);
+        fetchSize.observe(page(10, 10), 1);
+        assertEquals(20, fetchSize.getFetchSize());
+        fetchSize.observe(page(20, 10), 1);
+        assertEquals(40, fetchSize.getFetchSize());
+    }
+
+    @Test
+    public void testPagesNeverExceedTheMaxFetchSize() throws Exception
+    {
+        AdaptiveFetchSize fetchSize = new AdaptiveFetchSize(5000, 1024 * 1024, 0, 100);
+        assertEquals(100, fetchSize.getFetchSize());
+        fetchSize.observe(page(100, 10), 1);
+        assertEquals(100, fetchSize.getFetchSize());
+    }
+
+    @Test
+    public void testSlowPagesAreShrunkToTheTargetMillis() throws Exception
+    {
+        AdaptiveFetchSize fetchSize = new AdaptiveFetchSize(100, 1024 * 1024, 50, 1000);
+        fetchSize.observe(page(100, 10), 200);
+        assertEquals(25, fetchSize.getFetchSize());
+        assertEquals(200, fetchSize.getPageMillis(), 0.001);
+    }
+
+    @Test
+    public void testEmptyPagesAreIgnored() throws Exception
+    {
+        AdaptiveFetchSize fetchSize = new AdaptiveFetchSize(100, 10, 0, 1000);
+        fetchSize.observe(new Result[0], 10);
+        assertEquals(100, fetchSize.getFetchSize());
+    }
+
+    private static Result[] page(int rows, int valueLength)
+    {
+        Result[] page = new Result[rows];
+        for (int i = 0; i < rows; i++)
+        {
+            page[i] = result("r" + i, new byte[valueLength]);
+        }
+        return page;
+    }
+
+    private static double rowBytes(Result[] page)
+    {
+        long bytes = 0;
+        for (Result result : page)
+        {
+            bytes += result.raw()[0].getLength();
+        }
+        return (double) bytes / page.length;
+    }
+}
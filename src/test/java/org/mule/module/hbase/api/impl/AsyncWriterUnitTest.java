@@ -0,0 +1,284 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import static org.junit.Assert.*;
+
+import org.mule.module.hbase.api.BackpressureAction;
+import org.mule.module.hbase.api.HBaseServiceException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncWriterUnitTest
+{
+    private final List<Put> sent = new ArrayList<Put>();
+    private volatile CountDownLatch sendGate;
+    private volatile RuntimeException sendFailure;
+    private volatile Error sendError;
+    private AsyncWriter writer;
+
+    @Before
+    public void before()
+    {
+        writer = new AsyncWriter()
+        {
+            @Override
+            protected void send(String tableName, List<Put> puts)
+            {
+                awaitGate();
+                if (sendError != null)
+                {
+                    throw sendError;
+                }
+                if (sendFailure != null)
+                {
+                    throw sendFailure;
+                }
+                synchronized (sent)
+                {
+                    sent.addAll(puts);
+                }
+            }
+        };
+        writer.setEnabled(true);
+    }
+
+    @After
+    public void after()
+    {
+        sendGate = null;
+        writer.stop();
+    }
+
+    @Test
+    public void testPutsAreWrittenInOrder() throws Exception
+    {
+        writer.setWriters(1);
+        writer.start();
+        Future<Void> last = null;
+        for (int i = 0; i < 10; i++)
+        {
+            last = writer.submit("t1", new Put(Bytes.toBytes("r" + i)));
+        }
+        last.get(5, TimeUnit.SECONDS);
+
+        assertEquals(10, sent.size());
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals("r" + i, Bytes.toString(sent.get(i).getRow()));
+        }
+    }
+
+    @Test
+    public void testAwaitPendingWaitsForQueuedPuts() throws Exception
+    {
+        writer.start();
+        for (int i = 0; i < 5; i++)
+        {
+            writer.submit("t1", new Put(Bytes.toBytes("r" + i)));
+        }
+        writer.awaitPending();
+        assertEquals(5, sent.size());
+    }
+
+    @Test
+    public void testAwaitPendingOfATableIgnoresOtherTables() throws Exception
+    {
+        sendGate = new CountDownLatch(1);
+        writer.start();
+        try
+        {
+            writer.submit("t2", new Put(Bytes.toBytes("r1")));
+            writer.awaitPending("t1");
+            assertTrue(sent.isEmpty());
+        }
+        finally
+        {
+            sendGate.countDown();
+        }
+    }
+
+    @Test
+    public void testAwaitPendingTimesOut() throws Exception
+    {
+        sendGate = new CountDownLatch(1);
+        writer.setMaxWait(50);
+        writer.start();
+        writer.submit("t1", new Put(Bytes.toBytes("r1")));
+        try
+        {
+            writer.awaitPending("t1");
+            fail();
+        }
+        catch (HBaseServiceException e)
+        {
+            // expected
+        }
+        finally
+        {
+            sendGate.countDown();
+        }
+    }
+
+    @Test
+    public void testAwaitPendingAnswersWhenNotRunning() throws Exception
+    {
+        writer.awaitPending("t1");
+    }
+
+    @Test
+    public void testDeadWriterFailsFast() throws Exception
+    {
+        sendError = new AssertionError("writer died");
+        writer.setWriters(1);
+        writer.start();
+        try
+        {
+            writer.submit("t1", new Put(Bytes.toBytes("r1"))).get(5, TimeUnit.SECONDS);
+            fail();
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof HBaseServiceException);
+        }
+        try
+        {
+            writer.awaitPending("t1");
+            fail();
+        }
+        catch (HBaseServiceException e)
+        {
+            // expected
+        }
+        try
+        {
+            writer.submit("t1", new Put(Bytes.toBytes("r1")));
+            fail();
+        }
+        catch (HBaseServiceException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFailuresAreReportedInTheHandle() throws Exception
+    {
+        sendFailure = new HBaseServiceException("unavailable");
+        writer.start();
+        try
+        {
+            writer.submit("t1", new Put(Bytes.toBytes("r1"))).get(5, TimeUnit.SECONDS);
+            fail();
+        }
+        catch (ExecutionException e)
+        {
+            assertSame(sendFailure, e.getCause());
+        }
+        assertEquals(1L, statistics().get("asyncWriter.failed"));
+    }
+
+    @Test
+    public void testFullQueueRejectsWhenFailAction() throws Exception
+    {
+        sendGate = new CountDownLatch(1);
+        writer.setWriters(1);
+        writer.setQueueSize(1);
+        writer.setFullAction(BackpressureAction.FAIL);
+        writer.start();
+        writer.submit("t1", new Put(Bytes.toBytes("r1")));
+        try
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                writer.submit("t1", new Put(Bytes.toBytes("r1")));
+            }
+            fail();
+        }
+        catch (HBaseServiceException e)
+        {
+            assertEquals(1L, statistics().get("asyncWriter.rejected"));
+        }
+        finally
+        {
+            sendGate.countDown();
+        }
+    }
+
+    @Test
+    public void testFullQueueTimesOutWhenBlockAction() throws Exception
+    {
+        sendGate = new CountDownLatch(1);
+        writer.setWriters(1);
+        writer.setQueueSize(1);
+        writer.setMaxWait(50);
+        writer.start();
+        writer.submit("t1", new Put(Bytes.toBytes("r1")));
+        try
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                writer.submit("t1", new Put(Bytes.toBytes("r1")));
+            }
+            fail();
+        }
+        catch (HBaseServiceException e)
+        {
+            assertEquals(1L, statistics().get("asyncWriter.rejected"));
+        }
+        finally
+        {
+            sendGate.countDown();
+        }
+    }
+
+    @Test(expected = HBaseServiceException.class)
+    public void testSubmitFailsWhenNotRunning() throws Exception
+    {
+        writer.submit("t1", new Put(Bytes.toBytes("r1")));
+    }
+
+    private void awaitGate()
+    {
+        CountDownLatch gate = sendGate;
+        if (gate != null)
+        {
+            try
+            {
+                gate.await(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Map<String, Number> statistics()
+    {
+        Map<String, Number> statistics = new HashMap<String, Number>();
+        writer.collectStatistics(statistics);
+        return statistics;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.mule.module.hbase.api.HBaseServiceException;
+import org.mule.module.hbase.api.PoolExhaustedAction;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.HTableInterfaceFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Test for {@link BoundedHTablePool}
+ */
+public class BoundedHTablePoolUnitTest
+{
+    private static final String TABLE_NAME = "table-name";
+    private HTableInterfaceFactory factory;
+    private BoundedHTablePool pool;
+
+    @Before
+    public void before()
+    {
+        factory = mock(HTableInterfaceFactory.class);
+        when(factory.createHTableInterface(any(Configuration.class), any(byte[].class))).thenAnswer(
+            new Answer<HTableInterface>()
+            {
+                public HTableInterface answer(InvocationOnMock invocation)
+                {
+                    return mock(HTableInterface.class);
+                }
+            });
+        pool = new BoundedHTablePool(new Configuration(), factory);
+        pool.setMaxSize(2);
+    }
+
+    @Test
+    public void testReleasedTablesAreReused()
+    {
+        HTableInterface table = pool.borrow(TABLE_NAME);
+        pool.release(TABLE_NAME, table, false);
+        assertSame(table, pool.borrow(TABLE_NAME));
+        verify(factory, times(1)).createHTableInterface(any(Configuration.class), any(byte[].class));
+    }
+
+    @Test
+    public void testDiscardedTablesAreClosed() throws Exception
+    {
+        HTableInterface table = pool.borrow(TABLE_NAME);
+        pool.release(TABLE_NAME, table, true);
+        verify(table).close();
+        assertNotSame(table, pool.borrow(TABLE_NAME));
+    }
+
+    @Test
+    public void testFailFastWhenExhausted()
+    {
+        pool.setExhaustedAction(PoolExhaustedAction.FAIL);
+        pool.borrow(TABLE_NAME);
+        pool.borrow(TABLE_NAME);
+        try
+        {
+            pool.borrow(TABLE_NAME);
+            fail();
+        }
+        catch (HBaseServiceException e)
+        {
+            // ok
+        }
+        Map<String, Number> statistics = new HashMap<String, Number>();
+        pool.collectStatistics(statistics);
+        assertEquals(1L, statistics.get("tablePool.exhaustions"));
+        assertEquals(2, statistics.get("tablePool.active"));
+    }
+
+    @Test
+    public void testBlockTimesOutWhenExhausted()
+    {
+        pool.setMaxWait(10);
+        pool.borrow(TABLE_NAME);
+        pool.borrow(TABLE_NAME);
+        try
+        {
+            pool.borrow(TABLE_NAME);
+            fail();
+        }
+        catch (HBaseServiceException e)
+        {
+            // ok
+        }
+    }
+
+    @Test
+    public void testPoolsAreBoundedPerTable()
+    {
+        pool.setExhaustedAction(PoolExhaustedAction.FAIL);
+        pool.borrow(TABLE_NAME);
+        pool.borrow(TABLE_NAME);
+        assertNotNull(pool.borrow("other-table"));
+    }
+}
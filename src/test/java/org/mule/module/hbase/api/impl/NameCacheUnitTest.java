@@ -0,0 +1,60 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+public class NameCacheUnitTest
+{
+    private final NameCache cache = new NameCache();
+
+    @Test
+    public void testRepeatedNamesShareTheirEncoding() throws Exception
+    {
+        byte[] bytes = cache.toBytes("family");
+        assertArrayEquals(Bytes.toBytes("family"), bytes);
+        assertSame(bytes, cache.toBytes(new String("family")));
+        assertEquals(1L, statistics().get("nameCache.hits"));
+        assertEquals(1L, statistics().get("nameCache.misses"));
+    }
+
+    @Test
+    public void testIsClearedWhenFull() throws Exception
+    {
+        cache.setMaxEntries(2);
+        cache.toBytes("a");
+        cache.toBytes("b");
+        cache.toBytes("c");
+        assertEquals(1, statistics().get("nameCache.names"));
+        assertEquals(1L, statistics().get("nameCache.resets"));
+    }
+
+    @Test
+    public void testCanBeDisabled() throws Exception
+    {
+        cache.setMaxEntries(0);
+        assertNotSame(cache.toBytes("q"), cache.toBytes("q"));
+        assertEquals(0, statistics().get("nameCache.names"));
+    }
+
+    private Map<String, Number> statistics()
+    {
+        Map<String, Number> statistics = new TreeMap<String, Number>();
+        cache.collectStatistics(statistics);
+        return statistics;
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PaginatedIterableUnitTest
+{
+    private static final int PAGES = 5;
+    private ExecutorService executor;
+    private NumbersIterable iterable;
+
+    @Before
+    public void before()
+    {
+        executor = Executors.newCachedThreadPool();
+        iterable = new NumbersIterable();
+    }
+
+    @After
+    public void after()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPagesAreFetchedOnDemand() throws Exception
+    {
+        Iterator<Integer> iterator = iterable.iterator();
+        iterator.next();
+        Thread.sleep(100);
+        assertEquals(1, iterable.fetchedPages.get());
+        assertEquals(3 * PAGES - 1, collect(iterator).size());
+        assertEquals(PAGES, iterable.fetchedPages.get());
+        assertEquals(1, iterable.releases.get());
+    }
+
+    @Test
+    public void testPagesArePrefetched() throws Exception
+    {
+        iterable.setPrefetch(executor, 2);
+        Iterator<Integer> iterator = iterable.iterator();
+        iterator.next();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (iterable.fetchedPages.get() < 3 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(3, iterable.fetchedPages.get());
+
+        List<Integer> numbers = collect(iterator);
+        assertEquals(3 * PAGES - 1, numbers.size());
+        for (int i = 0; i < numbers.size(); i++)
+        {
+            assertEquals(Integer.valueOf(i + 1), numbers.get(i));
+        }
+        assertEquals(1, iterable.releases.get());
+    }
+
+    @Test
+    public void testPrefetchFailuresAreThrownToTheConsumer() throws Exception
+    {
+        iterable.failingPage = 3;
+        iterable.setPrefetch(executor, 2);
+        Iterator<Integer> iterator = iterable.iterator();
+        int count = 0;
+        try
+        {
+            while (iterator.hasNext())
+            {
+                iterator.next();
+                count++;
+            }
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            assertEquals(9, count);
+        }
+        assertEquals(1, iterable.releases.get());
+    }
+
+    @Test
+    public void testSlowConsumersGetEveryPage() throws Exception
+    {
+        iterable.setPrefetch(executor, 1);
+        Iterator<Integer> iterator = iterable.iterator();
+        iterator.next();
+        Thread.sleep(300);
+        assertEquals(2, iterable.fetchedPages.get());
+        assertEquals(3 * PAGES - 1, collect(iterator).size());
+        assertEquals(1, iterable.releases.get());
+    }
+
+    @Test
+    public void testPrefetchesAheadOfTheConsumerHoldNoThread() throws Exception
+    {
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        try
+        {
+            NumbersIterable other = new NumbersIterable();
+            iterable.setPrefetch(singleThread, 1);
+            other.setPrefetch(singleThread, 1);
+            Iterator<Integer> iterator = iterable.iterator();
+            iterator.next();
+            assertEquals(3 * PAGES, collect(other.iterator()).size());
+            assertEquals(3 * PAGES - 1, collect(iterator).size());
+        }
+        finally
+        {
+            singleThread.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCancelledIterationsDoNotLookComplete() throws Exception
+    {
+        iterable.setPrefetch(executor, 1);
+        Iterator<Integer> iterator = iterable.iterator();
+        iterator.next();
+        iterable.cancelPrefetches();
+        try
+        {
+            collect(iterator);
+            fail();
+        }
+        catch (CancellationException e)
+        {
+            // expected
+        }
+    }
+
+    private static List<Integer> collect(Iterator<Integer> iterator)
+    {
+        List<Integer> numbers = new ArrayList<Integer>();
+        while (iterator.hasNext())
+        {
+            numbers.add(iterator.next());
+        }
+        return numbers;
+    }
+
+    /** Answers the numbers from 0 to 3 * PAGES, in pages of 3 */
+    private static final class NumbersIterable extends PaginatedIterable<Integer, Integer>
+    {
+        private final AtomicInteger fetchedPages = new AtomicInteger();
+        private final AtomicInteger releases = new AtomicInteger();
+        private volatile int failingPage = -1;
+
+        @Override
+        protected Integer firstPage()
+        {
+            return fetch(0);
+        }
+
+        @Override
+        protected Integer nextPage(Integer currentPage)
+        {
+            return fetch(currentPage + 1);
+        }
+
+        @Override
+        protected boolean hasNextPage(Integer page)
+        {
+            return page < PAGES - 1;
+        }
+
+        @Override
+        protected Iterator<Integer> pageIterator(Integer page)
+        {
+            List<Integer> numbers = new ArrayList<Integer>();
+            for (int i = 0; i < 3; i++)
+            {
+                numbers.add(page * 3 + i);
+            }
+            return numbers.iterator();
+        }
+
+        @Override
+        protected void release(Integer lastPage)
+        {
+            releases.incrementAndGet();
+        }
+
+        private Integer fetch(int page)
+        {
+            if (page == failingPage)
+            {
+                throw new IllegalStateException("page " + page + " is not available");
+            }
+            fetchedPages.incrementAndGet();
+            return page;
+        }
+    }
+}
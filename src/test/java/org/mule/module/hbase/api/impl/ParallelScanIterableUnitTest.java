@@ -0,0 +1,135 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import static org.junit.Assert.*;
+
+import org.mule.module.hbase.api.HBaseServiceException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelScanIterableUnitTest
+{
+    private final Map<Scan, List<Result>> regions = new IdentityHashMap<Scan, List<Result>>();
+    private final List<Scan> regionScans = new ArrayList<Scan>();
+    private final List<Result> expected = new ArrayList<Result>();
+
+    @Before
+    public void before()
+    {
+        for (int i = 0; i < 4; i++)
+        {
+            Scan scan = new Scan();
+            List<Result> results = new ArrayList<Result>();
+            for (int j = 0; j < 7; j++)
+            {
+                results.add(new Result());
+            }
+            regions.put(scan, results);
+            regionScans.add(scan);
+            expected.addAll(results);
+        }
+    }
+
+    @Test
+    public void testOrderedScanAnswersRegionsInOrder() throws Exception
+    {
+        List<Result> results = new ArrayList<Result>();
+        for (Result result : newIterable(true))
+        {
+            results.add(result);
+        }
+        assertEquals(expected.size(), results.size());
+        for (int i = 0; i < expected.size(); i++)
+        {
+            assertSame(expected.get(i), results.get(i));
+        }
+    }
+
+    @Test
+    public void testUnorderedScanAnswersEveryResult() throws Exception
+    {
+        Set<Result> results = new HashSet<Result>();
+        for (Result result : newIterable(false))
+        {
+            results.add(result);
+        }
+        assertEquals(new HashSet<Result>(expected), results);
+    }
+
+    @Test
+    public void testRegionFailuresArePropagated() throws Exception
+    {
+        final HBaseServiceException failure = new HBaseServiceException("region unavailable");
+        ParallelScanIterable iterable = new ParallelScanIterable(regionScans, 2, true, 3)
+        {
+            @Override
+            protected Iterable<Result> scanRegion(Scan regionScan)
+            {
+                if (regionScan == regionScans.get(2))
+                {
+                    throw failure;
+                }
+                return regions.get(regionScan);
+            }
+        };
+        int count = 0;
+        try
+        {
+            for (Iterator<Result> iter = iterable.iterator(); iter.hasNext(); iter.next())
+            {
+                count++;
+            }
+            fail();
+        }
+        catch (HBaseServiceException e)
+        {
+            assertSame(failure, e);
+        }
+        assertEquals(14, count);
+    }
+
+    @Test
+    public void testDisposeStopsPartialIterations() throws Exception
+    {
+        ParallelScanIterable iterable = newIterable(true);
+        Iterator<Result> iter = iterable.iterator();
+        iter.next();
+        iterable.dispose();
+        while (iter.hasNext())
+        {
+            iter.next();
+        }
+    }
+
+    private ParallelScanIterable newIterable(boolean ordered)
+    {
+        return new ParallelScanIterable(regionScans, 2, ordered, 3)
+        {
+            @Override
+            protected Iterable<Result> scanRegion(Scan regionScan)
+            {
+                return regions.get(regionScan);
+            }
+        };
+    }
+}
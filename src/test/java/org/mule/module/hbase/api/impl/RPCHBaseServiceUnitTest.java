@@ -0,0 +1,475 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+import static org.mule.module.hbase.api.Results.result;
+
+import org.mule.api.lifecycle.Disposable;
+import org.mule.module.hbase.api.CellValue;
+import org.mule.module.hbase.api.CompareOperator;
+import org.mule.module.hbase.api.HBaseServiceException;
+import org.mule.module.hbase.api.ScanFilter;
+import org.mule.module.hbase.api.ScanOptions;
+import org.mule.module.hbase.api.ScanPage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.HTableInterfaceFactory;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Test for {@link RPCHBaseService} that does not need an HBase server, as tables
+ * are mocked
+ */
+public class RPCHBaseServiceUnitTest
+{
+    private static final String TABLE_NAME = "table-name";
+    private HTableInterface hTable;
+    private ResultScanner scanner;
+    private RPCHBaseService service;
+
+    @Before
+    public void before() throws Exception
+    {
+        hTable = mock(HTableInterface.class);
+        scanner = mock(ResultScanner.class);
+        when(hTable.getScanner(any(Scan.class))).thenReturn(scanner);
+        HTableInterfaceFactory factory = mock(HTableInterfaceFactory.class);
+        when(factory.createHTableInterface(any(Configuration.class), any(byte[].class))).thenReturn(hTable);
+        service = new RPCHBaseService(factory);
+    }
+
+    @Test
+    public void testScanIsClosedWhenExhausted() throws Exception
+    {
+        when(scanner.next(2)).thenReturn(new Result[]{new Result(), new Result()}, new Result[]{new Result()});
+
+        Iterator<Result> iterator = scan(2).iterator();
+        assertEquals(1, service.getStatistics().get("scanners.open"));
+        int count = 0;
+        while (iterator.hasNext())
+        {
+            iterator.next();
+            count++;
+        }
+        assertEquals(3, count);
+        verify(scanner).close();
+        verify(hTable).close();
+        assertEquals(0, service.getStatistics().get("scanners.open"));
+    }
+
+    @Test
+    public void testScanIsClosedWhenTheFirstPageFails() throws Exception
+    {
+        RuntimeException failure = new IllegalStateException("next failed");
+        when(scanner.next(2)).thenThrow(failure);
+        doThrow(new IOException("close failed")).when(hTable).close();
+        try
+        {
+            scan(2).iterator();
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            assertSame(failure, e);
+        }
+        verify(scanner).close();
+        verify(hTable).close();
+        assertEquals(0, service.getStatistics().get("scanners.open"));
+    }
+
+    @Test
+    public void testIdleScansAreReapedAndResumedAfterTheLastRow() throws Exception
+    {
+        when(scanner.next(2)).thenReturn(new Result[]{result("r1", "v"), result("r2", "v")}, new Result[]{result("r3", "v")});
+        service.setScannerMaxIdleMillis(1);
+
+        Iterator<Result> iterator = scan(2).iterator();
+        Thread.sleep(10);
+        service.reapIdleCursors();
+        verify(scanner).close();
+        verify(hTable).close();
+        assertEquals(0, service.getStatistics().get("scanners.open"));
+        assertEquals(1L, service.getStatistics().get("scanners.reaped"));
+
+        int count = 0;
+        while (iterator.hasNext())
+        {
+            iterator.next();
+            count++;
+        }
+        assertEquals(3, count);
+        ArgumentCaptor<Scan> scans = ArgumentCaptor.forClass(Scan.class);
+        verify(hTable, times(2)).getScanner(scans.capture());
+        assertArrayEquals(Bytes.add(Bytes.toBytes("r2"), new byte[]{0}), scans.getAllValues().get(1).getStartRow());
+    }
+
+    @Test
+    public void testScanFiltersAreCombined() throws Exception
+    {
+        ScanFilter filter = new ScanFilter();
+        filter.setRowPrefix("r");
+        filter.setKeyOnly(true);
+        when(scanner.next(2)).thenReturn(new Result[0]);
+
+        service.scan(TABLE_NAME, null, null, null, null, null, true, 1, null, null, 2, filter).iterator().hasNext();
+
+        ArgumentCaptor<Scan> scan = ArgumentCaptor.forClass(Scan.class);
+        verify(hTable).getScanner(scan.capture());
+        assertTrue(scan.getValue().getFilter() instanceof FilterList);
+    }
+
+    @Test
+    public void testRowPrefixesAfterTheStartRowStartTheScan() throws Exception
+    {
+        ScanFilter filter = new ScanFilter();
+        filter.setRowPrefix("r");
+        when(scanner.next(2)).thenReturn(new Result[0]);
+
+        service.scan(TABLE_NAME, null, null, null, null, null, true, 1, "a", null, 2, filter).iterator().hasNext();
+        service.scan(TABLE_NAME, null, null, null, null, null, true, 1, "s", null, 2, filter).iterator().hasNext();
+
+        ArgumentCaptor<Scan> scan = ArgumentCaptor.forClass(Scan.class);
+        verify(hTable, times(2)).getScanner(scan.capture());
+        assertEquals("r", Bytes.toString(scan.getAllValues().get(0).getStartRow()));
+        assertEquals("s", Bytes.toString(scan.getAllValues().get(1).getStartRow()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValueColumnQualifiersRequireAFamily() throws Exception
+    {
+        ScanFilter filter = new ScanFilter();
+        filter.setValueCompareOperator(CompareOperator.EQUAL);
+        filter.setValueColumnQualifier("q1");
+        filter.setValue("v");
+        service.scan(TABLE_NAME, null, null, null, null, null, true, 1, null, null, 2, filter);
+    }
+
+    @Test
+    public void testCountRowsReadsOnlyKeys() throws Exception
+    {
+        when(scanner.next(2)).thenReturn(new Result[]{new Result(), new Result()}, new Result[]{new Result()});
+
+        assertEquals(3L, service.countRows(TABLE_NAME, null, null, null, 2, 1));
+
+        ArgumentCaptor<Scan> scan = ArgumentCaptor.forClass(Scan.class);
+        verify(hTable).getScanner(scan.capture());
+        assertTrue(scan.getValue().getFilter() instanceof FilterList);
+        verify(scanner).close();
+    }
+
+    @Test
+    public void testSaltedCountsFailWithTheFirstFailingBucket() throws Exception
+    {
+        RuntimeException failure = new IllegalStateException("next failed");
+        when(scanner.next(2)).thenThrow(failure);
+        service.setSaltedTables(Arrays.asList(TABLE_NAME));
+        service.setSaltBuckets(4);
+        try
+        {
+            service.countRows(TABLE_NAME, null, null, null, 2, 2);
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValueFilterRequiresValue() throws Exception
+    {
+        ScanFilter filter = new ScanFilter();
+        filter.setValueCompareOperator(CompareOperator.EQUAL);
+        service.scan(TABLE_NAME, null, null, null, null, null, true, 1, null, null, 2, filter);
+    }
+
+    @Test
+    public void testScanIsClosedOnDispose() throws Exception
+    {
+        when(scanner.next(2)).thenReturn(new Result[]{new Result(), new Result()});
+
+        Iterable<Result> results = scan(2);
+        Iterator<Result> iterator = results.iterator();
+        iterator.next();
+        ((Disposable) results).dispose();
+
+        verify(scanner).close();
+        verify(hTable).close();
+        assertEquals(0, service.getStatistics().get("scanners.open"));
+    }
+
+    @Test
+    public void testFailedOperationIsNotHiddenByItsRelease() throws Exception
+    {
+        IOException failure = new IOException("get failed");
+        when(hTable.get(any(Get.class))).thenThrow(failure);
+        doThrow(new IOException("close failed")).when(hTable).close();
+        try
+        {
+            service.get(TABLE_NAME, "r1", null, null);
+            fail();
+        }
+        catch (HBaseServiceException e)
+        {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetRejectsTimestampWithTimeRange() throws Exception
+    {
+        service.get(TABLE_NAME, "r1", null, null, 123L, 100L, null);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGetAllAnswersResultsInInputOrder() throws Exception
+    {
+        Result found = new Result();
+        when(hTable.get(anyList())).thenReturn(new Result[]{found, null});
+
+        List<Result> results = service.getAll(TABLE_NAME, Arrays.asList("r1", "r2"), "f1", null, null, null);
+
+        ArgumentCaptor<List> gets = ArgumentCaptor.forClass(List.class);
+        verify(hTable).get(gets.capture());
+        assertEquals(2, gets.getValue().size());
+        assertEquals(2, results.size());
+        assertSame(found, results.get(0));
+        assertTrue(results.get(1).isEmpty());
+    }
+
+    @Test
+    public void testCachedRowsAreInvalidatedByWrites() throws Exception
+    {
+        service.setRowCacheEnabled(true);
+        Result result = new Result();
+        when(hTable.get(any(Get.class))).thenReturn(result);
+
+        assertSame(result, service.get(TABLE_NAME, "r1", null, null));
+        assertSame(result, service.get(TABLE_NAME, "r1", null, null));
+        verify(hTable, times(1)).get(any(Get.class));
+
+        service.put(TABLE_NAME, "r1", "f1", "q1", null, "v1", true, null);
+        service.get(TABLE_NAME, "r1", null, null);
+        verify(hTable, times(2)).get(any(Get.class));
+    }
+
+    @Test
+    public void testCachedRowsAreInvalidatedByBufferedPuts() throws Exception
+    {
+        service.setRowCacheEnabled(true);
+        service.setWriteBufferEnabled(true);
+        when(hTable.get(any(Get.class))).thenReturn(new Result());
+
+        service.get(TABLE_NAME, "r1", null, null);
+        service.put(TABLE_NAME, "r1", "f1", "q1", null, "v1", true, null);
+        service.get(TABLE_NAME, "r1", null, null);
+        verify(hTable, times(2)).get(any(Get.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPutAllSendsOnePutPerRow() throws Exception
+    {
+        service.putAll(TABLE_NAME, Arrays.asList(new CellValue("r1", "f1", "q1", null, "v1"), new CellValue("r2",
+            "f1", "q1", 123L, "v2"), new CellValue("r1", "f1", "q2", null, "v3")), true);
+
+        ArgumentCaptor<List> puts = ArgumentCaptor.forClass(List.class);
+        verify(hTable).put(puts.capture());
+        verify(hTable, never()).put(any(Put.class));
+        assertEquals(2, puts.getValue().size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBufferedPutsAreSentOnFlush() throws Exception
+    {
+        service.setWriteBufferEnabled(true);
+        service.put(TABLE_NAME, "r1", "f1", "q1", null, "v1", true, null);
+        service.put(TABLE_NAME, "r2", "f1", "q1", null, "v2", true, null);
+        verify(hTable, never()).put(any(Put.class));
+        assertEquals(2, service.getStatistics().get("writeBuffer.bufferedPuts"));
+
+        service.flushCommits(TABLE_NAME);
+        ArgumentCaptor<List> puts = ArgumentCaptor.forClass(List.class);
+        verify(hTable).put(puts.capture());
+        assertEquals(2, puts.getValue().size());
+        assertEquals(0, service.getStatistics().get("writeBuffer.bufferedPuts"));
+    }
+
+    @Test
+    public void testBufferedPutsAreSentBeforeDeletes() throws Exception
+    {
+        service.setWriteBufferEnabled(true);
+        service.put(TABLE_NAME, "r1", "f1", "q1", null, "v1", true, null);
+        service.delete(TABLE_NAME, "r1", null, null, null, false, null);
+        verify(hTable).put(anyList());
+    }
+
+    @Test
+    public void testPutAsyncIsSynchronousWhenDisabled() throws Exception
+    {
+        Future<Void> result = service.putAsync(TABLE_NAME, "r1", "f1", "q1", null, "v1", true);
+        assertTrue(result.isDone());
+        verify(hTable).put(any(Put.class));
+    }
+
+    @Test
+    public void testBatchedScansSplitRows() throws Exception
+    {
+        when(scanner.next(2)).thenReturn(new Result[0]);
+        Iterator<Result> iterator = service.scan(TABLE_NAME, null, null, null, null, null, true, 1, null, null, 2,
+            null, batch(100)).iterator();
+        assertFalse(iterator.hasNext());
+
+        ArgumentCaptor<Scan> scan = ArgumentCaptor.forClass(Scan.class);
+        verify(hTable).getScanner(scan.capture());
+        assertEquals(100, scan.getValue().getBatch());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchedScansRejectPageSizes() throws Exception
+    {
+        ScanFilter filter = new ScanFilter();
+        filter.setPageSize(10L);
+        service.scan(TABLE_NAME, null, null, null, null, null, true, 1, null, null, 2, filter, batch(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchedScansRejectColumnValueComparisons() throws Exception
+    {
+        ScanFilter filter = new ScanFilter();
+        filter.setValueCompareOperator(CompareOperator.EQUAL);
+        filter.setValueColumnFamilyName("f1");
+        filter.setValueColumnQualifier("q1");
+        filter.setValue("v");
+        service.scan(TABLE_NAME, null, null, null, null, null, true, 1, null, null, 2, filter, batch(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompressedValuesAreOnlyComparedForEquality() throws Exception
+    {
+        service.setCompressedColumnFamilies(Arrays.asList("f1"));
+        ScanFilter filter = new ScanFilter();
+        filter.setValueCompareOperator(CompareOperator.LESS);
+        filter.setValueColumnFamilyName("f1");
+        filter.setValueColumnQualifier("q1");
+        filter.setValue("v");
+        service.scan(TABLE_NAME, null, null, null, null, null, true, 1, null, null, 2, filter);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCellValuesAreNotComparedAcrossCompressedFamilies() throws Exception
+    {
+        service.setCompressedColumnFamilies(Arrays.asList("f1"));
+        ScanFilter filter = new ScanFilter();
+        filter.setValueCompareOperator(CompareOperator.EQUAL);
+        filter.setValue("v");
+        service.scan(TABLE_NAME, null, null, null, null, null, true, 1, null, null, 2, filter);
+    }
+
+    @Test
+    public void testAdaptiveScansResizePagesToTheTargetBytes() throws Exception
+    {
+        Result[] rows = new Result[]{result("r1", "v"), result("r2", "v")};
+        service.setScanTargetPageBytes(rows[0].raw()[0].getLength());
+        when(scanner.next(2)).thenReturn(rows);
+        when(scanner.next(1)).thenReturn(new Result[0]);
+
+        Iterator<Result> iterator = scan(2).iterator();
+        while (iterator.hasNext())
+        {
+            iterator.next();
+        }
+        verify(scanner).next(2);
+        verify(scanner).next(1);
+        assertEquals(1, service.getStatistics().get("scanners.adaptive.fetchSize"));
+    }
+
+    @Test
+    public void testScanPageResumesAtTheRowAfterThePage() throws Exception
+    {
+        Result r1 = result("r1", "v");
+        Result r2 = result("r2", "v");
+        Result r3 = result("r3", "v");
+        when(scanner.next(3)).thenReturn(new Result[]{r1, r2, r3}, new Result[]{r3});
+
+        ScanPage first = service.scanPage(TABLE_NAME, null, null, null, null, true, 1, "r1", "r9", null, 2, null);
+        assertEquals(Arrays.asList(r1, r2), first.getResults());
+        assertTrue(first.hasMore());
+
+        ScanPage second = service.scanPage(TABLE_NAME, null, null, null, null, true, 1, "r1", "r9", null, 2,
+            first.getContinuationToken());
+        assertEquals(Arrays.asList(r3), second.getResults());
+        assertFalse(second.hasMore());
+
+        ArgumentCaptor<Scan> scans = ArgumentCaptor.forClass(Scan.class);
+        verify(hTable, times(2)).getScanner(scans.capture());
+        assertArrayEquals(Bytes.toBytes("r3"), scans.getAllValues().get(1).getStartRow());
+        assertArrayEquals(Bytes.toBytes("r9"), scans.getAllValues().get(1).getStopRow());
+        verify(scanner, times(2)).close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testScanPageRejectsTokensOfOtherTables() throws Exception
+    {
+        when(scanner.next(2)).thenReturn(new Result[]{result("r1", "v"), result("r2", "v")});
+        ScanPage page = service.scanPage(TABLE_NAME, null, null, null, null, true, 1, null, null, null, 1, null);
+        service.scanPage("other-table", null, null, null, null, true, 1, null, null, null, 1,
+            page.getContinuationToken());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testScanPageRejectsTokensOfOtherParameters() throws Exception
+    {
+        when(scanner.next(2)).thenReturn(new Result[]{result("r1", "v"), result("r2", "v")});
+        ScanPage page = service.scanPage(TABLE_NAME, null, null, null, null, true, 1, "r1", null, null, 1, null);
+        service.scanPage(TABLE_NAME, null, null, null, null, true, 1, "r0", null, null, 1,
+            page.getContinuationToken());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testScanPageRejectsMalformedTokens() throws Exception
+    {
+        service.scanPage(TABLE_NAME, null, null, null, null, true, 1, null, null, null, 1, "not-a-token!");
+    }
+
+    private static ScanOptions batch(int batch)
+    {
+        ScanOptions options = new ScanOptions();
+        options.setBatch(batch);
+        return options;
+    }
+
+    private Iterable<Result> scan(int fetchSize)
+    {
+        return service.scan(TABLE_NAME, null, null, null, null, null, true, 1, null, null, fetchSize);
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import static org.junit.Assert.*;
+import static org.mule.module.hbase.api.Results.result;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RowCacheUnitTest
+{
+    private static final String TABLE_NAME = "table-name";
+    private static final String ALL = "all";
+    private RowCache cache;
+
+    @Before
+    public void before()
+    {
+        cache = new RowCache();
+        cache.setEnabled(true);
+    }
+
+    @Test
+    public void testCachedResultsAreAnswered() throws Exception
+    {
+        Result result = result("r1", "v1");
+        assertNull(cache.get(TABLE_NAME, "r1", ALL));
+        cache.put(TABLE_NAME, "r1", ALL, result, cache.stamp(TABLE_NAME, "r1"));
+
+        assertSame(result, cache.get(TABLE_NAME, "r1", ALL));
+        assertNull(cache.get(TABLE_NAME, "r1", "other-projection"));
+        assertEquals(1d / 3, statistics().get("rowCache.hitRatio").doubleValue(), 0.001);
+    }
+
+    @Test
+    public void testInvalidationDiscardsEveryProjectionOfTheRow() throws Exception
+    {
+        cache.put(TABLE_NAME, "r1", ALL, result("r1", "v1"), cache.stamp(TABLE_NAME, "r1"));
+        cache.put(TABLE_NAME, "r1", "other-projection", result("r1", "v1"), cache.stamp(TABLE_NAME, "r1"));
+        cache.put(TABLE_NAME, "r2", ALL, result("r2", "v2"), cache.stamp(TABLE_NAME, "r2"));
+
+        cache.invalidate(TABLE_NAME, "r1");
+
+        assertNull(cache.get(TABLE_NAME, "r1", ALL));
+        assertNull(cache.get(TABLE_NAME, "r1", "other-projection"));
+        assertNotNull(cache.get(TABLE_NAME, "r2", ALL));
+        assertEquals(1, statistics().get("rowCache.entries"));
+    }
+
+    @Test
+    public void testReadsStartedBeforeAnInvalidationAreNotCached() throws Exception
+    {
+        long stamp = cache.stamp(TABLE_NAME, "r1");
+        cache.invalidate(TABLE_NAME, "r1");
+        cache.put(TABLE_NAME, "r1", ALL, result("r1", "stale"), stamp);
+
+        assertNull(cache.get(TABLE_NAME, "r1", ALL));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedRowsAreEvicted() throws Exception
+    {
+        cache.setMaxEntries(2);
+        cache.put(TABLE_NAME, "r1", ALL, result("r1", "v1"), cache.stamp(TABLE_NAME, "r1"));
+        cache.put(TABLE_NAME, "r2", ALL, result("r2", "v2"), cache.stamp(TABLE_NAME, "r2"));
+        cache.get(TABLE_NAME, "r1", ALL);
+        cache.put(TABLE_NAME, "r3", ALL, result("r3", "v3"), cache.stamp(TABLE_NAME, "r3"));
+
+        assertNotNull(cache.get(TABLE_NAME, "r1", ALL));
+        assertNull(cache.get(TABLE_NAME, "r2", ALL));
+        assertNotNull(cache.get(TABLE_NAME, "r3", ALL));
+        assertEquals(1L, statistics().get("rowCache.evictions"));
+    }
+
+    @Test
+    public void testRowsAreEvictedWhenExceedingMaxBytes() throws Exception
+    {
+        Result result = result("r1", "v1");
+        cache.setMaxBytes(result.raw()[0].getLength() + 1);
+        cache.put(TABLE_NAME, "r1", ALL, result, cache.stamp(TABLE_NAME, "r1"));
+        cache.put(TABLE_NAME, "r2", ALL, result("r2", "v2"), cache.stamp(TABLE_NAME, "r2"));
+
+        assertNull(cache.get(TABLE_NAME, "r1", ALL));
+        assertNotNull(cache.get(TABLE_NAME, "r2", ALL));
+    }
+
+    @Test
+    public void testExpiredResultsAreNotAnswered() throws Exception
+    {
+        cache.setTtl(1);
+        cache.put(TABLE_NAME, "r1", ALL, result("r1", "v1"), cache.stamp(TABLE_NAME, "r1"));
+        Thread.sleep(10);
+
+        assertNull(cache.get(TABLE_NAME, "r1", ALL));
+        assertEquals(1L, statistics().get("rowCache.expirations"));
+        assertEquals(0, statistics().get("rowCache.entries"));
+    }
+
+    private Map<String, Number> statistics()
+    {
+        Map<String, Number> statistics = new HashMap<String, Number>();
+        cache.collectStatistics(statistics);
+        return statistics;
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import static org.junit.Assert.*;
+import static org.mule.module.hbase.api.Results.result;
+
+import org.mule.api.lifecycle.Disposable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SaltedScanIterableUnitTest
+{
+    private final RowKeySalter salter = new RowKeySalter();
+    private ExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        salter.setTables(Collections.singletonList("t1"));
+        salter.setBuckets(4);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConsecutiveKeysAreSpreadAcrossBuckets() throws Exception
+    {
+        Set<Integer> buckets = new HashSet<Integer>();
+        for (int i = 0; i < 100; i++)
+        {
+            byte[] row = Bytes.toBytes("SABE" + (1300000000L + i));
+            byte[] salted = salter.salt(row);
+            assertEquals(salter.bucketOf(row), salted[0]);
+            assertArrayEquals(row, salter.unsalt(salted));
+            buckets.add(salter.bucketOf(row));
+        }
+        assertEquals(4, buckets.size());
+        assertTrue(salter.isSalted("t1"));
+        assertFalse(salter.isSalted("t2"));
+    }
+
+    @Test
+    public void testBucketsAreMergedInKeyOrderAndUnsalted() throws Exception
+    {
+        List<List<Result>> buckets = new ArrayList<List<Result>>();
+        for (int i = 0; i < 4; i++)
+        {
+            buckets.add(new ArrayList<Result>());
+        }
+        List<String> rows = new ArrayList<String>();
+        for (int i = 0; i < 50; i++)
+        {
+            String row = "row" + (100 + i);
+            rows.add(row);
+            byte[] salted = salter.salt(Bytes.toBytes(row));
+            buckets.get(salted[0]).add(result(salted));
+        }
+        List<Iterable<Result>> iterables = new ArrayList<Iterable<Result>>(buckets);
+        List<String> merged = new ArrayList<String>();
+        for (Result result : new SaltedScanIterable(iterables, salter))
+        {
+            merged.add(Bytes.toString(result.getRow()));
+            assertEquals(Bytes.toString(result.getRow()), Bytes.toString(result.raw()[0].getRow()));
+        }
+        assertEquals(rows, merged);
+    }
+
+    @Test
+    public void testEmptyBuckets() throws Exception
+    {
+        List<Iterable<Result>> iterables = new ArrayList<Iterable<Result>>();
+        iterables.add(Collections.<Result> emptyList());
+        iterables.add(Arrays.asList(result(salter.prefix(1, Bytes.toBytes("r")))));
+        assertEquals("r", Bytes.toString(new SaltedScanIterable(iterables, salter).iterator().next().getRow()));
+        assertFalse(new SaltedScanIterable(Collections.<Iterable<Result>> emptyList(), salter).iterator()
+            .hasNext());
+    }
+
+    @Test
+    public void testBucketsAreOpenedConcurrently() throws Exception
+    {
+        CountDownLatch opening = new CountDownLatch(4);
+        List<Iterable<Result>> buckets = new ArrayList<Iterable<Result>>();
+        for (int i = 0; i < 4; i++)
+        {
+            Bucket bucket = new Bucket(result(salter.prefix(i, Bytes.toBytes("r" + i))));
+            bucket.opening = opening;
+            buckets.add(bucket);
+        }
+        Iterator<Result> iterator = new SaltedScanIterable(buckets, salter, executor, 0).iterator();
+        for (Iterable<Result> bucket : buckets)
+        {
+            assertTrue(((Bucket) bucket).openedConcurrently);
+        }
+        assertEquals("r0", Bytes.toString(iterator.next().getRow()));
+    }
+
+    @Test
+    public void testOpenBucketsAreDisposedWhenOneFails() throws Exception
+    {
+        Bucket open = new Bucket(result(salter.prefix(0, Bytes.toBytes("r"))));
+        Bucket failing = new Bucket();
+        failing.failure = new IllegalStateException("bucket 1 is not available");
+        List<Iterable<Result>> buckets = new ArrayList<Iterable<Result>>();
+        buckets.add(open);
+        buckets.add(failing);
+        try
+        {
+            new SaltedScanIterable(buckets, salter, executor, 0).iterator();
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            assertSame(failing.failure, e);
+        }
+        assertTrue(open.disposed);
+    }
+
+    @Test
+    public void testMergedRowsAreCappedToMaxRows() throws Exception
+    {
+        Bucket first = new Bucket(result(salter.prefix(0, Bytes.toBytes("a"))), result(salter.prefix(0,
+            Bytes.toBytes("c"))));
+        Bucket second = new Bucket(result(salter.prefix(1, Bytes.toBytes("b"))), result(salter.prefix(1,
+            Bytes.toBytes("d"))));
+        List<Iterable<Result>> buckets = new ArrayList<Iterable<Result>>();
+        buckets.add(first);
+        buckets.add(second);
+        List<String> rows = new ArrayList<String>();
+        for (Result result : new SaltedScanIterable(buckets, salter, null, 3))
+        {
+            rows.add(Bytes.toString(result.getRow()));
+        }
+        assertEquals(Arrays.asList("a", "b", "c"), rows);
+        assertTrue(first.disposed);
+        assertTrue(second.disposed);
+    }
+
+    /** The results of a bucket, that records how it is opened and disposed */
+    private static final class Bucket implements Iterable<Result>, Disposable
+    {
+        private final List<Result> results;
+        private volatile CountDownLatch opening;
+        private volatile boolean openedConcurrently;
+        private volatile RuntimeException failure;
+        private volatile boolean disposed;
+
+        public Bucket(Result... results)
+        {
+            this.results = Arrays.asList(results);
+        }
+
+        public Iterator<Result> iterator()
+        {
+            if (opening != null)
+            {
+                opening.countDown();
+                try
+                {
+                    openedConcurrently = opening.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failure != null)
+            {
+                throw failure;
+            }
+            return results.iterator();
+        }
+
+        public void dispose()
+        {
+            disposed = true;
+        }
+    }
+}
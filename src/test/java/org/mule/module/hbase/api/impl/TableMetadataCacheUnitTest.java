@@ -0,0 +1,98 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TableMetadataCacheUnitTest
+{
+    private static final String TABLE_NAME = "table-name";
+    private TableMetadataCache cache;
+
+    @Before
+    public void before()
+    {
+        cache = new TableMetadataCache();
+        cache.setEnabled(true);
+    }
+
+    @Test
+    public void testCachedDescriptorsAreAnswered() throws Exception
+    {
+        HTableDescriptor descriptor = new HTableDescriptor(TABLE_NAME);
+        assertNull(cache.get(TABLE_NAME));
+        cache.put(TABLE_NAME, descriptor, cache.stamp());
+
+        assertTrue(cache.get(TABLE_NAME).exists());
+        assertSame(descriptor, cache.get(TABLE_NAME).getDescriptor());
+        assertEquals(2L, statistics().get("metadataCache.hits"));
+        assertEquals(1L, statistics().get("metadataCache.misses"));
+    }
+
+    @Test
+    public void testMissingTablesAreCached() throws Exception
+    {
+        cache.put(TABLE_NAME, null, cache.stamp());
+
+        assertNotNull(cache.get(TABLE_NAME));
+        assertFalse(cache.get(TABLE_NAME).exists());
+    }
+
+    @Test
+    public void testInvalidationDiscardsTheTable() throws Exception
+    {
+        cache.put(TABLE_NAME, new HTableDescriptor(TABLE_NAME), cache.stamp());
+        cache.put("other-table", new HTableDescriptor("other-table"), cache.stamp());
+
+        cache.invalidate(TABLE_NAME);
+
+        assertNull(cache.get(TABLE_NAME));
+        assertNotNull(cache.get("other-table"));
+        assertEquals(1L, statistics().get("metadataCache.invalidations"));
+    }
+
+    @Test
+    public void testReadsStartedBeforeAnInvalidationAreNotCached() throws Exception
+    {
+        long stamp = cache.stamp();
+        cache.invalidate(TABLE_NAME);
+        HTableDescriptor descriptor = new HTableDescriptor(TABLE_NAME);
+
+        assertSame(descriptor, cache.put(TABLE_NAME, descriptor, stamp).getDescriptor());
+        assertNull(cache.get(TABLE_NAME));
+    }
+
+    @Test
+    public void testExpiredDescriptorsAreNotAnswered() throws Exception
+    {
+        cache.setTtl(1);
+        cache.put(TABLE_NAME, new HTableDescriptor(TABLE_NAME), cache.stamp());
+        Thread.sleep(10);
+
+        assertNull(cache.get(TABLE_NAME));
+        assertEquals(1L, statistics().get("metadataCache.expirations"));
+        assertEquals(0, statistics().get("metadataCache.tables"));
+    }
+
+    private Map<String, Number> statistics()
+    {
+        Map<String, Number> statistics = new HashMap<String, Number>();
+        cache.collectStatistics(statistics);
+        return statistics;
+    }
+}
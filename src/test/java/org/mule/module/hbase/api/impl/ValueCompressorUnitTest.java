@@ -0,0 +1,86 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import static org.junit.Assert.*;
+import static org.mule.module.hbase.api.Results.cell;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValueCompressorUnitTest
+{
+    private final ValueCompressor compressor = new ValueCompressor();
+
+    @Before
+    public void setUp()
+    {
+        compressor.setFamilies(Collections.singletonList("docs"));
+        compressor.setThreshold(100);
+    }
+
+    @Test
+    public void testLargeValuesAreDeflated() throws Exception
+    {
+        byte[] value = new byte[10000];
+        Arrays.fill(value, (byte) 'a');
+        byte[] stored = compressor.compress(value);
+        assertTrue(stored.length < value.length / 10);
+        assertArrayEquals(value, compressor.decompress(stored));
+
+        Map<String, Number> statistics = new TreeMap<String, Number>();
+        compressor.collectStatistics(statistics);
+        assertEquals(1L, statistics.get("valueCompression.compressedValues"));
+        assertTrue(statistics.get("valueCompression.ratio").doubleValue() > 10);
+    }
+
+    @Test
+    public void testSmallAndIncompressibleValuesAreStoredAsIs() throws Exception
+    {
+        byte[] random = new byte[1000];
+        new Random(1).nextBytes(random);
+        for (byte[] value : new byte[][]{Bytes.toBytes("small"), random, new byte[0]})
+        {
+            byte[] stored = compressor.compress(value);
+            assertEquals(value.length + 1, stored.length);
+            assertArrayEquals(value, compressor.decompress(stored));
+        }
+    }
+
+    @Test
+    public void testOnlyCompressedFamiliesOfResultsAreDecompressed() throws Exception
+    {
+        byte[] value = new byte[1000];
+        KeyValue counter = cell("r", "counters", "q", 1L, Bytes.toBytes(0L));
+        Result result = compressor.decompress(new Result(new KeyValue[]{counter,
+            cell("r", "docs", "q", 1L, compressor.compress(value))}));
+        assertSame(counter, result.raw()[0]);
+        assertArrayEquals(value, result.getValue(Bytes.toBytes("docs"), Bytes.toBytes("q")));
+
+        Result counters = new Result(new KeyValue[]{counter});
+        assertSame(counters, compressor.decompress(counters));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownHeadersAreRejected() throws Exception
+    {
+        compressor.decompress(new byte[]{7, 1, 2});
+    }
+}
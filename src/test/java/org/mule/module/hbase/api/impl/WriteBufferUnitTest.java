@@ -0,0 +1,211 @@
+/**
+ * Mule HBase Cloud Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.module.hbase.api.impl;
+
+import static org.junit.Assert.*;
+
+import org.mule.module.hbase.api.HBaseServiceException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteBufferUnitTest
+{
+    private final List<Put> sent = new ArrayList<Put>();
+    private int failures;
+    private int writtenBeforeFailure;
+    private String failingTable;
+    private WriteBuffer buffer;
+
+    @Before
+    public void before()
+    {
+        buffer = new WriteBuffer()
+        {
+            @Override
+            protected void send(String tableName, List<Put> puts)
+            {
+                if (failures > 0 || tableName.equals(failingTable))
+                {
+                    failures--;
+                    for (int i = 0; i < writtenBeforeFailure; i++)
+                    {
+                        sent.add(puts.remove(0));
+                    }
+                    throw new HBaseServiceException("send failed");
+                }
+                sent.addAll(puts);
+            }
+        };
+        buffer.setEnabled(true);
+    }
+
+    @Test
+    public void testPutsAreSentInOrderOnFlush() throws Exception
+    {
+        buffer.add("t1", put("r1"));
+        buffer.add("t1", put("r2"));
+        assertTrue(sent.isEmpty());
+
+        buffer.flush("t1");
+        assertEquals(2, sent.size());
+        assertArrayEquals(Bytes.toBytes("r1"), sent.get(0).getRow());
+        assertEquals(0, statistics().get("writeBuffer.bufferedPuts"));
+    }
+
+    @Test
+    public void testPutsOfAFailedFlushAreSentByTheNextOne() throws Exception
+    {
+        buffer.add("t1", put("r1"));
+        buffer.add("t1", put("r2"));
+        failures = 1;
+        try
+        {
+            buffer.flush("t1");
+            fail();
+        }
+        catch (HBaseServiceException e)
+        {
+            // expected
+        }
+        assertEquals(2, statistics().get("writeBuffer.bufferedPuts"));
+        assertEquals(1L, statistics().get("writeBuffer.flushFailures"));
+
+        buffer.add("t1", put("r3"));
+        buffer.flush("t1");
+        assertEquals(3, sent.size());
+        assertArrayEquals(Bytes.toBytes("r1"), sent.get(0).getRow());
+        assertArrayEquals(Bytes.toBytes("r2"), sent.get(1).getRow());
+        assertArrayEquals(Bytes.toBytes("r3"), sent.get(2).getRow());
+        assertEquals(0, statistics().get("writeBuffer.bufferedPuts"));
+        assertEquals(0L, statistics().get("writeBuffer.bufferedBytes"));
+    }
+
+    @Test
+    public void testOnlyThePutsThatWereNotWrittenAreSentAgain() throws Exception
+    {
+        buffer.add("t1", put("r1"));
+        buffer.add("t1", put("r2"));
+        failures = 1;
+        writtenBeforeFailure = 1;
+        try
+        {
+            buffer.flush("t1");
+            fail();
+        }
+        catch (HBaseServiceException e)
+        {
+            // expected
+        }
+        assertEquals(1, statistics().get("writeBuffer.bufferedPuts"));
+
+        buffer.flush("t1");
+        assertEquals(2, sent.size());
+        assertArrayEquals(Bytes.toBytes("r2"), sent.get(1).getRow());
+    }
+
+    @Test
+    public void testPutsAreNotFailedByTheFlushTheyTrigger() throws Exception
+    {
+        buffer.setMaxSize(1);
+        failures = 1;
+        buffer.add("t1", put("r1"));
+        assertEquals(1, statistics().get("writeBuffer.bufferedPuts"));
+
+        buffer.add("t1", put("r2"));
+        assertEquals(2, sent.size());
+        assertEquals(0, statistics().get("writeBuffer.bufferedPuts"));
+    }
+
+    @Test
+    public void testPutsBeyondTheLimitAreRejected() throws Exception
+    {
+        failingTable = "t1";
+        buffer.setLimit(2 * put("r1").heapSize());
+        buffer.add("t1", put("r1"));
+        buffer.add("t1", put("r2"));
+        try
+        {
+            buffer.add("t1", put("r3"));
+            fail();
+        }
+        catch (HBaseServiceException e)
+        {
+            // expected
+        }
+        assertEquals(2, statistics().get("writeBuffer.bufferedPuts"));
+
+        failingTable = null;
+        buffer.add("t1", put("r3"));
+        assertEquals(2, sent.size());
+        assertEquals(1, statistics().get("writeBuffer.bufferedPuts"));
+    }
+
+    @Test
+    public void testEveryTableIsFlushedEvenIfOneFails() throws Exception
+    {
+        failingTable = "t1";
+        buffer.add("t1", put("r1"));
+        buffer.add("t2", put("r2"));
+        buffer.add("t3", put("r3"));
+        try
+        {
+            buffer.flushAll();
+            fail();
+        }
+        catch (HBaseServiceException e)
+        {
+            // expected
+        }
+        assertEquals(2, sent.size());
+        assertEquals(1, statistics().get("writeBuffer.bufferedPuts"));
+    }
+
+    @Test
+    public void testStopDiscardsThePutsThatCanNotBeFlushed() throws Exception
+    {
+        failingTable = "t1";
+        buffer.add("t1", put("r1"));
+        buffer.add("t2", put("r2"));
+        try
+        {
+            buffer.stop();
+            fail();
+        }
+        catch (HBaseServiceException e)
+        {
+            // expected
+        }
+        assertEquals(1, sent.size());
+        assertEquals(0, statistics().get("writeBuffer.bufferedPuts"));
+    }
+
+    private Map<String, Number> statistics()
+    {
+        Map<String, Number> statistics = new HashMap<String, Number>();
+        buffer.collectStatistics(statistics);
+        return statistics;
+    }
+
+    private static Put put(String row)
+    {
+        Put put = new Put(Bytes.toBytes(row));
+        put.add(Bytes.toBytes("f1"), Bytes.toBytes("q1"), Bytes.toBytes("v"));
+        return put;
+    }
+}